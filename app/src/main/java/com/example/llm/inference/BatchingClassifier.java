@@ -0,0 +1,228 @@
+package com.example.llm.inference;
+
+import android.util.Log;
+
+import com.example.llm.transformers.Feature;
+import com.example.llm.transformers.SequenceBuckets;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dynamic micro-batching in front of an {@link InferenceEngine}.
+ *
+ * Features can be submitted from any thread. A single worker collects them until either
+ * maxBatchSize requests are waiting or the oldest one has waited maxWaitMs. It then pads the
+ * batch to its longest sequence with a matching attention mask, runs one inference and completes
+ * every request's future with its own logits.
+ *
+ * With {@link SequenceBuckets} the collected requests are sorted by length and split per bucket,
+ * and each group is padded to its bucket length only, so a single long text does not force the
+ * whole batch to its length and the set of tensor shapes stays bounded.
+ * */
+public class BatchingClassifier implements AutoCloseable {
+    private static final String TAG = "SpamClassification";
+
+    private final InferenceEngine engine;
+    private final SequenceBuckets buckets; // null pads each batch to its longest sequence
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private final Thread worker;
+    private final Stats stats;
+    private volatile boolean closed;
+
+    private static final Comparator<Request> BY_LENGTH = new Comparator<Request>() {
+        @Override
+        public int compare(Request a, Request b) {
+            return Integer.compare(a.feature.tokenCount, b.feature.tokenCount);
+        }
+    };
+
+    private static final class Request {
+        final Feature feature;
+        final SettableFuture<float[]> result = SettableFuture.create();
+        final long submitNanos = System.nanoTime();
+
+        Request(Feature feature){
+            this.feature = feature;
+        }
+    }
+
+    /** Throughput per batch size, so the batching parameters can be tuned on evidence. */
+    public static final class Stats {
+        private final long[] batches;
+        private final long[] nanos;
+
+        Stats(int maxBatchSize){
+            batches = new long[maxBatchSize + 1];
+            nanos = new long[maxBatchSize + 1];
+        }
+
+        synchronized void record(int batchSize, long elapsedNanos){
+            batches[batchSize]++;
+            nanos[batchSize] += elapsedNanos;
+        }
+
+        public synchronized long getBatchCount(int batchSize){
+            return batches[batchSize];
+        }
+
+        /** Items classified per second for batches of exactly this size, or 0 if none ran. */
+        public synchronized double getThroughput(int batchSize){
+            return nanos[batchSize] == 0 ? 0 : batchSize * batches[batchSize] * 1e9 / nanos[batchSize];
+        }
+
+        @Override
+        public synchronized String toString() {
+            StringBuilder builder = new StringBuilder("batch size: batches, items/s");
+            for (int size = 1; size < batches.length; size++) {
+                if (batches[size] > 0) {
+                    builder.append(String.format(Locale.US, "\n%3d: %d, %.1f",
+                            size, batches[size], getThroughput(size)));
+                }
+            }
+            return builder.toString();
+        }
+    }
+
+    public BatchingClassifier(InferenceEngine engine, int maxBatchSize, long maxWaitMs){
+        this(engine, null, maxBatchSize, maxWaitMs);
+    }
+
+    public BatchingClassifier(InferenceEngine engine, SequenceBuckets buckets, int maxBatchSize,
+                              long maxWaitMs){
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be positive");
+        }
+        this.engine = engine;
+        this.buckets = buckets;
+        this.maxBatchSize = maxBatchSize;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+        this.stats = new Stats(maxBatchSize);
+        this.worker = new Thread(this::runLoop, "BatchingClassifier");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /** Queues a feature; the future completes with its logits once its batch has run. */
+    public ListenableFuture<float[]> submit(Feature feature){
+        Request request = new Request(feature);
+        if (closed) {
+            request.result.setException(new IllegalStateException("BatchingClassifier is closed"));
+            return request.result;
+        }
+        queue.add(request);
+        if (closed && queue.remove(request)) {
+            request.result.cancel(false);
+        }
+        return request.result;
+    }
+
+    public Stats getStats(){
+        return stats;
+    }
+
+    /** Stops the worker; requests still queued fail with CancellationException. */
+    @Override
+    public void close() {
+        closed = true;
+        worker.interrupt();
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Request request;
+        while ((request = queue.poll()) != null) {
+            request.result.cancel(false);
+        }
+    }
+
+    private void runLoop(){
+        List<Request> batch = new ArrayList<>(maxBatchSize);
+        try {
+            while (!closed) {
+                batch.add(queue.take());
+                // Measured from the submit, so time spent queued behind the previous batch counts.
+                long deadline = batch.get(0).submitNanos + maxWaitNanos;
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    Request next = remaining > 0
+                            ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                // Nobody waits for a cancelled request, so it does not take a row.
+                batch.removeIf(request -> request.result.isCancelled());
+                if (batch.isEmpty()) {
+                    continue;
+                }
+                if (buckets == null) {
+                    runBatch(batch, longest(batch));
+                } else {
+                    runBucketed(batch);
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            for (Request request : batch) {
+                request.result.cancel(false);
+            }
+        }
+    }
+
+    private static int longest(List<Request> batch){
+        int seqLen = 1;
+        for (Request request : batch) {
+            seqLen = Math.max(seqLen, request.feature.tokenCount);
+        }
+        return seqLen;
+    }
+
+    private void runBucketed(List<Request> batch){
+        Collections.sort(batch, BY_LENGTH);
+        int start = 0;
+        while (start < batch.size()) {
+            int bucket = buckets.bucketFor(batch.get(start).feature.tokenCount);
+            int end = start + 1;
+            while (end < batch.size() && buckets.bucketFor(batch.get(end).feature.tokenCount) == bucket) {
+                end++;
+            }
+            runBatch(batch.subList(start, end), bucket);
+            start = end;
+        }
+    }
+
+    private void runBatch(List<Request> batch, int seqLen){
+        int batchSize = batch.size();
+
+        long start = System.nanoTime();
+        try (InputBatch inputs = engine.acquireBatch(batchSize, seqLen)) {
+            for (int row = 0; row < batchSize; row++) {
+                Feature feature = batch.get(row).feature;
+                inputs.putRow(row, feature.inputIds, feature.tokenCount);
+            }
+            float[][] logits = engine.classify(inputs);
+            stats.record(batchSize, System.nanoTime() - start);
+            for (int row = 0; row < batchSize; row++) {
+                batch.get(row).result.set(logits == null ? null : logits[row]);
+            }
+        } catch (InferenceException | RuntimeException e) {
+            Log.e(TAG, "Batch of " + batchSize + " failed", e);
+            for (Request request : batch) {
+                request.result.setException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.example.llm.inference;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.example.llm.transformers.FeatureConverter;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Classifies many texts, e.g. a whole SMS inbox or the lines of a file, as fast as the device
+ * allows. Texts are tokenized in parallel on a pool of threads, their features go through a
+ * {@link BatchingClassifier} so concurrent texts share inference batches, and results come back
+ * in input order.
+ *
+ * At most maxInFlight texts are read ahead of the consumer: while that many are being classified
+ * or wait to be taken, no more texts are read, so a slow consumer or a huge source does not fill
+ * the heap. Texts longer than the converter's maxSeqLen are truncated, as in {@link
+ * FeatureConverter#convert(String, boolean)}.
+ * */
+public class BulkClassifier implements AutoCloseable {
+    private static final long MAX_BATCH_WAIT_MS = 5;
+
+    private final FeatureConverter featureConverter;
+    private final BatchingClassifier batchingClassifier;
+    private final ListeningExecutorService tokenizers;
+    private final int maxInFlight;
+
+    /** One classified text; exactly one of logits and error is set unless the engine had no model. */
+    public static final class Result {
+        public final long index;
+        public final String text;
+        @Nullable public final float[] logits;
+        @Nullable public final Throwable error;
+
+        Result(long index, String text, float[] logits, Throwable error){
+            this.index = index;
+            this.text = text;
+            this.logits = logits;
+            this.error = error;
+        }
+    }
+
+    /**
+     * @param tokenizerThreads threads tokenizing texts, e.g. the number of cores.
+     * @param maxBatchSize     texts per inference batch.
+     * @param maxInFlight      texts read ahead of the consumer, at least maxBatchSize to fill batches.
+     */
+    public BulkClassifier(InferenceEngine engine, FeatureConverter featureConverter,
+                          int tokenizerThreads, int maxBatchSize, int maxInFlight){
+        if (tokenizerThreads < 1 || maxInFlight < 1) {
+            throw new IllegalArgumentException("tokenizerThreads and maxInFlight must be positive");
+        }
+        this.featureConverter = featureConverter;
+        this.batchingClassifier = new BatchingClassifier(
+                engine, featureConverter.getBuckets(), maxBatchSize, MAX_BATCH_WAIT_MS);
+        this.tokenizers = MoreExecutors.listeningDecorator(
+                Executors.newFixedThreadPool(tokenizerThreads, namedThreads("BulkTokenizer")));
+        this.maxInFlight = maxInFlight;
+    }
+
+    /** Uses every core but one for tokenization, leaving one to the inference thread. */
+    public static BulkClassifier withDefaults(InferenceEngine engine, FeatureConverter featureConverter){
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        return new BulkClassifier(engine, featureConverter, threads, 8, 64);
+    }
+
+    /**
+     * Starts classifying texts and returns right away. texts is read on a thread of its own, so it
+     * may block, e.g. on a cursor or a file; it must not be used elsewhere until the job ends.
+     */
+    public Job classify(Iterator<String> texts){
+        Job job = new Job(texts);
+        job.feeder.start();
+        return job;
+    }
+
+    public BatchingClassifier.Stats getBatchStats(){
+        return batchingClassifier.getStats();
+    }
+
+    /** Stops the tokenizer and inference threads; unfinished jobs end with errors. */
+    @Override
+    public void close() {
+        tokenizers.shutdownNow();
+        batchingClassifier.close();
+    }
+
+    private ListenableFuture<float[]> submit(String text){
+        return Futures.transformAsync(
+                tokenizers.submit(() -> featureConverter.convert(text, true)),
+                batchingClassifier::submit, MoreExecutors.directExecutor());
+    }
+
+    private static ThreadFactory namedThreads(String name){
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static final class Pending {
+        final long index;
+        final String text;
+        final ListenableFuture<float[]> logits;
+
+        Pending(long index, String text, ListenableFuture<float[]> logits){
+            this.index = index;
+            this.text = text;
+            this.logits = logits;
+        }
+    }
+
+    private static final Pending END = new Pending(-1, null, null);
+
+    /** The results of one {@link #classify(Iterator)} call, taken in order by a single consumer. */
+    public final class Job {
+        private final Iterator<String> texts;
+        private final Thread feeder;
+        // Texts in input order; a text takes a slot when read and frees it when its result is taken.
+        private final BlockingQueue<Pending> pending = new LinkedBlockingQueue<>();
+        private final Semaphore slots = new Semaphore(maxInFlight);
+        private final AtomicLong submitted = new AtomicLong();
+        private final AtomicLong completed = new AtomicLong();
+        private volatile boolean cancelled;
+        private volatile RuntimeException sourceError;
+        private boolean ended;
+
+        Job(Iterator<String> texts){
+            this.texts = texts;
+            this.feeder = new Thread(this::feed, "BulkClassifier-feed");
+            this.feeder.setDaemon(true);
+        }
+
+        private void feed(){
+            try {
+                long index = 0;
+                while (!cancelled && texts.hasNext()) {
+                    String text = texts.next();
+                    slots.acquire();
+                    pending.add(new Pending(index++, text, submit(text)));
+                    submitted.incrementAndGet();
+                    if (cancelled) {
+                        dropPending();
+                    }
+                }
+            } catch (InterruptedException e) {
+                // Interrupted by cancel().
+            } catch (RuntimeException e) {
+                sourceError = e;
+            } finally {
+                pending.add(END);
+            }
+        }
+
+        /**
+         * Blocks until the next result in input order is ready.
+         *
+         * @return the result, or null once every text was classified or the job was cancelled.
+         * @throws IllegalStateException if reading the texts failed; the results before it were
+         *                               all returned.
+         */
+        @WorkerThread
+        @Nullable
+        public Result next() throws InterruptedException {
+            if (ended || cancelled) {
+                return null;
+            }
+            Pending next = pending.take();
+            if (next == END) {
+                ended = true;
+                if (sourceError != null && !cancelled) {
+                    throw new IllegalStateException("Reading the texts failed", sourceError);
+                }
+                return null;
+            }
+            slots.release();
+            float[] logits = null;
+            Throwable error = null;
+            try {
+                logits = next.logits.get();
+            } catch (ExecutionException e) {
+                error = e.getCause();
+            } catch (CancellationException e) {
+                if (cancelled) {
+                    return null;
+                }
+                error = e;
+            }
+            completed.incrementAndGet();
+            return new Result(next.index, next.text, logits, error);
+        }
+
+        /** Texts read so far, including those still being classified. */
+        public long getSubmittedCount(){
+            return submitted.get();
+        }
+
+        /** Results taken with {@link #next()} so far. */
+        public long getCompletedCount(){
+            return completed.get();
+        }
+
+        public boolean isCancelled(){
+            return cancelled;
+        }
+
+        /**
+         * Stops reading texts and drops the results not taken yet, which frees their batch rows;
+         * {@link #next()} returns null from now on. Can be called from any thread.
+         */
+        public void cancel(){
+            cancelled = true;
+            feeder.interrupt();
+            dropPending();
+            // Wakes a consumer blocked in next() even if the feeder's END was dropped.
+            pending.add(END);
+        }
+
+        private void dropPending(){
+            Pending dropped;
+            while ((dropped = pending.poll()) != null) {
+                if (dropped != END) {
+                    dropped.logits.cancel(false);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.llm.inference;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.example.llm.embedding.VectorIndex;
+import com.example.llm.metrics.MetricsRegistry;
+import com.example.llm.metrics.Timer;
+import com.example.llm.transformers.Feature;
+import com.example.llm.transformers.FeatureConverter;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Recognizes messages of known spam campaigns: example messages are embedded by the engine and
+ * kept in a {@link VectorIndex} under their campaign's label, and a new message matches the
+ * campaign of its most similar example when the cosine similarity reaches minSimilarity.
+ * Rewordings, changed links and swapped numbers of the same campaign stay close in embedding
+ * space, which exact result caching misses.
+ *
+ * Only the first window of a long message is embedded; campaigns repeat their opening.
+ * */
+public class CampaignMatcher {
+    public static final String SEARCH_TIMER = "campaign.search";
+
+    private final InferenceEngine engine;
+    private final FeatureConverter featureConverter;
+    private final VectorIndex index;
+    private final int windowSize;
+    private final float minSimilarity;
+    private final Timer searchTimer = MetricsRegistry.getDefault().timer(SEARCH_TIMER);
+
+    /** @param windowSize wordpieces embedded per message, at most the converter's maxSeqLen - 2. */
+    public CampaignMatcher(InferenceEngine engine, FeatureConverter featureConverter, VectorIndex index,
+                           int windowSize, float minSimilarity){
+        this.engine = engine;
+        this.featureConverter = featureConverter;
+        this.index = index;
+        this.windowSize = windowSize;
+        this.minSimilarity = minSimilarity;
+    }
+
+    /** @return the embedding of wordpiece ids[0, count), or null if the engine exports none. */
+    @WorkerThread
+    @Nullable
+    public float[] embed(int[] ids, int count) throws InferenceException {
+        Feature feature = featureConverter.convertWindows(ids, count, windowSize, windowSize).get(0);
+        try (InputBatch batch = engine.acquireBatch(1, feature.inputIds.length)) {
+            batch.putRow(0, feature.inputIds, feature.tokenCount);
+            float[][] embeddings = engine.embed(batch);
+            return embeddings == null ? null : embeddings[0];
+        }
+    }
+
+    /**
+     * Adds a message as an example of a campaign.
+     *
+     * @return false if the engine exports no embeddings.
+     */
+    @WorkerThread
+    public boolean addExample(long campaign, int[] ids, int count) throws InferenceException, IOException {
+        float[] embedding = embed(ids, count);
+        if (embedding == null) {
+            return false;
+        }
+        index.add(campaign, embedding);
+        return true;
+    }
+
+    /** @return the closest example if it is similar enough, else null. */
+    @WorkerThread
+    @Nullable
+    public VectorIndex.Match match(int[] ids, int count) throws InferenceException {
+        if (index.size() == 0) {
+            return null;
+        }
+        float[] embedding = embed(ids, count);
+        return embedding == null ? null : match(embedding);
+    }
+
+    /** Same as {@link #match(int[], int)} for an embedding computed elsewhere. */
+    @Nullable
+    public VectorIndex.Match match(float[] embedding){
+        long start = System.nanoTime();
+        List<VectorIndex.Match> matches = index.search(embedding, 1);
+        searchTimer.recordSince(start);
+        if (matches.isEmpty() || matches.get(0).score < minSimilarity) {
+            return null;
+        }
+        return matches.get(0);
+    }
+}
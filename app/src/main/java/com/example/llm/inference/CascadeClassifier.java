@@ -0,0 +1,91 @@
+package com.example.llm.inference;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.example.llm.metrics.Counter;
+import com.example.llm.metrics.MetricsRegistry;
+
+import java.util.Locale;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Runs the cheap {@link MachineLearningEngine} first and the transformer only when it is unsure.
+ * A text whose pre-filter spam probability is below hamBelow or above spamAbove is answered by
+ * the pre-filter in microseconds; everything in between escalates to the {@link
+ * ChunkedClassifier}. Without a trained pre-filter every text escalates.
+ *
+ * Widening the thresholds towards 0 and 1 trades latency for accuracy: hamBelow 0 and spamAbove
+ * 1 send every text to the transformer. The counters below show how many texts exit early.
+ * */
+public class CascadeClassifier {
+    public static final String EARLY_HAM_COUNTER = "cascade.early.ham";
+    public static final String EARLY_SPAM_COUNTER = "cascade.early.spam";
+    public static final String ESCALATED_COUNTER = "cascade.escalated";
+
+    private final MachineLearningEngine prefilter;
+    private final ChunkedClassifier classifier;
+    private final float hamBelow;
+    private final float spamAbove;
+    private final Counter earlyHam = MetricsRegistry.getDefault().counter(EARLY_HAM_COUNTER);
+    private final Counter earlySpam = MetricsRegistry.getDefault().counter(EARLY_SPAM_COUNTER);
+    private final Counter escalated = MetricsRegistry.getDefault().counter(ESCALATED_COUNTER);
+
+    /**
+     * @param hamBelow  pre-filter probabilities below this are final ham verdicts.
+     * @param spamAbove pre-filter probabilities above this are final spam verdicts.
+     */
+    public CascadeClassifier(MachineLearningEngine prefilter, ChunkedClassifier classifier,
+                             float hamBelow, float spamAbove){
+        if (!(0 <= hamBelow && hamBelow <= spamAbove && spamAbove <= 1)) {
+            throw new IllegalArgumentException("Need 0 <= hamBelow <= spamAbove <= 1");
+        }
+        this.prefilter = prefilter;
+        this.classifier = classifier;
+        this.hamBelow = hamBelow;
+        this.spamAbove = spamAbove;
+    }
+
+    /**
+     * Classifies wordpiece ids[0, count) as {@link ChunkedClassifier#classify(int[], int,
+     * BooleanSupplier)} does, answering from the pre-filter when it is confident.
+     *
+     * @return the logits, or null if the transformer cannot classify yet or cancelled.
+     */
+    @WorkerThread
+    @Nullable
+    public float[] classify(int[] ids, int count, BooleanSupplier cancelled) throws InferenceException {
+        float probability = prefilter.spamProbability(ids, count);
+        if (probability < hamBelow) {
+            earlyHam.increment();
+            return logits(probability);
+        }
+        if (probability > spamAbove) {
+            earlySpam.increment();
+            return logits(probability);
+        }
+        // Also NaN, when there is no pre-filter model.
+        escalated.increment();
+        return classifier.classify(ids, count, cancelled);
+    }
+
+    /** Fraction of the texts classified so far that went to the transformer. */
+    public double getEscalationRate(){
+        long escalatedCount = escalated.get();
+        long total = earlyHam.get() + earlySpam.get() + escalatedCount;
+        return total == 0 ? 0 : (double) escalatedCount / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "cascade [%.3f, %.3f]: %d early ham, %d early spam, %d escalated (%.1f%%)",
+                hamBelow, spamAbove, earlyHam.get(), earlySpam.get(), escalated.get(),
+                100 * getEscalationRate());
+    }
+
+    // Logits whose softmax gives back the probability: {0, log-odds}.
+    private static float[] logits(float probability){
+        double clamped = Math.min(Math.max(probability, 1e-7), 1 - 1e-7);
+        return new float[]{0f, (float) Math.log(clamped / (1 - clamped))};
+    }
+}
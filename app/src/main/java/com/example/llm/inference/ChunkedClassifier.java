@@ -0,0 +1,103 @@
+package com.example.llm.inference;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.example.llm.metrics.MetricsRegistry;
+import com.example.llm.metrics.Timer;
+import com.example.llm.transformers.Feature;
+import com.example.llm.transformers.FeatureConverter;
+
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Classifies texts of any length by running overlapping token windows through the engine in
+ * batches and aggregating their logits, instead of dropping everything past the model's maximum
+ * sequence length. Work grows linearly with the number of tokens.
+ * */
+public class ChunkedClassifier {
+    private static final int MAX_WINDOWS_PER_BATCH = 8;
+    public static final String BATCHING_TIMER = "batching";
+
+    private final InferenceEngine engine;
+    private final FeatureConverter featureConverter;
+    private final int windowSize;
+    private final int stride;
+    private final WindowAggregation aggregation;
+    private final Timer batchingTimer = MetricsRegistry.getDefault().timer(BATCHING_TIMER);
+
+    /**
+     * @param windowSize wordpieces per window, at most the converter's maxSeqLen - 2.
+     * @param stride     distance between window starts; windowSize - stride tokens overlap.
+     */
+    public ChunkedClassifier(InferenceEngine engine, FeatureConverter featureConverter,
+                             int windowSize, int stride, WindowAggregation aggregation){
+        this.engine = engine;
+        this.featureConverter = featureConverter;
+        this.windowSize = windowSize;
+        this.stride = stride;
+        this.aggregation = aggregation;
+    }
+
+    /** @return the aggregated logits, or null if the engine cannot classify yet. */
+    @WorkerThread
+    @Nullable
+    public float[] classify(String text) throws InferenceException {
+        return classify(featureConverter.convertWindows(text, windowSize, stride), () -> false);
+    }
+
+    /**
+     * Classifies ids[0, count) that were tokenized ahead of time, e.g. by an IncrementalTokenizer.
+     * cancelled is checked before the first run and between batches, so a result nobody waits for
+     * anymore stops early.
+     *
+     * @return the aggregated logits, or null if the engine cannot classify yet or cancelled.
+     */
+    @WorkerThread
+    @Nullable
+    public float[] classify(int[] ids, int count, BooleanSupplier cancelled) throws InferenceException {
+        return classify(featureConverter.convertWindows(ids, count, windowSize, stride), cancelled);
+    }
+
+    private float[] classify(List<Feature> windows, BooleanSupplier cancelled) throws InferenceException {
+        // Also before a short text's only run: the user may have typed on while it was tokenized.
+        if (cancelled.getAsBoolean()) {
+            return null;
+        }
+        if (windows.size() == 1) {
+            return engine.classify(windows.get(0));
+        }
+
+        float[][] windowLogits = new float[windows.size()][];
+        for (int first = 0; first < windows.size(); first += MAX_WINDOWS_PER_BATCH) {
+            if (first > 0 && cancelled.getAsBoolean()) {
+                return null;
+            }
+            List<Feature> batch = windows.subList(first, Math.min(windows.size(), first + MAX_WINDOWS_PER_BATCH));
+            float[][] logits = classifyBatch(batch);
+            if (logits == null) {
+                return null;
+            }
+            System.arraycopy(logits, 0, windowLogits, first, logits.length);
+        }
+        return aggregation.combine(windowLogits);
+    }
+
+    // The windows of one text share a bucket except possibly the shorter tail, padded up to it.
+    private float[][] classifyBatch(List<Feature> batch) throws InferenceException {
+        long start = System.nanoTime();
+        int seqLen = 0;
+        for (Feature feature : batch) {
+            seqLen = Math.max(seqLen, feature.inputIds.length);
+        }
+        try (InputBatch inputs = engine.acquireBatch(batch.size(), seqLen)) {
+            for (int row = 0; row < batch.size(); row++) {
+                Feature feature = batch.get(row);
+                inputs.putRow(row, feature.inputIds, feature.tokenCount);
+            }
+            batchingTimer.recordSince(start);
+            return engine.classify(inputs);
+        }
+    }
+}
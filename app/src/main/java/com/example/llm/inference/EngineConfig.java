@@ -0,0 +1,182 @@
+package com.example.llm.inference;
+
+import com.example.llm.embedding.EmbeddingPooling;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.EnumSet;
+
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+import ai.onnxruntime.providers.NNAPIFlags;
+
+/**
+ * ONNX Runtime session settings for {@link OnnxInferenceEngine}, kept in one place so they can be
+ * benchmarked against each other.
+ *
+ * The model should take an attention_mask input. Without one, padded batches run row by row, which
+ * the engine logs once and counts in {@link OnnxInferenceEngine#UNBATCHED_ROWS_COUNTER}.
+ * */
+public class EngineConfig {
+    public enum ExecutionProvider {
+        CPU,
+        NNAPI,
+        XNNPACK
+    }
+
+    private int intraOpThreads = 0; // 0 lets ONNX Runtime pick
+    private int interOpThreads = 0;
+    private OrtSession.SessionOptions.OptLevel optLevel = OrtSession.SessionOptions.OptLevel.ALL_OPT;
+    private OrtSession.SessionOptions.ExecutionMode executionMode =
+            OrtSession.SessionOptions.ExecutionMode.SEQUENTIAL;
+    private boolean memoryPatternOptimization = true;
+    private boolean cpuArenaAllocator = true;
+    private ExecutionProvider executionProvider = ExecutionProvider.CPU;
+    private File optimizedModelFile;
+    private String embeddingOutput;
+    private EmbeddingPooling embeddingPooling = EmbeddingPooling.MEAN;
+
+    public static EngineConfig defaults(){
+        return new EngineConfig()
+                .setIntraOpThreads(Math.min(4, Runtime.getRuntime().availableProcessors()))
+                .setInterOpThreads(1);
+    }
+
+    public EngineConfig setIntraOpThreads(int intraOpThreads){
+        this.intraOpThreads = intraOpThreads;
+        return this;
+    }
+
+    public EngineConfig setInterOpThreads(int interOpThreads){
+        this.interOpThreads = interOpThreads;
+        return this;
+    }
+
+    public EngineConfig setOptLevel(OrtSession.SessionOptions.OptLevel optLevel){
+        this.optLevel = optLevel;
+        return this;
+    }
+
+    public EngineConfig setExecutionMode(OrtSession.SessionOptions.ExecutionMode executionMode){
+        this.executionMode = executionMode;
+        return this;
+    }
+
+    public EngineConfig setMemoryPatternOptimization(boolean memoryPatternOptimization){
+        this.memoryPatternOptimization = memoryPatternOptimization;
+        return this;
+    }
+
+    public EngineConfig setCpuArenaAllocator(boolean cpuArenaAllocator){
+        this.cpuArenaAllocator = cpuArenaAllocator;
+        return this;
+    }
+
+    public EngineConfig setExecutionProvider(ExecutionProvider executionProvider){
+        this.executionProvider = executionProvider;
+        return this;
+    }
+
+    /**
+     * Where the graph optimized at session creation is saved. Later loads read this file and skip
+     * the optimization passes. Null disables the cache, and it is ignored for providers other than
+     * CPU because their compiled partitions cannot be serialized.
+     */
+    public EngineConfig setOptimizedModelFile(File optimizedModelFile){
+        this.optimizedModelFile = optimizedModelFile;
+        return this;
+    }
+
+    /**
+     * Names the model output holding the encoder's hidden states, [batch, seq, hidden], or an
+     * already pooled [batch, hidden] embedding, which {@link InferenceEngine#embed(InputBatch)}
+     * pools into sentence embeddings. Classification models export logits only, so this needs a
+     * model with the extra output, see harness/scripts/add_embedding_output.py.
+     */
+    public EngineConfig setEmbeddingOutput(String embeddingOutput, EmbeddingPooling pooling){
+        this.embeddingOutput = embeddingOutput;
+        this.embeddingPooling = pooling;
+        return this;
+    }
+
+    public String getEmbeddingOutput(){
+        return embeddingOutput;
+    }
+
+    public EmbeddingPooling getEmbeddingPooling(){
+        return embeddingPooling;
+    }
+
+    public File getOptimizedModelFile(){
+        return executionProvider == ExecutionProvider.CPU ? optimizedModelFile : null;
+    }
+
+    public int getIntraOpThreads(){
+        return intraOpThreads;
+    }
+
+    public int getInterOpThreads(){
+        return interOpThreads;
+    }
+
+    public OrtSession.SessionOptions.OptLevel getOptLevel(){
+        return optLevel;
+    }
+
+    public ExecutionProvider getExecutionProvider(){
+        return executionProvider;
+    }
+
+    /**
+     * Native options for one session, to close once the session has been created.
+     *
+     * @param fromOptimizedModel the session reads an already optimized graph, so optimizing and
+     *                           saving it again is skipped.
+     */
+    OrtSession.SessionOptions toSessionOptions(boolean fromOptimizedModel) throws OrtException {
+        OrtSession.SessionOptions options = new OrtSession.SessionOptions();
+        try {
+            if (intraOpThreads > 0) {
+                options.setIntraOpNumThreads(intraOpThreads);
+            }
+            if (interOpThreads > 0) {
+                options.setInterOpNumThreads(interOpThreads);
+            }
+            options.setExecutionMode(executionMode);
+            options.setMemoryPatternOptimization(memoryPatternOptimization);
+            options.setCPUArenaAllocator(cpuArenaAllocator);
+            if (fromOptimizedModel) {
+                options.setOptimizationLevel(OrtSession.SessionOptions.OptLevel.NO_OPT);
+            } else {
+                options.setOptimizationLevel(optLevel);
+                if (getOptimizedModelFile() != null) {
+                    options.setOptimizedModelFilePath(getOptimizedModelFile().getAbsolutePath());
+                }
+            }
+            switch (executionProvider) {
+                case NNAPI:
+                    options.addNnapi(EnumSet.of(NNAPIFlags.USE_FP16));
+                    break;
+                case XNNPACK:
+                    options.addXnnpack(Collections.singletonMap("intra_op_num_threads",
+                            String.valueOf(Math.max(1, intraOpThreads))));
+                    break;
+                default:
+                    break;
+            }
+        } catch (OrtException | RuntimeException e) {
+            options.close();
+            throw e;
+        }
+        return options;
+    }
+
+    @Override
+    public String toString() {
+        return "EngineConfig{intraOp=" + intraOpThreads + ", interOp=" + interOpThreads
+                + ", optLevel=" + optLevel + ", mode=" + executionMode
+                + ", memPattern=" + memoryPatternOptimization + ", arena=" + cpuArenaAllocator
+                + ", provider=" + executionProvider + ", optimizedModel=" + optimizedModelFile
+                + ", embedding=" + (embeddingOutput == null ? "none" : embeddingOutput + "/" + embeddingPooling) + "}";
+    }
+}
@@ -0,0 +1,253 @@
+package com.example.llm.inference;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Scores exports of any size, one message per line or one JSON object per line, and writes one
+ * JSON verdict per input line: {"line":12,"spam":0.9731}, or {"line":12,"error":"..."}.
+ *
+ * The input is read with a {@link MappedLineReader} and classified with a {@link BulkClassifier},
+ * so heap use depends on the in-flight limit, not on the file size. Every checkpointInterval
+ * lines the verdicts are flushed and the input offset reached is saved next to the output; a run
+ * that finds a checkpoint for the same input continues from there instead of starting over.
+ * */
+public class FileClassifier {
+    private static final String CHECKPOINT_SUFFIX = ".checkpoint";
+    private static final int DEFAULT_CHECKPOINT_INTERVAL = 1000;
+
+    public enum Format {
+        /** Every line is a message. */
+        LINES,
+        /** Every line is a JSON object holding the message in a string field. */
+        JSONL
+    }
+
+    public interface ProgressListener {
+        void onProgress(long lines, long bytesRead, long totalBytes);
+    }
+
+    private final BulkClassifier bulkClassifier;
+    private final Format format;
+    private final String textField;
+    private int checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+
+    /** @param textField the JSON field holding the message, ignored for {@link Format#LINES}. */
+    public FileClassifier(BulkClassifier bulkClassifier, Format format, String textField){
+        this.bulkClassifier = bulkClassifier;
+        this.format = format;
+        this.textField = textField;
+    }
+
+    public FileClassifier setCheckpointInterval(int lines){
+        if (lines < 1) {
+            throw new IllegalArgumentException("checkpointInterval must be positive");
+        }
+        this.checkpointInterval = lines;
+        return this;
+    }
+
+    public static File checkpointFile(File output){
+        return new File(output.getPath() + CHECKPOINT_SUFFIX);
+    }
+
+    /**
+     * Classifies input into output, resuming an interrupted run if output has a checkpoint. On
+     * success the checkpoint is deleted; after an exception or interruption it is kept, and
+     * output may hold verdicts past it, which the next run overwrites.
+     *
+     * @return the number of lines classified by this call.
+     */
+    @WorkerThread
+    public long classify(File input, File output, @Nullable ProgressListener listener)
+            throws IOException, InterruptedException {
+        File checkpointFile = checkpointFile(output);
+        Checkpoint checkpoint = Checkpoint.read(checkpointFile, input);
+        try (RandomAccessFile truncate = new RandomAccessFile(output, "rw")) {
+            truncate.setLength(checkpoint.outputBytes);
+        }
+
+        long lines = 0;
+        FileOutputStream outputStream = new FileOutputStream(output, true);
+        try (MappedLineReader reader = new MappedLineReader(input, checkpoint.inputOffset);
+             Writer writer = new BufferedWriter(
+                     new OutputStreamWriter(outputStream, StandardCharsets.UTF_8))) {
+            // The reader runs ahead on the feeder thread; lines come back in input order.
+            ConcurrentLinkedQueue<Line> readLines = new ConcurrentLinkedQueue<>();
+            BulkClassifier.Job job = bulkClassifier.classify(new Iterator<String>() {
+                @Override
+                public boolean hasNext() {
+                    return reader.hasNext();
+                }
+
+                @Override
+                public String next() {
+                    Line line = new Line(reader.next());
+                    line.end = reader.getOffset();
+                    readLines.add(line);
+                    return line.text;
+                }
+            });
+
+            try {
+                BulkClassifier.Result result;
+                while ((result = job.next()) != null) {
+                    Line line = readLines.remove();
+                    writer.write(verdict(checkpoint.lines + result.index, line, result));
+                    writer.write('\n');
+                    lines++;
+                    if (lines % checkpointInterval == 0) {
+                        writer.flush();
+                        new Checkpoint(line.end, checkpoint.lines + lines,
+                                outputStream.getChannel().position(), input)
+                                .write(checkpointFile);
+                        if (listener != null) {
+                            listener.onProgress(checkpoint.lines + lines, line.end, reader.size());
+                        }
+                    }
+                }
+            } catch (IllegalStateException e) {
+                throw new IOException("Cannot read " + input, e.getCause());
+            } finally {
+                job.cancel();
+            }
+        }
+        checkpointFile.delete();
+        return lines;
+    }
+
+    private static String verdict(long lineNumber, Line line, BulkClassifier.Result result){
+        JsonObject verdict = new JsonObject();
+        verdict.addProperty("line", lineNumber);
+        if (line.error != null) {
+            verdict.addProperty("error", line.error);
+        } else if (result.error != null) {
+            verdict.addProperty("error", String.valueOf(result.error.getMessage()));
+        } else if (result.logits == null) {
+            verdict.addProperty("error", "no model");
+        } else {
+            verdict.addProperty("spam", Float.valueOf(String.format(Locale.US, "%.4f",
+                    spamProbability(result.logits))));
+        }
+        return verdict.toString();
+    }
+
+    // Softmax probability of the last class, which is spam for the DistilBert classifier.
+    static float spamProbability(float[] logits){
+        float max = Float.NEGATIVE_INFINITY;
+        for (float logit : logits) {
+            max = Math.max(max, logit);
+        }
+        double sum = 0;
+        for (float logit : logits) {
+            sum += Math.exp(logit - max);
+        }
+        return (float) (Math.exp(logits[logits.length - 1] - max) / sum);
+    }
+
+    private final class Line {
+        final String text;
+        final String error; // why the line has no text to classify
+        long end;
+
+        Line(String line){
+            String text = line;
+            String error = null;
+            if (format == Format.JSONL) {
+                try {
+                    JsonElement field = new JsonParser().parse(line).getAsJsonObject().get(textField);
+                    text = field == null || field.isJsonNull() ? "" : field.getAsString();
+                } catch (RuntimeException e) {
+                    // Malformed JSON, not an object, or a field that is not a string.
+                    text = "";
+                    error = "cannot read " + textField + ": " + e.getMessage();
+                }
+            }
+            this.text = text;
+            this.error = error;
+        }
+    }
+
+    /** Where an interrupted run stopped: the next input offset and the verdict bytes before it. */
+    static final class Checkpoint {
+        final long inputOffset;
+        final long lines;
+        final long outputBytes;
+        final long inputSize;
+        final long inputModified;
+
+        Checkpoint(long inputOffset, long lines, long outputBytes, File input){
+            this(inputOffset, lines, outputBytes, input.length(), input.lastModified());
+        }
+
+        Checkpoint(long inputOffset, long lines, long outputBytes, long inputSize,
+                           long inputModified){
+            this.inputOffset = inputOffset;
+            this.lines = lines;
+            this.outputBytes = outputBytes;
+            this.inputSize = inputSize;
+            this.inputModified = inputModified;
+        }
+
+        /** The saved checkpoint, or the start if there is none or the input changed since. */
+        static Checkpoint read(File file, File input){
+            Checkpoint start = new Checkpoint(0, 0, 0, input);
+            if (!file.isFile()) {
+                return start;
+            }
+            Properties properties = new Properties();
+            try (InputStream in = new FileInputStream(file)) {
+                properties.load(in);
+                Checkpoint saved = new Checkpoint(
+                        Long.parseLong(properties.getProperty("inputOffset")),
+                        Long.parseLong(properties.getProperty("lines")),
+                        Long.parseLong(properties.getProperty("outputBytes")),
+                        Long.parseLong(properties.getProperty("inputSize")),
+                        Long.parseLong(properties.getProperty("inputModified")));
+                boolean sameInput = saved.inputSize == start.inputSize
+                        && saved.inputModified == start.inputModified;
+                return sameInput && saved.inputOffset <= saved.inputSize ? saved : start;
+            } catch (IOException | RuntimeException e) {
+                return start;
+            }
+        }
+
+        // Written to a temporary file and renamed, so a crash leaves the old or the new one.
+        void write(File file) throws IOException {
+            Properties properties = new Properties();
+            properties.setProperty("inputOffset", Long.toString(inputOffset));
+            properties.setProperty("lines", Long.toString(lines));
+            properties.setProperty("outputBytes", Long.toString(outputBytes));
+            properties.setProperty("inputSize", Long.toString(inputSize));
+            properties.setProperty("inputModified", Long.toString(inputModified));
+            File partial = new File(file.getPath() + ".part");
+            try (OutputStream out = new FileOutputStream(partial)) {
+                properties.store(out, null);
+            }
+            if (!partial.renameTo(file)) {
+                partial.delete();
+                throw new IOException("Cannot move " + partial + " to " + file);
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.llm.inference;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.example.llm.transformers.Feature;
+
+import java.nio.LongBuffer;
+
+/**
+ * A text classifier backend that turns tokenized features into class logits.
+ *
+ * Implementations own their native resources and must be closed when no longer used.
+ * */
+public interface InferenceEngine extends AutoCloseable {
+    /**
+     * @return the logits for each class, or null if this engine cannot classify yet.
+     */
+    @WorkerThread
+    @Nullable
+    float[] classify(Feature feature) throws InferenceException;
+
+    /**
+     * Classifies batchSize sequences in one call. inputIds and attentionMask hold the rows one
+     * after another, each padded to seqLen, with a mask of 1 for real tokens and 0 for padding.
+     *
+     * @return the logits of each row, or null if this engine cannot classify yet.
+     */
+    @WorkerThread
+    @Nullable
+    float[][] classify(LongBuffer inputIds, LongBuffer attentionMask, int batchSize, int seqLen)
+            throws InferenceException;
+
+    /**
+     * Input buffers for a batch of the given shape, to fill and pass to
+     * {@link #classify(InputBatch)}. Close the batch afterwards so the engine can reuse it.
+     *
+     * A model without an attention mask input cannot batch rows of different lengths: padding
+     * would change its verdicts, so such a batch runs one row at a time.
+     */
+    @WorkerThread
+    default InputBatch acquireBatch(int batchSize, int seqLen) throws InferenceException {
+        return InputBatch.allocateHeap(batchSize, seqLen);
+    }
+
+    /** Classifies a batch from {@link #acquireBatch(int, int)}; the caller still closes it. */
+    @WorkerThread
+    @Nullable
+    default float[][] classify(InputBatch batch) throws InferenceException {
+        return classify(batch.inputIds(), batch.attentionMask(), batch.batchSize, batch.seqLen);
+    }
+
+    /**
+     * Unit-length sentence embeddings of the rows of a batch from {@link #acquireBatch(int, int)},
+     * for similarity search; the caller still closes the batch.
+     *
+     * @return one embedding per row, or null if this engine exports no embeddings.
+     */
+    @WorkerThread
+    @Nullable
+    default float[][] embed(InputBatch batch) throws InferenceException {
+        return null;
+    }
+
+    @Override
+    void close();
+}
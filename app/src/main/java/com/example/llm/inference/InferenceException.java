@@ -0,0 +1,14 @@
+package com.example.llm.inference;
+
+/**
+ * Raised when an {@link InferenceEngine} cannot produce a result, wrapping the backend's own error.
+ * */
+public class InferenceException extends Exception {
+    public InferenceException(String message){
+        super(message);
+    }
+
+    public InferenceException(String message, Throwable cause){
+        super(message, cause);
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.llm.inference;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+
+/**
+ * Input ids and attention mask of one batch, laid out as the model takes them: batchSize rows of
+ * seqLen longs each. Obtained from {@link InferenceEngine#acquireBatch(int, int)} and closed once
+ * classified, which hands pooled buffers back to the engine for the next request of that shape.
+ *
+ * Rows are copied in with {@link #putRow(int, int[], int)}, which also pads and masks them. The
+ * buffers returned are the batch's own, not copies, so a batch is filled from one thread at a time.
+ * */
+public final class InputBatch implements AutoCloseable {
+    private static final int PAD_ID = 0;
+
+    public final int batchSize;
+    public final int seqLen;
+    private final LongBuffer inputIds;
+    private final LongBuffer attentionMask;
+    private final Releaser releaser; // null for buffers nobody reuses
+    private boolean closed;
+    // Whatever the engine keeps alongside pooled buffers, e.g. tensors wrapping them.
+    Object engineState;
+
+    interface Releaser {
+        void release(InputBatch batch);
+    }
+
+    InputBatch(LongBuffer inputIds, LongBuffer attentionMask, int batchSize, int seqLen,
+               Releaser releaser){
+        this.inputIds = inputIds;
+        this.attentionMask = attentionMask;
+        this.batchSize = batchSize;
+        this.seqLen = seqLen;
+        this.releaser = releaser;
+    }
+
+    /** Direct, native-order buffers that ONNX Runtime can use without copying. */
+    static InputBatch allocateDirect(int batchSize, int seqLen, Releaser releaser){
+        return new InputBatch(allocateDirect(batchSize * seqLen), allocateDirect(batchSize * seqLen),
+                batchSize, seqLen, releaser);
+    }
+
+    /** Unpooled heap buffers, for engines that copy their input anyway. */
+    static InputBatch allocateHeap(int batchSize, int seqLen){
+        return new InputBatch(LongBuffer.allocate(batchSize * seqLen),
+                LongBuffer.allocate(batchSize * seqLen), batchSize, seqLen, null);
+    }
+
+    private static LongBuffer allocateDirect(int longs){
+        return ByteBuffer.allocateDirect(longs * 8).order(ByteOrder.nativeOrder()).asLongBuffer();
+    }
+
+    /** Copies ids[0, count) into a row, truncated to seqLen, and masks the rest as padding. */
+    public void putRow(int row, int[] ids, int count){
+        int tokens = Math.min(count, seqLen);
+        int offset = row * seqLen;
+        for (int i = 0; i < tokens; i++) {
+            inputIds.put(offset + i, ids[i]);
+        }
+        endRow(row, tokens);
+    }
+
+    /** Pads a row after its first tokenCount ids and writes its attention mask. */
+    void endRow(int row, int tokenCount){
+        int offset = row * seqLen;
+        for (int i = 0; i < seqLen; i++) {
+            boolean isToken = i < tokenCount;
+            if (!isToken) {
+                inputIds.put(offset + i, PAD_ID);
+            }
+            attentionMask.put(offset + i, isToken ? 1L : 0L);
+        }
+    }
+
+    /** Real tokens of a row, counted from its attention mask. */
+    int tokenCount(int row){
+        int offset = row * seqLen;
+        int count = 0;
+        for (int i = 0; i < seqLen; i++) {
+            if (attentionMask.get(offset + i) != 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /** Whether any row ends in padding. */
+    boolean isPadded(){
+        for (int row = 0; row < batchSize; row++) {
+            if (attentionMask.get(row * seqLen + seqLen - 1) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** All rows, positioned at 0 and limited to batchSize * seqLen. */
+    public LongBuffer inputIds(){
+        inputIds.clear();
+        return inputIds;
+    }
+
+    public LongBuffer attentionMask(){
+        attentionMask.clear();
+        return attentionMask;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (releaser != null) {
+            releaser.release(this);
+        }
+    }
+
+    // Pooled batches are handed out again after close().
+    void reopen(){
+        closed = false;
+    }
+}
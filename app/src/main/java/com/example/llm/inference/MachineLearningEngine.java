@@ -0,0 +1,103 @@
+package com.example.llm.inference;
+
+import androidx.annotation.Nullable;
+
+import com.example.llm.metrics.MetricsRegistry;
+import com.example.llm.metrics.Timer;
+import com.example.llm.prefilter.HashedLogisticModel;
+import com.example.llm.transformers.Feature;
+
+import java.nio.LongBuffer;
+
+/**
+ * The classical classifier selected when IS_LLM_MODEL is off, and the first stage of a
+ * {@link CascadeClassifier}: hashed logistic regression over the wordpiece ids. Logits are
+ * {0, spam log-odds}, so the usual softmax gives the model's spam probability.
+ *
+ * Without a trained model it never produces logits.
+ * */
+public class MachineLearningEngine implements InferenceEngine {
+    public static final String PREFILTER_TIMER = "prefilter";
+
+    @Nullable
+    private final HashedLogisticModel model;
+    private final int clsId;
+    private final int sepId;
+    private final Timer timer = MetricsRegistry.getDefault().timer(PREFILTER_TIMER);
+
+    public MachineLearningEngine(){
+        this(null, -1, -1);
+    }
+
+    /**
+     * @param clsId the [CLS] id that starts features, dropped since the model is trained on the
+     *              wordpieces alone; likewise sepId at their end.
+     */
+    public MachineLearningEngine(@Nullable HashedLogisticModel model, int clsId, int sepId){
+        this.model = model;
+        this.clsId = clsId;
+        this.sepId = sepId;
+    }
+
+    public boolean hasModel(){
+        return model != null;
+    }
+
+    /**
+     * Spam probability of ids[0, count), wordpieces without [CLS] and [SEP].
+     *
+     * @return the probability, or NaN without a model.
+     */
+    public float spamProbability(int[] ids, int count){
+        if (model == null) {
+            return Float.NaN;
+        }
+        long start = System.nanoTime();
+        float probability = model.probability(ids, 0, count);
+        timer.recordSince(start);
+        return probability;
+    }
+
+    @Nullable
+    @Override
+    public float[] classify(Feature feature) {
+        if (model == null) {
+            return null;
+        }
+        long start = System.nanoTime();
+        float[] logits = logits(feature.inputIds, feature.tokenCount);
+        timer.recordSince(start);
+        return logits;
+    }
+
+    @Nullable
+    @Override
+    public float[][] classify(LongBuffer inputIds, LongBuffer attentionMask, int batchSize, int seqLen) {
+        if (model == null) {
+            return null;
+        }
+        int[] ids = new int[seqLen];
+        float[][] logits = new float[batchSize][];
+        for (int row = 0; row < batchSize; row++) {
+            int count = 0;
+            for (int i = 0; i < seqLen; i++) {
+                if (attentionMask.get(row * seqLen + i) != 0) {
+                    ids[count++] = (int) inputIds.get(row * seqLen + i);
+                }
+            }
+            logits[row] = logits(ids, count);
+        }
+        return logits;
+    }
+
+    private float[] logits(int[] ids, int count){
+        int from = count > 0 && ids[0] == clsId ? 1 : 0;
+        int to = count > from && ids[count - 1] == sepId ? count - 1 : count;
+        return new float[]{0f, model.logit(ids, from, to)};
+    }
+
+    @Override
+    public void close() {
+
+    }
+}
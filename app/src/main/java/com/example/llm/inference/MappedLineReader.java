@@ -0,0 +1,170 @@
+package com.example.llm.inference;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads the lines of a UTF-8 file of any size through a memory-mapped window that slides over
+ * it, so the heap only ever holds the current line. Lines end with \n or \r\n; invalid UTF-8 is
+ * decoded as U+FFFD. A line longer than the window is cut to the window and the rest skipped.
+ *
+ * {@link #getOffset()} is the byte offset of the next line, so reading can resume there later.
+ * */
+public class MappedLineReader implements Iterator<String>, AutoCloseable {
+    static final int DEFAULT_WINDOW_BYTES = 8 << 20;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long size;
+    private final int windowBytes;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long offset;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private CharBuffer chars = CharBuffer.allocate(256);
+
+    /** @param offset where to start, 0 or an offset returned by {@link #getOffset()}. */
+    public MappedLineReader(File file, long offset) throws IOException {
+        this(file, offset, DEFAULT_WINDOW_BYTES);
+    }
+
+    MappedLineReader(File file, long offset, int windowBytes) throws IOException {
+        this.file = new RandomAccessFile(file, "r");
+        this.channel = this.file.getChannel();
+        this.size = channel.size();
+        this.windowBytes = windowBytes;
+        if (offset < 0 || offset > size) {
+            close();
+            throw new IOException("Offset " + offset + " is outside " + file + " of " + size + " bytes");
+        }
+        this.offset = offset == 0 ? skipByteOrderMark() : offset;
+    }
+
+    public long size(){
+        return size;
+    }
+
+    /** Byte offset of the next line, or the file size after the last one. */
+    public long getOffset(){
+        return offset;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return offset < size;
+    }
+
+    /** @throws UncheckedIOException if the file cannot be mapped. */
+    @Override
+    public String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        try {
+            return readLine();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    private String readLine() throws IOException {
+        long lineStart = offset;
+        long newline = findNewline(lineStart);
+        if (newline < 0 && windowStart != lineStart && windowStart + window.limit() < size) {
+            // The line runs past the window; map a fresh one starting at the line.
+            map(lineStart);
+            newline = findNewline(lineStart);
+        }
+        if (newline >= 0) {
+            offset = newline + 1;
+            return decode(lineStart, newline);
+        }
+        long windowEnd = windowStart + window.limit();
+        if (windowEnd == size) {
+            offset = size;
+            return decode(lineStart, size);
+        }
+        // Longer than a whole window: keep what fits and skip to the next line.
+        String line = decode(lineStart, windowEnd);
+        offset = skipPastNewline(windowEnd);
+        return line;
+    }
+
+    // Absolute offset of the first \n at or after from within the current window, or -1.
+    private long findNewline(long from) throws IOException {
+        if (window == null || from < windowStart || from >= windowStart + window.limit()) {
+            map(from);
+        }
+        for (int i = (int) (from - windowStart); i < window.limit(); i++) {
+            if (window.get(i) == '\n') {
+                return windowStart + i;
+            }
+        }
+        return -1;
+    }
+
+    private long skipPastNewline(long from) throws IOException {
+        while (from < size) {
+            long newline = findNewline(from);
+            if (newline >= 0) {
+                return newline + 1;
+            }
+            from = windowStart + window.limit();
+        }
+        return size;
+    }
+
+    private void map(long start) throws IOException {
+        windowStart = start;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(windowBytes, size - start));
+    }
+
+    // Decodes [start, end) of the file, which lies within the current window.
+    private String decode(long start, long end){
+        int from = (int) (start - windowStart);
+        int to = (int) (end - windowStart);
+        if (to > from && window.get(to - 1) == '\r') {
+            to--;
+        }
+        ByteBuffer bytes = window.duplicate();
+        bytes.limit(to).position(from);
+        // UTF-8 never decodes to more chars than it has bytes.
+        if (chars.capacity() < to - from) {
+            chars = CharBuffer.allocate(Math.max(to - from, 2 * chars.capacity()));
+        }
+        chars.clear();
+        decoder.reset();
+        decoder.decode(bytes, chars, true);
+        decoder.flush(chars);
+        chars.flip();
+        return chars.toString();
+    }
+
+    private long skipByteOrderMark() throws IOException {
+        if (size < 3) {
+            return 0;
+        }
+        map(0);
+        boolean bom = (window.get(0) & 0xff) == 0xef && (window.get(1) & 0xff) == 0xbb
+                && (window.get(2) & 0xff) == 0xbf;
+        return bom ? 3 : 0;
+    }
+}
@@ -0,0 +1,220 @@
+package com.example.llm.inference;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.function.BooleanSupplier;
+
+/**
+ * The reference-counted loads of a model, each an immutable snapshot that callers share across
+ * threads. {@link #acquire()} hands out the current version, loading it first if there is none.
+ * {@link #reload()} loads a new version next to it and, once that has loaded, swaps it in
+ * atomically: later acquire() calls get the new version, while callers that acquired the old one
+ * keep using it until they release it, and it is closed after that. A failed reload leaves the
+ * current version in place.
+ *
+ * Loads and closes run on one executor, in order, so a close queued behind a load that is still
+ * running never leaks what the load creates.
+ * */
+public final class ModelVersions<T> {
+
+    /** Creates one version on the executor. */
+    public interface Loader<T> {
+        /**
+         * @param generation 0 for the first load and one more for every reload, e.g. to tell
+         *                   their caches apart.
+         * @param warmupCancelled becomes true once the version is wanted as soon as possible, or
+         *                        not at all.
+         */
+        T load(int generation, BooleanSupplier warmupCancelled) throws Exception;
+    }
+
+    /** Frees a version nobody holds any more, on the executor. */
+    public interface Closer<T> {
+        void close(T model);
+    }
+
+    // One load of the model and the callers holding it.
+    private static final class Version<T> {
+        final SettableFuture<T> model = SettableFuture.create();
+        // Guarded by the ModelVersions.
+        int refCount;
+        // Set once the user needs the model; the warm-up then stops and the model is published.
+        volatile boolean warmupCancelled;
+    }
+
+    private final Executor executor;
+    private final Loader<T> loader;
+    private final Closer<T> closer;
+    private final Runnable onUnused;
+
+    // Guarded by this. current is what acquire() hands out, next a reload that is not ready yet,
+    // and retired the replaced versions still held by someone.
+    private Version<T> current;
+    private Version<T> next;
+    private final List<Version<T>> retired = new ArrayList<>();
+    private int generation;
+
+    /** @param onUnused runs, under the lock, whenever nobody holds the current version any more. */
+    public ModelVersions(Executor executor, Loader<T> loader, Closer<T> closer, Runnable onUnused){
+        this.executor = executor;
+        this.loader = loader;
+        this.closer = closer;
+        this.onUnused = onUnused;
+    }
+
+    /**
+     * Takes a reference on the current version, starting its load if there is none. Every call
+     * must be paired with {@link #release(ListenableFuture)} of the returned future, even if the
+     * load failed; the next acquire() after a failure loads again.
+     */
+    public synchronized ListenableFuture<T> acquire(){
+        if (current == null) {
+            final Version<T> version = startLoad(generation);
+            current = version;
+            version.model.addListener(() -> dropIfFailed(version), MoreExecutors.directExecutor());
+        }
+        current.refCount++;
+        return current.model;
+    }
+
+    /** Returns a version obtained from {@link #acquire()}. */
+    public synchronized void release(ListenableFuture<T> model){
+        Version<T> version = versionOf(model);
+        if (version == null || version.refCount == 0) {
+            throw new IllegalStateException("release() without acquire()");
+        }
+        version.refCount--;
+        if (version.refCount > 0) {
+            return;
+        }
+        if (version == current) {
+            onUnused.run();
+        } else {
+            retired.remove(version);
+            close(version);
+        }
+    }
+
+    /**
+     * Loads a new version, e.g. after a new model or vocabulary was installed, and makes it
+     * current once it has loaded. A reload already under way is returned instead of a second one.
+     * The future is not a reference; acquire() the new version to use it.
+     */
+    public synchronized ListenableFuture<T> reload(){
+        if (next != null) {
+            return next.model;
+        }
+        final Version<T> version = startLoad(++generation);
+        next = version;
+        version.model.addListener(() -> swapIn(version), MoreExecutors.directExecutor());
+        return version.model;
+    }
+
+    /** Stops priming the versions being loaded, so a caller waits for at most the run in flight. */
+    public synchronized void cancelWarmup(){
+        if (current != null) {
+            current.warmupCancelled = true;
+        }
+        if (next != null) {
+            next.warmupCancelled = true;
+        }
+    }
+
+    /** Closes the current version if nobody holds it. @return whether it did. */
+    public synchronized boolean unloadIfUnused(){
+        if (current == null || current.refCount > 0) {
+            return false;
+        }
+        Version<T> version = current;
+        current = null;
+        close(version);
+        return true;
+    }
+
+    // A failed load is not kept as current, so one transient error does not stick for the life of
+    // the process. Its holders still release it.
+    private synchronized void dropIfFailed(Version<T> version){
+        if (version != current || isLoaded(version.model)) {
+            return;
+        }
+        current = null;
+        if (version.refCount > 0) {
+            retired.add(version);
+        }
+    }
+
+    // Runs when the reload finished, whether it loaded or not.
+    private synchronized void swapIn(Version<T> version){
+        next = null;
+        if (!isLoaded(version.model)) {
+            return; // the current version stays
+        }
+        Version<T> previous = current;
+        current = version;
+        if (previous != null) {
+            if (previous.refCount == 0) {
+                close(previous);
+            } else {
+                retired.add(previous);
+            }
+        }
+        if (version.refCount == 0) {
+            onUnused.run();
+        }
+    }
+
+    private Version<T> startLoad(final int generation){
+        final Version<T> version = new Version<>();
+        executor.execute(() -> {
+            try {
+                version.model.set(loader.load(generation, () -> version.warmupCancelled));
+            } catch (Throwable t) {
+                version.model.setException(t);
+            }
+        });
+        return version;
+    }
+
+    private void close(Version<T> version){
+        final SettableFuture<T> model = version.model;
+        // A load still warming up finishes early instead of priming a model nobody holds.
+        version.warmupCancelled = true;
+        executor.execute(() -> {
+            if (isLoaded(model)) {
+                closer.close(Futures.getUnchecked(model));
+            }
+        });
+    }
+
+    private Version<T> versionOf(ListenableFuture<T> model){
+        if (current != null && current.model == model) {
+            return current;
+        }
+        for (Version<T> version : retired) {
+            if (version.model == model) {
+                return version;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isLoaded(ListenableFuture<?> model){
+        if (!model.isDone()) {
+            return false;
+        }
+        try {
+            Futures.getDone(model);
+            return true;
+        } catch (ExecutionException | CancellationException e) {
+            return false;
+        }
+    }
+}
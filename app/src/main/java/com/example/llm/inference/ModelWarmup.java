@@ -0,0 +1,159 @@
+package com.example.llm.inference;
+
+import androidx.annotation.WorkerThread;
+
+import com.example.llm.metrics.MetricsRegistry;
+import com.example.llm.metrics.Timer;
+import com.example.llm.transformers.SequenceBuckets;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Pushes synthetic batches of every input shape through a freshly created engine, so kernel
+ * selection, arena growth and shape-specific allocations happen before the first real text
+ * instead of during it. Each shape runs once cold and then warmRuns more times, and the report
+ * compares the two.
+ *
+ * The rows are [CLS] followed by [SEP]s up to the full length and entirely unmasked, so every
+ * run does the work of a real text that fills its bucket. The token values do not matter here.
+ * */
+public class ModelWarmup {
+    public static final String COLD_TIMER = "warmup.cold";
+    public static final String WARM_TIMER = "warmup.warm";
+
+    private final InferenceEngine engine;
+    private final int clsId;
+    private final int sepId;
+    private final int warmRuns;
+    private final Timer coldTimer = MetricsRegistry.getDefault().timer(COLD_TIMER);
+    private final Timer warmTimer = MetricsRegistry.getDefault().timer(WARM_TIMER);
+
+    /** One batch shape as passed to {@link InferenceEngine#acquireBatch(int, int)}. */
+    public static final class Shape {
+        public final int batchSize;
+        public final int seqLen;
+
+        public Shape(int batchSize, int seqLen){
+            if (batchSize <= 0 || seqLen < 2) {
+                throw new IllegalArgumentException("Need batchSize >= 1 and seqLen >= 2");
+            }
+            this.batchSize = batchSize;
+            this.seqLen = seqLen;
+        }
+
+        @Override
+        public String toString() {
+            return batchSize + "x" + seqLen;
+        }
+    }
+
+    /** Latencies of the shapes warmed before the run finished or was cancelled. */
+    public static final class Report {
+        private final List<Shape> shapes = new ArrayList<>();
+        private final List<long[]> nanos = new ArrayList<>(); // {cold, mean warm}
+        private boolean cancelled;
+
+        public List<Shape> getShapes(){
+            return Collections.unmodifiableList(shapes);
+        }
+
+        public long getColdNanos(int shape){
+            return nanos.get(shape)[0];
+        }
+
+        /** Mean of the warm runs of the shape, or -1 if there were none. */
+        public long getWarmNanos(int shape){
+            return nanos.get(shape)[1];
+        }
+
+        public boolean isCancelled(){
+            return cancelled;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < shapes.size(); i++) {
+                sb.append(i == 0 ? "" : ", ").append(shapes.get(i))
+                        .append(String.format(Locale.US, " cold %.1fms", getColdNanos(i) / 1e6));
+                if (getWarmNanos(i) >= 0) {
+                    sb.append(String.format(Locale.US, " warm %.1fms", getWarmNanos(i) / 1e6));
+                }
+            }
+            return sb.append(cancelled ? " (cancelled)" : "").toString();
+        }
+    }
+
+    /** @param warmRuns runs after the first per shape, to measure steady-state latency. */
+    public ModelWarmup(InferenceEngine engine, int clsId, int sepId, int warmRuns){
+        if (warmRuns < 0) {
+            throw new IllegalArgumentException("warmRuns must not be negative");
+        }
+        this.engine = engine;
+        this.clsId = clsId;
+        this.sepId = sepId;
+        this.warmRuns = warmRuns;
+    }
+
+    /** Every bucket length with each batch size, shortest first, as the common texts are short. */
+    public static List<Shape> shapes(SequenceBuckets buckets, int... batchSizes){
+        List<Shape> shapes = new ArrayList<>();
+        for (int seqLen : buckets.lengths()) {
+            for (int batchSize : batchSizes) {
+                shapes.add(new Shape(batchSize, seqLen));
+            }
+        }
+        return shapes;
+    }
+
+    /**
+     * Warms the shapes in order. cancelled is checked before every run, so a cancelled warm-up
+     * returns as soon as the run in flight is done.
+     */
+    @WorkerThread
+    public Report run(List<Shape> shapes, BooleanSupplier cancelled) throws InferenceException {
+        Report report = new Report();
+        for (Shape shape : shapes) {
+            int[] ids = new int[shape.seqLen];
+            Arrays.fill(ids, sepId);
+            ids[0] = clsId;
+            long cold = -1;
+            long warmTotal = 0;
+            int warm = 0;
+            for (int run = 0; run <= warmRuns; run++) {
+                if (cancelled.getAsBoolean()) {
+                    report.cancelled = true;
+                    break;
+                }
+                long start = System.nanoTime();
+                try (InputBatch batch = engine.acquireBatch(shape.batchSize, shape.seqLen)) {
+                    for (int row = 0; row < shape.batchSize; row++) {
+                        batch.putRow(row, ids, ids.length);
+                    }
+                    if (engine.classify(batch) == null) {
+                        return report; // the engine cannot classify yet
+                    }
+                }
+                if (run == 0) {
+                    cold = coldTimer.recordSince(start) - start;
+                } else {
+                    warmTotal += warmTimer.recordSince(start) - start;
+                    warm++;
+                }
+            }
+            if (cold >= 0) {
+                report.shapes.add(shape);
+                report.nanos.add(new long[]{cold, warm == 0 ? -1 : warmTotal / warm});
+            }
+            if (report.cancelled) {
+                break;
+            }
+        }
+        return report;
+    }
+}
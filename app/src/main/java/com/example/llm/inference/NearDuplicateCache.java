@@ -0,0 +1,236 @@
+package com.example.llm.inference;
+
+import androidx.annotation.Nullable;
+
+import com.example.llm.metrics.Counter;
+import com.example.llm.metrics.MetricsRegistry;
+import com.example.llm.metrics.Timer;
+import com.google.common.base.Ticker;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reuses the verdict of a recently classified message for its near-duplicates, such as a spam
+ * wave whose messages only differ in a phone number or link. {@link ResultCache} only catches
+ * exact repeats of the wordpiece ids.
+ *
+ * A message is summarized by a MinHash signature over shingles of {@link #SHINGLE_SIZE}
+ * consecutive wordpiece ids: the fraction of equal components of two signatures estimates the
+ * Jaccard similarity of their shingle sets. Signatures are split into {@link #BANDS} bands of
+ * {@link #ROWS} components, and a lookup only compares against entries that share at least one
+ * whole band (locality-sensitive hashing). Pairs above roughly (1/BANDS)^(1/ROWS) = 0.5 similarity
+ * are likely to share a band, so minSimilarity should be above that.
+ *
+ * Entries expire after the time to live, since waves are short-lived and a verdict should not
+ * outlive them, and the oldest go first once maxEntries are cached.
+ * */
+public class NearDuplicateCache {
+    public static final String HIT_COUNTER = "neardup.hit";
+    public static final String MISS_COUNTER = "neardup.miss";
+    public static final String SIGNATURE_TIMER = "neardup.signature";
+    public static final int SHINGLE_SIZE = 3;
+    public static final int BANDS = 16;
+    public static final int ROWS = 4;
+    private static final int HASHES = BANDS * ROWS;
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final float minSimilarity;
+    private final Ticker ticker;
+    private final int[] seeds = new int[HASHES];
+    // Oldest first; entries are only appended, so this is also expiry order.
+    private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+    private final Map<Long, List<Entry>> buckets = new HashMap<>();
+    // Process-wide, across every model's cache; the longs below count this cache alone.
+    private final Counter hitCounter = MetricsRegistry.getDefault().counter(HIT_COUNTER);
+    private final Counter missCounter = MetricsRegistry.getDefault().counter(MISS_COUNTER);
+    private final Timer signatureTimer = MetricsRegistry.getDefault().timer(SIGNATURE_TIMER);
+    private long hits;
+    private long misses;
+    private long expirations;
+    private long evictions;
+
+    private static final class Entry {
+        final int[] signature;
+        final float[] logits;
+        final long createdNanos;
+
+        Entry(int[] signature, float[] logits, long createdNanos){
+            this.signature = signature;
+            this.logits = logits;
+            this.createdNanos = createdNanos;
+        }
+    }
+
+    /** @param minSimilarity estimated Jaccard similarity from which a cached verdict is reused. */
+    public NearDuplicateCache(int maxEntries, long timeToLive, TimeUnit unit, float minSimilarity){
+        this(maxEntries, timeToLive, unit, minSimilarity, Ticker.systemTicker());
+    }
+
+    NearDuplicateCache(int maxEntries, long timeToLive, TimeUnit unit, float minSimilarity, Ticker ticker){
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be positive");
+        }
+        if (!(0 < minSimilarity && minSimilarity <= 1)) {
+            throw new IllegalArgumentException("Need 0 < minSimilarity <= 1");
+        }
+        this.maxEntries = maxEntries;
+        this.ttlNanos = unit.toNanos(timeToLive);
+        this.minSimilarity = minSimilarity;
+        this.ticker = ticker;
+        // Fixed, so signatures stay comparable across instances and runs.
+        int seed = 0x2545f491;
+        for (int i = 0; i < HASHES; i++) {
+            seed = seed * 0x5851f42d + 0x14057b7f;
+            seeds[i] = seed;
+        }
+    }
+
+    /**
+     * MinHash signature of wordpiece ids[0, count), to pass to {@link #get(int[])} and {@link
+     * #put(int[], float[])}. A text shorter than a shingle is one shingle.
+     */
+    public int[] signature(int[] ids, int count){
+        long start = System.nanoTime();
+        int[] signature = new int[HASHES];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        int shingles = Math.max(1, count - SHINGLE_SIZE + 1);
+        for (int s = 0; s < shingles; s++) {
+            int shingle = 0x811c9dc5;
+            for (int i = s; i < Math.min(count, s + SHINGLE_SIZE); i++) {
+                shingle = (shingle ^ ids[i]) * 0x01000193;
+            }
+            for (int h = 0; h < HASHES; h++) {
+                int value = (shingle ^ seeds[h]) * 0x9e3779b1;
+                value ^= value >>> 15;
+                if (value < signature[h]) {
+                    signature[h] = value;
+                }
+            }
+        }
+        signatureTimer.recordSince(start);
+        return signature;
+    }
+
+    /** @return a copy of the verdict of the most similar live entry, or null if none is similar enough. */
+    @Nullable
+    public synchronized float[] get(int[] signature){
+        expire(ticker.read());
+        Entry best = null;
+        int bestEqual = (int) Math.ceil(minSimilarity * HASHES) - 1;
+        for (int band = 0; band < BANDS; band++) {
+            List<Entry> bucket = buckets.get(bandKey(signature, band));
+            if (bucket == null) {
+                continue;
+            }
+            for (Entry entry : bucket) {
+                int equal = equalComponents(signature, entry.signature);
+                if (equal > bestEqual) {
+                    best = entry;
+                    bestEqual = equal;
+                }
+            }
+        }
+        if (best == null) {
+            missCounter.increment();
+            misses++;
+            return null;
+        }
+        hitCounter.increment();
+        hits++;
+        return best.logits.clone();
+    }
+
+    /** Caches the verdict of a classified message under its signature. */
+    public synchronized void put(int[] signature, float[] logits){
+        long now = ticker.read();
+        expire(now);
+        Entry entry = new Entry(signature.clone(), logits.clone(), now);
+        entries.addLast(entry);
+        for (int band = 0; band < BANDS; band++) {
+            long key = bandKey(signature, band);
+            List<Entry> bucket = buckets.get(key);
+            if (bucket == null) {
+                bucket = new ArrayList<>(1);
+                buckets.put(key, bucket);
+            }
+            bucket.add(entry);
+        }
+        while (entries.size() > maxEntries) {
+            remove(entries.removeFirst());
+            evictions++;
+        }
+    }
+
+    /** Inferences avoided by reusing a near-duplicate's verdict. */
+    public synchronized long getHitCount(){
+        return hits;
+    }
+
+    public synchronized long getMissCount(){
+        return misses;
+    }
+
+    public synchronized int size(){
+        return entries.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "%d/%d entries, %d hits, %d misses, %d expired, %d evicted",
+                entries.size(), maxEntries, hits, misses, expirations, evictions);
+    }
+
+    private void expire(long now){
+        while (!entries.isEmpty() && now - entries.peekFirst().createdNanos >= ttlNanos) {
+            remove(entries.removeFirst());
+            expirations++;
+        }
+    }
+
+    private void remove(Entry entry){
+        for (int band = 0; band < BANDS; band++) {
+            long key = bandKey(entry.signature, band);
+            List<Entry> bucket = buckets.get(key);
+            // By identity: two entries may hold equal signatures.
+            for (int i = 0; i < bucket.size(); i++) {
+                if (bucket.get(i) == entry) {
+                    bucket.remove(i);
+                    break;
+                }
+            }
+            if (bucket.isEmpty()) {
+                buckets.remove(key);
+            }
+        }
+    }
+
+    // The band's rows hashed together with the band index, so equal rows of different bands differ.
+    private static long bandKey(int[] signature, int band){
+        long hash = band;
+        for (int i = band * ROWS; i < (band + 1) * ROWS; i++) {
+            hash = (hash ^ (signature[i] & 0xffffffffL)) * 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static int equalComponents(int[] a, int[] b){
+        int equal = 0;
+        for (int i = 0; i < HASHES; i++) {
+            if (a[i] == b[i]) {
+                equal++;
+            }
+        }
+        return equal;
+    }
+}
@@ -0,0 +1,261 @@
+package com.example.llm.inference;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.llm.metrics.Counter;
+import com.example.llm.metrics.MetricsRegistry;
+import com.example.llm.metrics.Timer;
+import com.example.llm.nlp.ModelLoader;
+import com.example.llm.transformers.Feature;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.LongBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import ai.onnxruntime.OnnxTensor;
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+
+/**
+ * {@link InferenceEngine} backed by an ONNX Runtime session created from an {@link EngineConfig}.
+ * */
+public class OnnxInferenceEngine implements InferenceEngine {
+    private static final String TAG = "SpamClassification";
+    private static final String INPUT_IDS = "input_ids";
+    private static final String ATTENTION_MASK = "attention_mask";
+    public static final String TENSORS_TIMER = "tensors";
+    public static final String RUN_TIMER = "session.run";
+    public static final String OUTPUTS_TIMER = "outputs";
+    /** Rows of padded batches run one by one because the model takes no attention mask. */
+    public static final String UNBATCHED_ROWS_COUNTER = "inference.unbatched_rows";
+
+    private final OrtEnvironment env;
+    private final OrtSession session;
+    private final EngineConfig config;
+    private final String inputIdsName;
+    private final String attentionMaskName; // null when the model takes the ids only, padding is then unmasked
+    private final String embeddingOutputName; // null when the model exports no hidden states
+    private final Timer tensorsTimer = MetricsRegistry.getDefault().timer(TENSORS_TIMER);
+    private final Timer runTimer = MetricsRegistry.getDefault().timer(RUN_TIMER);
+    private final Timer outputsTimer = MetricsRegistry.getDefault().timer(OUTPUTS_TIMER);
+    private final Counter rowsCounter = MetricsRegistry.getDefault().counter("inference.rows");
+    private final Counter unbatchedRowsCounter = MetricsRegistry.getDefault().counter(UNBATCHED_ROWS_COUNTER);
+    private final TensorPool tensorPool;
+
+    OnnxInferenceEngine(OrtEnvironment env, OrtSession session, EngineConfig config) throws OrtException {
+        this.env = env;
+        this.session = session;
+        this.config = config;
+        Set<String> inputNames = session.getInputNames();
+        this.inputIdsName = inputNames.contains(INPUT_IDS)
+                ? INPUT_IDS : inputNames.iterator().next();
+        this.attentionMaskName = inputNames.contains(ATTENTION_MASK) ? ATTENTION_MASK : null;
+        if (attentionMaskName == null) {
+            Log.w(TAG, "Model has no input " + ATTENTION_MASK
+                    + ", padded batches run one row at a time without batching or pooled tensors");
+        }
+        String embeddingOutput = config.getEmbeddingOutput();
+        if (embeddingOutput != null && !session.getOutputNames().contains(embeddingOutput)) {
+            Log.w(TAG, "Model has no output " + embeddingOutput + ", embeddings are disabled");
+            embeddingOutput = null;
+        }
+        this.embeddingOutputName = embeddingOutput;
+        this.tensorPool = new TensorPool(env, inputIdsName, attentionMaskName);
+    }
+
+    /**
+     * Creates the session for a model asset. When the config names an optimized model file that is
+     * current for this install, that file is loaded instead and graph optimization is skipped. A
+     * file ORT cannot load is deleted and written again from the asset.
+     */
+    public static OnnxInferenceEngine create(Context context, String modelAsset, EngineConfig config)
+            throws OrtException, IOException {
+        long startTime = SystemClock.elapsedRealtime();
+        OrtEnvironment env = OrtEnvironment.getEnvironment();
+        ModelLoader loader = new ModelLoader(context);
+        File optimized = config.getOptimizedModelFile();
+
+        OrtSession session = null;
+        if (optimized != null && optimized.length() > 0 && loader.isCurrent(optimized)) {
+            // The session keeps nothing of its options, so they are freed as soon as it exists.
+            try (OrtSession.SessionOptions options = config.toSessionOptions(true)) {
+                session = env.createSession(optimized.getAbsolutePath(), options);
+                Log.v(TAG, "Session from optimized model " + optimized);
+            } catch (OrtException e) {
+                // E.g. truncated because the process died while ORT wrote it. The asset is
+                // optimized again below, which writes the file anew.
+                Log.w(TAG, "Optimized model " + optimized + " unusable, optimizing the asset again", e);
+                if (!optimized.delete()) {
+                    Log.w(TAG, "Cannot delete " + optimized);
+                }
+            }
+        }
+        if (session == null) {
+            if (optimized != null) {
+                File parent = optimized.getParentFile();
+                if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+                    throw new IOException("Cannot create " + parent);
+                }
+            }
+            try (OrtSession.SessionOptions options = config.toSessionOptions(false)) {
+                session = loader.load(env, modelAsset, options);
+            }
+        }
+        Log.v(TAG, "CreateSession: " + (SystemClock.elapsedRealtime() - startTime) + "ms with " + config);
+        return new OnnxInferenceEngine(env, session, config);
+    }
+
+    public EngineConfig getConfig(){
+        return config;
+    }
+
+    @Override
+    public float[] classify(Feature feature) throws InferenceException {
+        try (InputBatch batch = acquireBatch(1, feature.inputIds.length)) {
+            batch.putRow(0, feature.inputIds, feature.tokenCount);
+            return classify(batch)[0];
+        }
+    }
+
+    /** Copies the rows into a pooled batch; prefer filling {@link #acquireBatch(int, int)}. */
+    @Override
+    public float[][] classify(LongBuffer inputIds, LongBuffer attentionMask, int batchSize, int seqLen)
+            throws InferenceException {
+        try (InputBatch batch = acquireBatch(batchSize, seqLen)) {
+            batch.inputIds().put(inputIds);
+            batch.attentionMask().put(attentionMask);
+            return classify(batch);
+        }
+    }
+
+    @Override
+    public InputBatch acquireBatch(int batchSize, int seqLen) throws InferenceException {
+        long start = System.nanoTime();
+        try {
+            InputBatch batch = tensorPool.acquire(batchSize, seqLen);
+            tensorsTimer.recordSince(start);
+            return batch;
+        } catch (OrtException e) {
+            throw new InferenceException("Cannot create input tensors", e);
+        }
+    }
+
+    @Override
+    public float[][] classify(InputBatch batch) throws InferenceException {
+        return withInputs(batch, (inputs, rows) -> run(inputs, rows.batchSize));
+    }
+
+    @Override
+    public float[][] embed(InputBatch batch) throws InferenceException {
+        if (embeddingOutputName == null) {
+            return null;
+        }
+        return withInputs(batch, this::runEmbedding);
+    }
+
+    private interface SessionCall {
+        float[][] run(Map<String, OnnxTensor> inputs, InputBatch batch) throws InferenceException;
+    }
+
+    private float[][] withInputs(InputBatch batch, SessionCall call) throws InferenceException {
+        if (attentionMaskName == null && batch.isPadded()) {
+            return withUnpaddedRows(batch, call);
+        }
+        Map<String, OnnxTensor> inputs = TensorPool.inputsOf(batch);
+        if (inputs == null) {
+            return withUnpooledInputs(batch, call);
+        }
+        return call.run(inputs, batch);
+    }
+
+    // The model takes no attention mask, so [PAD]s would be attended to like tokens and change the
+    // verdict. Each row runs alone at its exact length instead, as the model was trained.
+    private float[][] withUnpaddedRows(InputBatch batch, SessionCall call) throws InferenceException {
+        unbatchedRowsCounter.add(batch.batchSize);
+        float[][] results = new float[batch.batchSize][];
+        LongBuffer ids = batch.inputIds();
+        for (int row = 0; row < batch.batchSize; row++) {
+            int tokens = batch.tokenCount(row);
+            try (InputBatch single = InputBatch.allocateHeap(1, tokens)) {
+                LongBuffer rowIds = single.inputIds();
+                for (int i = 0; i < tokens; i++) {
+                    rowIds.put(i, ids.get(row * batch.seqLen + i));
+                }
+                single.endRow(0, tokens);
+                results[row] = withUnpooledInputs(single, call)[0];
+            }
+        }
+        return results;
+    }
+
+    // A batch some other engine allocated: wrap its buffers for this one call.
+    private float[][] withUnpooledInputs(InputBatch batch, SessionCall call) throws InferenceException {
+        long start = System.nanoTime();
+        long[] shape = new long[]{batch.batchSize, batch.seqLen};
+        Map<String, OnnxTensor> inputs = new HashMap<>();
+        try (OnnxTensor idsTensor = OnnxTensor.createTensor(env, batch.inputIds(), shape);
+             OnnxTensor maskTensor = attentionMaskName == null
+                     ? null : OnnxTensor.createTensor(env, batch.attentionMask(), shape)) {
+            inputs.put(inputIdsName, idsTensor);
+            if (maskTensor != null) {
+                inputs.put(attentionMaskName, maskTensor);
+            }
+            tensorsTimer.recordSince(start);
+            return call.run(inputs, batch);
+        } catch (OrtException e) {
+            throw new InferenceException("ONNX inference failed", e);
+        }
+    }
+
+    // The result and its output tensors are closed before returning, so no native memory leaks.
+    private float[][] run(Map<String, OnnxTensor> inputs, int batchSize) throws InferenceException {
+        long start = System.nanoTime();
+        try (OrtSession.Result outputs = session.run(inputs)) {
+            start = runTimer.recordSince(start);
+            FloatBuffer logits = ((OnnxTensor) outputs.get(0)).getFloatBuffer();
+            int numClasses = logits.remaining() / batchSize;
+            float[][] rows = new float[batchSize][numClasses];
+            for (float[] row : rows) {
+                logits.get(row);
+            }
+            outputsTimer.recordSince(start);
+            rowsCounter.add(batchSize);
+            return rows;
+        } catch (OrtException e) {
+            throw new InferenceException("ONNX inference failed", e);
+        }
+    }
+
+    // Only the hidden states are requested, so the classifier head is skipped.
+    private float[][] runEmbedding(Map<String, OnnxTensor> inputs, InputBatch batch) throws InferenceException {
+        long start = System.nanoTime();
+        try (OrtSession.Result outputs = session.run(inputs, Collections.singleton(embeddingOutputName))) {
+            start = runTimer.recordSince(start);
+            OnnxTensor hidden = (OnnxTensor) outputs.get(0);
+            float[][] embeddings = config.getEmbeddingPooling().pool(
+                    hidden.getFloatBuffer(), hidden.getInfo().getShape(), batch.attentionMask());
+            outputsTimer.recordSince(start);
+            return embeddings;
+        } catch (OrtException e) {
+            throw new InferenceException("ONNX inference failed", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        tensorPool.close();
+        try {
+            session.close();
+        } catch (OrtException e) {
+            Log.v(TAG, "Exception: " + e);
+        }
+    }
+}
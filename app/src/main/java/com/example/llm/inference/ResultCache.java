@@ -0,0 +1,236 @@
+package com.example.llm.inference;
+
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Bounded cache of classification logits keyed by the wordpiece ids of the text, so texts that
+ * only differ in whitespace, punctuation or (for an uncased model) case share one entry.
+ *
+ * Entries are evicted least recently used first. With a disk file every new entry is appended to
+ * it and the file is read back on open, so verdicts survive process restarts; the file name
+ * carries the model version, and files of other versions are deleted when the cache is opened.
+ * */
+public class ResultCache implements AutoCloseable {
+    private static final int MAGIC = 0x52534c54; // "RSLT"
+    private static final String FILE_SUFFIX = ".results";
+
+    private final int maxEntries;
+    private final LinkedHashMap<Long, float[]> entries;
+    private File diskFile;
+    private DataOutputStream disk;
+    private int diskRecords;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /** A memory-only cache. */
+    public ResultCache(int maxEntries){
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<Long, float[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, float[]> eldest) {
+                if (size() > ResultCache.this.maxEntries) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * A cache persisted in dir for the given model version. Call from a background thread; it
+     * reads the previous entries back.
+     */
+    public static ResultCache open(File dir, String modelVersion, int maxEntries) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        String fileName = modelVersion + FILE_SUFFIX;
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().endsWith(FILE_SUFFIX) && !file.getName().equals(fileName)) {
+                    file.delete();
+                }
+            }
+        }
+
+        ResultCache cache = new ResultCache(maxEntries);
+        cache.diskFile = new File(dir, fileName);
+        cache.readDisk();
+        cache.evictions = 0;
+        cache.rewriteDisk();
+        return cache;
+    }
+
+    /** 64-bit hash of ids[0, count) used as the cache key. */
+    public static long key(int[] ids, int count){
+        // FNV-1a over the ids, finished with a murmur3 fmix64 to spread the bits.
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < count; i++) {
+            hash = (hash ^ ids[i]) * 0x100000001b3L;
+        }
+        hash ^= count;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /** @return a copy of the cached logits, or null on a miss. */
+    @Nullable
+    public synchronized float[] get(long key){
+        float[] logits = entries.get(key);
+        if (logits == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return logits.clone();
+    }
+
+    public synchronized void put(long key, float[] logits){
+        if (entries.put(key, logits.clone()) == null && disk != null) {
+            try {
+                writeRecord(disk, key, logits);
+                disk.flush();
+                // Evicted entries still take space in the file, so it is compacted now and then.
+                if (++diskRecords > 2 * maxEntries) {
+                    rewriteDisk();
+                }
+            } catch (IOException e) {
+                closeDisk();
+            }
+        }
+    }
+
+    public synchronized long getHitCount(){
+        return hits;
+    }
+
+    public synchronized long getMissCount(){
+        return misses;
+    }
+
+    public synchronized long getEvictionCount(){
+        return evictions;
+    }
+
+    public synchronized int size(){
+        return entries.size();
+    }
+
+    /** Whether entries are still written to disk; false after an I/O error or for memory-only. */
+    public synchronized boolean isPersistent(){
+        return disk != null;
+    }
+
+    @Override
+    public synchronized String toString() {
+        long lookups = hits + misses;
+        return String.format(Locale.US, "%d/%d entries, %d hits, %d misses (%.1f%%), %d evictions",
+                entries.size(), maxEntries, hits, misses,
+                lookups == 0 ? 0.0 : 100.0 * hits / lookups, evictions);
+    }
+
+    @Override
+    public synchronized void close() {
+        closeDisk();
+    }
+
+    // A record is the key, the logit count and the logits; a torn last record is ignored.
+    private static void writeRecord(DataOutputStream out, long key, float[] logits) throws IOException {
+        out.writeLong(key);
+        out.writeInt(logits.length);
+        for (float logit : logits) {
+            out.writeFloat(logit);
+        }
+    }
+
+    private void readDisk(){
+        if (!diskFile.isFile()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(diskFile)))) {
+            if (in.readInt() != MAGIC) {
+                return;
+            }
+            while (true) {
+                long key = in.readLong();
+                int length = in.readInt();
+                if (length < 0 || length > 1024) {
+                    return;
+                }
+                float[] logits = new float[length];
+                for (int i = 0; i < length; i++) {
+                    logits[i] = in.readFloat();
+                }
+                entries.put(key, logits);
+            }
+        } catch (EOFException e) {
+            // End of the file, possibly in the middle of a record written when the process died.
+        } catch (IOException e) {
+            entries.clear();
+        }
+    }
+
+    // Writes the live entries to a fresh file, oldest first so the LRU order survives a reload.
+    private void rewriteDisk(){
+        closeDisk();
+        File partial = new File(diskFile.getPath() + ".part");
+        try {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(partial)));
+            try {
+                out.writeInt(MAGIC);
+                for (Map.Entry<Long, float[]> entry : entries.entrySet()) {
+                    writeRecord(out, entry.getKey(), entry.getValue());
+                }
+            } finally {
+                out.close();
+            }
+            if (!partial.renameTo(diskFile)) {
+                throw new IOException("Cannot move " + partial + " to " + diskFile);
+            }
+            disk = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(diskFile, true)));
+            diskRecords = entries.size();
+        } catch (IOException e) {
+            partial.delete();
+            closeDisk();
+        }
+    }
+
+    private void closeDisk(){
+        if (disk == null) {
+            return;
+        }
+        try {
+            disk.close();
+        } catch (IOException e) {
+            // Nothing left to flush that we could recover.
+        }
+        disk = null;
+    }
+}
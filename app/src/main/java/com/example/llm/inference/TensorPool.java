@@ -0,0 +1,119 @@
+package com.example.llm.inference;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ai.onnxruntime.OnnxTensor;
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+
+/**
+ * Direct input buffers per batch shape, each wrapped once in OnnxTensors that read the buffer
+ * memory in place. A request rewrites the buffers and runs the cached tensors, so steady-state
+ * inference neither allocates input arrays nor copies them into native memory.
+ *
+ * Shapes are bounded by the sequence buckets times the batch sizes in use, and at most a few idle
+ * batches are kept per shape; the rest are closed when released.
+ * */
+final class TensorPool implements AutoCloseable {
+    private static final int MAX_IDLE_PER_SHAPE = 2;
+
+    private final OrtEnvironment env;
+    private final String inputIdsName;
+    private final String attentionMaskName; // null when the model takes the ids only
+    private final InputBatch.Releaser releaser = this::release;
+    // Few distinct shapes, so a list scan beats boxing a key per request.
+    private final List<Shape> shapes = new ArrayList<>();
+    private boolean closed;
+
+    private static final class Shape {
+        final int batchSize;
+        final int seqLen;
+        final ArrayDeque<InputBatch> idle = new ArrayDeque<>(MAX_IDLE_PER_SHAPE);
+
+        Shape(int batchSize, int seqLen){
+            this.batchSize = batchSize;
+            this.seqLen = seqLen;
+        }
+    }
+
+    TensorPool(OrtEnvironment env, String inputIdsName, String attentionMaskName){
+        this.env = env;
+        this.inputIdsName = inputIdsName;
+        this.attentionMaskName = attentionMaskName;
+    }
+
+    synchronized InputBatch acquire(int batchSize, int seqLen) throws OrtException {
+        if (closed) {
+            throw new IllegalStateException("TensorPool is closed");
+        }
+        InputBatch batch = shape(batchSize, seqLen).idle.pollFirst();
+        if (batch != null) {
+            batch.reopen();
+            return batch;
+        }
+
+        batch = InputBatch.allocateDirect(batchSize, seqLen, releaser);
+        long[] dims = new long[]{batchSize, seqLen};
+        Map<String, OnnxTensor> inputs = new HashMap<>();
+        try {
+            inputs.put(inputIdsName, OnnxTensor.createTensor(env, batch.inputIds(), dims));
+            if (attentionMaskName != null) {
+                inputs.put(attentionMaskName, OnnxTensor.createTensor(env, batch.attentionMask(), dims));
+            }
+        } catch (OrtException e) {
+            closeAll(inputs);
+            throw e;
+        }
+        batch.engineState = inputs;
+        return batch;
+    }
+
+    /** The tensors over a batch's buffers, or null if it does not come from this pool. */
+    @SuppressWarnings("unchecked")
+    static Map<String, OnnxTensor> inputsOf(InputBatch batch){
+        return batch.engineState instanceof Map ? (Map<String, OnnxTensor>) batch.engineState : null;
+    }
+
+    private synchronized void release(InputBatch batch){
+        Shape shape = shape(batch.batchSize, batch.seqLen);
+        if (closed || shape.idle.size() >= MAX_IDLE_PER_SHAPE) {
+            closeAll(inputsOf(batch));
+            return;
+        }
+        shape.idle.addFirst(batch);
+    }
+
+    private Shape shape(int batchSize, int seqLen){
+        for (int i = 0; i < shapes.size(); i++) {
+            Shape shape = shapes.get(i);
+            if (shape.batchSize == batchSize && shape.seqLen == seqLen) {
+                return shape;
+            }
+        }
+        Shape shape = new Shape(batchSize, seqLen);
+        shapes.add(shape);
+        return shape;
+    }
+
+    /** Closes the idle tensors; batches still in use are closed when released. */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        for (Shape shape : shapes) {
+            InputBatch batch;
+            while ((batch = shape.idle.pollFirst()) != null) {
+                closeAll(inputsOf(batch));
+            }
+        }
+    }
+
+    private static void closeAll(Map<String, OnnxTensor> inputs){
+        for (OnnxTensor tensor : inputs.values()) {
+            tensor.close();
+        }
+    }
+}
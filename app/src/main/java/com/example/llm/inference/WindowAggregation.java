@@ -0,0 +1,87 @@
+package com.example.llm.inference;
+
+/**
+ * How the per-window logits of a chunked text are combined into one verdict.
+ * */
+public enum WindowAggregation {
+    /**
+     * The logits of the spammiest window, the one with the largest spam-over-ham margin: one
+     * clearly spammy window is enough to flag the text. The window's logits are kept whole, so
+     * the verdict is one that some window actually produced.
+     */
+    MAX,
+    /** Class-wise mean over all windows. */
+    MEAN,
+    /**
+     * Weighted mean where each window's weight is the softmax, over windows, of its logit margin
+     * (top minus runner-up), so confident windows dominate uncertain ones.
+     */
+    ATTENTION_WEIGHTED;
+
+    private static final int SPAM_CLASS = 1;
+
+    public float[] combine(float[][] windowLogits){
+        int numClasses = windowLogits[0].length;
+        float[] combined = new float[numClasses];
+        switch (this) {
+            case MAX:
+                float[] spammiest = windowLogits[0];
+                for (float[] logits : windowLogits) {
+                    if (spamMargin(logits) > spamMargin(spammiest)) {
+                        spammiest = logits;
+                    }
+                }
+                return spammiest.clone();
+            case MEAN:
+                for (float[] logits : windowLogits) {
+                    for (int k = 0; k < numClasses; k++) {
+                        combined[k] += logits[k] / windowLogits.length;
+                    }
+                }
+                return combined;
+            default:
+                double[] weights = new double[windowLogits.length];
+                double maxMargin = Double.NEGATIVE_INFINITY;
+                for (int w = 0; w < windowLogits.length; w++) {
+                    weights[w] = margin(windowLogits[w]);
+                    maxMargin = Math.max(maxMargin, weights[w]);
+                }
+                double sum = 0;
+                for (int w = 0; w < weights.length; w++) {
+                    weights[w] = Math.exp(weights[w] - maxMargin);
+                    sum += weights[w];
+                }
+                for (int w = 0; w < windowLogits.length; w++) {
+                    for (int k = 0; k < numClasses; k++) {
+                        combined[k] += (float) (weights[w] / sum * windowLogits[w][k]);
+                    }
+                }
+                return combined;
+        }
+    }
+
+    // Spam is class 1; the margin is its logit over the strongest other class.
+    private static float spamMargin(float[] logits){
+        float other = Float.NEGATIVE_INFINITY;
+        for (int k = 0; k < logits.length; k++) {
+            if (k != SPAM_CLASS) {
+                other = Math.max(other, logits[k]);
+            }
+        }
+        return logits[SPAM_CLASS] - other;
+    }
+
+    private static double margin(float[] logits){
+        float top = Float.NEGATIVE_INFINITY;
+        float second = Float.NEGATIVE_INFINITY;
+        for (float logit : logits) {
+            if (logit > top) {
+                second = top;
+                top = logit;
+            } else if (logit > second) {
+                second = logit;
+            }
+        }
+        return second == Float.NEGATIVE_INFINITY ? 0 : top - second;
+    }
+}
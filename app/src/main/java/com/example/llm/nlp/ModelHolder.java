@@ -0,0 +1,377 @@
+package com.example.llm.nlp;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.Configuration;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.example.llm.inference.CascadeClassifier;
+import com.example.llm.inference.ChunkedClassifier;
+import com.example.llm.inference.EngineConfig;
+import com.example.llm.inference.InferenceEngine;
+import com.example.llm.inference.InferenceException;
+import com.example.llm.inference.MachineLearningEngine;
+import com.example.llm.inference.ModelVersions;
+import com.example.llm.inference.ModelWarmup;
+import com.example.llm.inference.NearDuplicateCache;
+import com.example.llm.inference.OnnxInferenceEngine;
+import com.example.llm.inference.ResultCache;
+import com.example.llm.inference.WindowAggregation;
+import com.example.llm.metrics.MetricsRegistry;
+import com.example.llm.model.ModelManifest;
+import com.example.llm.prefilter.HashedLogisticModel;
+import com.example.llm.tokenization.VocabTrie;
+import com.example.llm.transformers.FeatureConverter;
+import com.example.llm.transformers.SequenceBuckets;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import ai.onnxruntime.OrtException;
+
+/**
+ * Process-scoped, reference-counted owner of the ONNX session and the tokenizer.
+ *
+ * Activities acquire the model in onStart and release it in onStop. Loading runs once on a
+ * background thread and is published through a future, so the UI can show a warming-up state
+ * instead of blocking. The model outlives the Activity and is only unloaded when nobody holds it
+ * and either the idle timeout expires or the system reports memory pressure.
+ *
+ * A LoadedModel is an immutable snapshot of one model and its vocabulary, safe to use from any
+ * number of threads. {@link #reload(String)} loads a new one next to it and swaps it in
+ * atomically once ready: later acquire() calls get the new model, while callers that acquired
+ * the old one keep a consistent model until they release it, and it is closed after that. Work
+ * that may outlive its Activity, such as a queued background task, takes a reference of its own.
+ * */
+public final class ModelHolder implements ComponentCallbacks2 {
+    private static final String TAG = "SpamClassification";
+    // Used when the build ships no models.json.
+    private static final String MODEL_PATH = "DistilBert.onnx";
+    private static final String OPTIMIZED_MODEL_DIR = "models";
+    private static final String DIC_PATH = "vocab.txt";
+    private static final String DIC_BIN_PATH = "vocab.bin";
+    private static final long IDLE_TIMEOUT_MS = 5 * 60 * 1000L;
+    private static final String RESULT_CACHE_DIR = "results";
+    private static final int RESULT_CACHE_SIZE = 2048;
+
+    private static final int MAX_SEQ_LEN = 512;
+    private static final boolean DO_LOWER_CASE = false;
+    // Words whose wordpieces are memoized; a few thousand cover most of the words in messages.
+    private static final int WORD_CACHE_SIZE = 4096;
+    // Padding to a small set of lengths keeps ONNX Runtime reusing the same shapes and buffers.
+    private static final SequenceBuckets SEQUENCE_BUCKETS = SequenceBuckets.defaults(MAX_SEQ_LEN);
+    // Long texts are scored in overlapping windows; the spam payload is often in the tail.
+    private static final int WINDOW_SIZE = MAX_SEQ_LEN - 2;
+    private static final int WINDOW_OVERLAP = 128;
+    private static final WindowAggregation WINDOW_AGGREGATION = WindowAggregation.MAX;
+    // Verdicts reused for reworded copies of recent messages; spam waves last minutes to hours.
+    private static final int NEAR_DUPLICATE_ENTRIES = 1024;
+    private static final long NEAR_DUPLICATE_TTL_MINUTES = 30;
+    private static final float NEAR_DUPLICATE_SIMILARITY = 0.7f;
+    // Runs per bucket after the cold one; enough to tell cold from steady-state latency. Batches
+    // of several windows only come from long texts, so only single rows are warmed.
+    private static final int WARMUP_RUNS = 2;
+
+    private static ModelHolder sInstance;
+
+    /** Everything needed to classify a text, valid until it is released to the holder. */
+    public static final class LoadedModel {
+        public final InferenceEngine engine;
+        public final VocabTrie vocab;
+        public final FeatureConverter featureConverter;
+        public final ChunkedClassifier chunkedClassifier;
+        public final MachineLearningEngine prefilter;
+        public final CascadeClassifier cascadeClassifier;
+        public final ResultCache resultCache;
+        public final NearDuplicateCache nearDuplicates;
+        public final ModelManifest.Variant variant;
+
+        LoadedModel(InferenceEngine engine, ModelManifest.Variant variant, VocabTrie vocab,
+                    HashedLogisticModel prefilterModel, ModelManifest.Prefilter prefilterConfig,
+                    ResultCache resultCache){
+            this.engine = engine;
+            this.variant = variant;
+            this.vocab = vocab;
+            this.resultCache = resultCache;
+            this.nearDuplicates = new NearDuplicateCache(NEAR_DUPLICATE_ENTRIES,
+                    NEAR_DUPLICATE_TTL_MINUTES, TimeUnit.MINUTES, NEAR_DUPLICATE_SIMILARITY);
+            this.featureConverter = new FeatureConverter(vocab, DO_LOWER_CASE, SEQUENCE_BUCKETS, WORD_CACHE_SIZE);
+            this.chunkedClassifier = new ChunkedClassifier(engine, featureConverter,
+                    WINDOW_SIZE, WINDOW_SIZE - WINDOW_OVERLAP, WINDOW_AGGREGATION);
+            this.prefilter = new MachineLearningEngine(prefilterModel,
+                    featureConverter.getTokenizer().clsId(), featureConverter.getTokenizer().sepId());
+            this.cascadeClassifier = new CascadeClassifier(prefilter, chunkedClassifier,
+                    prefilterConfig.getHamBelow(), prefilterConfig.getSpamAbove());
+        }
+    }
+
+    private final Context mContext;
+    private final ExecutorService mLoader;
+    private final Handler mMainHandler;
+    private final Runnable mIdleRelease = () -> unload("idle timeout");
+    // Loaded, swapped and closed on mLoader.
+    private final ModelVersions<LoadedModel> mVersions;
+
+    private ModelHolder(Context context){
+        mContext = context.getApplicationContext();
+        mLoader = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "ModelHolder");
+            thread.setDaemon(true);
+            return thread;
+        });
+        mMainHandler = new Handler(Looper.getMainLooper());
+        mVersions = new ModelVersions<>(mLoader, this::loadAndWarmUp, ModelHolder::close,
+                () -> mMainHandler.postDelayed(mIdleRelease, IDLE_TIMEOUT_MS));
+        mContext.registerComponentCallbacks(this);
+    }
+
+    public static synchronized ModelHolder get(Context context){
+        if (sInstance == null) {
+            sInstance = new ModelHolder(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Takes a reference on the model, starting the load if it is not resident. Every call must be
+     * paired with {@link #release(ListenableFuture)} of the returned future.
+     */
+    public ListenableFuture<LoadedModel> acquire(){
+        mMainHandler.removeCallbacks(mIdleRelease);
+        return mVersions.acquire();
+    }
+
+    /** Returns a model obtained from {@link #acquire()}. */
+    public void release(ListenableFuture<LoadedModel> model){
+        mVersions.release(model);
+    }
+
+    /**
+     * Loads the model and vocabulary again, e.g. after new ones were installed, and makes the
+     * result current once it has loaded. If loading fails the current model stays.
+     */
+    public ListenableFuture<LoadedModel> reload(String reason){
+        Log.v(TAG, "Reloading model: " + reason);
+        return mVersions.reload();
+    }
+
+    /**
+     * Stops priming the loading models, e.g. once the user starts typing, so a text waits for at
+     * most the warm-up run in flight.
+     */
+    public void cancelWarmup(){
+        mVersions.cancelWarmup();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_BACKGROUND) {
+            unload("trim memory level " + level);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        unload("low memory");
+    }
+
+    @Override
+    public void onConfigurationChanged(@NonNull Configuration newConfig) {
+
+    }
+
+    private void unload(String reason){
+        if (mVersions.unloadIfUnused()) {
+            Log.v(TAG, "Unloading model: " + reason);
+            mMainHandler.removeCallbacks(mIdleRelease);
+        }
+    }
+
+    private LoadedModel loadAndWarmUp(int generation, BooleanSupplier warmupCancelled) throws Exception {
+        try {
+            LoadedModel model = load(generation);
+            try {
+                warmUp(model, warmupCancelled);
+            } catch (RuntimeException e) {
+                // E.g. a shape ORT rejects; real texts would fail the same way, so do not publish it.
+                close(model);
+                throw e;
+            }
+            return model;
+        } catch (Exception e) {
+            Log.e(TAG, "Model loading failed", e);
+            throw e;
+        }
+    }
+
+    // Before the model is published, so that both the first load and a reload serve their first
+    // text with kernels chosen and the arena grown.
+    private static void warmUp(LoadedModel model, BooleanSupplier cancelled){
+        ModelWarmup warmup = new ModelWarmup(model.engine, model.featureConverter.getTokenizer().clsId(),
+                model.featureConverter.getTokenizer().sepId(), WARMUP_RUNS);
+        try {
+            ModelWarmup.Report report = warmup.run(ModelWarmup.shapes(SEQUENCE_BUCKETS, 1), cancelled);
+            Log.v(TAG, "Warm-up: " + report);
+        } catch (InferenceException e) {
+            Log.w(TAG, "Warm-up failed", e);
+        }
+    }
+
+    private static void close(LoadedModel model){
+        Log.v(TAG, "Result cache: " + model.resultCache);
+        Log.v(TAG, "Near-duplicates: " + model.nearDuplicates);
+        Log.v(TAG, "Pre-filter: " + model.cascadeClassifier);
+        Log.v(TAG, "Word cache: " + model.featureConverter.getTokenizer().getWordCache());
+        try {
+            model.resultCache.close();
+            model.engine.close();
+        } catch (Exception e) {
+            Log.v(TAG, "Exception: " + e);
+        }
+    }
+
+    private LoadedModel load(int generation) throws OrtException, IOException {
+        ModelManifest manifest = readManifest();
+        ModelManifest.Variant variant = selectVariant(manifest);
+        // Each variant keeps its own optimized graph, e.g. models/DistilBert.int8.optimized.onnx.
+        String optimizedName = variant.getFile().replaceFirst("\\.onnx$", "") + ".optimized.onnx";
+        EngineConfig config = EngineConfig.defaults().setOptimizedModelFile(
+                new File(new File(mContext.getFilesDir(), OPTIMIZED_MODEL_DIR), optimizedName));
+        // The parts that hold nothing to close are loaded before the session, so their failures
+        // cannot leak it.
+        VocabTrie vocab = loadDictionary();
+        HashedLogisticModel prefilter = loadPrefilter(manifest.getPrefilter());
+        long start = System.nanoTime();
+        InferenceEngine engine = OnnxInferenceEngine.create(mContext, variant.getFile(), config);
+        MetricsRegistry.getDefault().timer("load.session").recordSince(start);
+        ResultCache resultCache = null;
+        try {
+            resultCache = openResultCache(variant, generation);
+            return new LoadedModel(engine, variant, vocab, prefilter, manifest.getPrefilter(), resultCache);
+        } catch (RuntimeException e) {
+            if (resultCache != null) {
+                resultCache.close();
+            }
+            engine.close();
+            throw e;
+        }
+    }
+
+    // Optional; written by the harness's TrainPrefilter. Texts it scores outside the manifest's
+    // thresholds never reach the transformer.
+    private HashedLogisticModel loadPrefilter(ModelManifest.Prefilter prefilter){
+        try (InputStream is = mContext.getAssets().open(prefilter.getFile())) {
+            return HashedLogisticModel.read(is);
+        } catch (IOException e) {
+            Log.v(TAG, "No pre-filter, every text goes to the model: " + e);
+            return null;
+        }
+    }
+
+    private ModelManifest readManifest(){
+        try (InputStream is = mContext.getAssets().open(ModelManifest.ASSET_NAME)) {
+            return ModelManifest.read(is);
+        } catch (IOException e) {
+            Log.w(TAG, "No usable " + ModelManifest.ASSET_NAME + ", loading " + MODEL_PATH, e);
+            return ModelManifest.single(MODEL_PATH);
+        }
+    }
+
+    private ModelManifest.Variant selectVariant(ModelManifest manifest) throws IOException {
+        ModelManifest.DeviceProfile device = deviceProfile();
+        String[] assets = mContext.getAssets().list("");
+        List<String> files = assets == null ? Arrays.<String>asList() : Arrays.asList(assets);
+        ModelManifest.Variant variant = manifest.select(device, files);
+        if (variant == null) {
+            throw new IOException("None of the model variants is in the APK");
+        }
+        Log.v(TAG, "Model variant " + variant + " for " + device);
+        return variant;
+    }
+
+    private ModelManifest.DeviceProfile deviceProfile(){
+        ActivityManager.MemoryInfo memory = new ActivityManager.MemoryInfo();
+        ActivityManager activityManager = mContext.getSystemService(ActivityManager.class);
+        if (activityManager != null) {
+            activityManager.getMemoryInfo(memory);
+        }
+        return new ModelManifest.DeviceProfile(Runtime.getRuntime().availableProcessors(),
+                memory.totalMem / (1024 * 1024), hasFp16Arithmetic());
+    }
+
+    // ARMv8.2 half-precision arithmetic shows up as "asimdhp" among the CPU features.
+    private static boolean hasFp16Arithmetic(){
+        try (BufferedReader reader = new BufferedReader(new FileReader("/proc/cpuinfo"))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("Features") && line.contains(" asimdhp")) {
+                    return true;
+                }
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot read CPU features", e);
+        }
+        return false;
+    }
+
+    // Verdicts are only valid for the model that produced them: this variant, install and reload.
+    private ResultCache openResultCache(ModelManifest.Variant variant, int generation){
+        String modelVersion = "DistilBert-" + variant.getName() + "-"
+                + new ModelLoader(mContext).installTime() + (generation > 0 ? "-r" + generation : "");
+        try {
+            return ResultCache.open(new File(mContext.getCacheDir(), RESULT_CACHE_DIR),
+                    modelVersion, RESULT_CACHE_SIZE);
+        } catch (IOException e) {
+            Log.w(TAG, "Result cache not persisted", e);
+            return new ResultCache(RESULT_CACHE_SIZE);
+        }
+    }
+
+    private VocabTrie loadDictionary() throws IOException {
+        long startTime = SystemClock.elapsedRealtime();
+        // The binary trie is stored uncompressed in the APK, so it can be mapped in place.
+        try (AssetFileDescriptor fd = mContext.getAssets().openFd(DIC_BIN_PATH);
+             FileInputStream is = fd.createInputStream()) {
+            MappedByteBuffer buffer = is.getChannel().map(
+                    FileChannel.MapMode.READ_ONLY, fd.getStartOffset(), fd.getDeclaredLength());
+            VocabTrie dic = VocabTrie.load(buffer);
+            recordDictionaryLoad(startTime);
+            Log.v(TAG, "Mapped dictionary: " + (SystemClock.elapsedRealtime() - startTime));
+            return dic;
+        } catch (IOException e) {
+            Log.w(TAG, "Binary dictionary unavailable, falling back to " + DIC_PATH, e);
+        }
+
+        try (InputStream is = mContext.getAssets().open(DIC_PATH)) {
+            VocabTrie dic = VocabTrie.readText(is);
+            recordDictionaryLoad(startTime);
+            Log.v(TAG, "Parsed dictionary: " + (SystemClock.elapsedRealtime() - startTime));
+            return dic;
+        }
+    }
+
+    private static void recordDictionaryLoad(long startTimeMs){
+        MetricsRegistry.getDefault().timer("load.dictionary")
+                .record((SystemClock.elapsedRealtime() - startTimeMs) * 1_000_000L);
+    }
+}
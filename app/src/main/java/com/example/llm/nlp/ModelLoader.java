@@ -0,0 +1,248 @@
+package com.example.llm.nlp;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.content.res.AssetFileDescriptor;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+
+/**
+ * Creates an OrtSession from an asset without copying the model into a Java byte[].
+ *
+ * An asset stored uncompressed in the APK is memory-mapped and handed to ONNX Runtime as a direct
+ * buffer. Otherwise the asset is extracted once to app storage and the session is created from
+ * its file path, so later starts only pay for session creation.
+ * */
+public class ModelLoader {
+    private static final String TAG = "SpamClassification";
+    private static final String MODEL_DIR = "models";
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    private static final long SAMPLE_INTERVAL_MS = 5;
+
+    public enum Source {
+        MAPPED_ASSET,
+        EXTRACTED_FILE
+    }
+
+    /**
+     * How a load went. The memory figures are the peaks reached during the load, sampled every
+     * few milliseconds, above the levels just before it: temporary copies of the model count even
+     * if they are freed before the load returns. RSS includes mapped model pages that were read.
+     */
+    public static class LoadReport {
+        public final Source source;
+        public final long loadDurationMs;
+        public final long javaHeapPeakBytes;
+        public final long nativeHeapPeakBytes;
+        public final long rssPeakBytes; // -1 when /proc/self/status is unreadable
+
+        LoadReport(Source source, long loadDurationMs, long javaHeapPeakBytes, long nativeHeapPeakBytes,
+                   long rssPeakBytes){
+            this.source = source;
+            this.loadDurationMs = loadDurationMs;
+            this.javaHeapPeakBytes = javaHeapPeakBytes;
+            this.nativeHeapPeakBytes = nativeHeapPeakBytes;
+            this.rssPeakBytes = rssPeakBytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s: %dms, peak java heap %+dKB, native heap %+dKB, rss %+dKB",
+                    source, loadDurationMs, javaHeapPeakBytes / 1024, nativeHeapPeakBytes / 1024,
+                    rssPeakBytes < 0 ? -1 : rssPeakBytes / 1024);
+        }
+    }
+
+    // Polls memory on a helper thread while a load runs, since its peak is gone again by the
+    // time the load returns.
+    private static final class PeakSampler implements Runnable {
+        private final Thread thread = new Thread(this, "ModelLoader-peak");
+        private final long javaHeapBefore = javaHeapUsed();
+        private final long nativeHeapBefore = Debug.getNativeHeapAllocatedSize();
+        private final long rssBefore = readRssBytes();
+        private volatile boolean stopped;
+        // Written by the sampling thread, read after join().
+        private long javaHeapPeak = javaHeapBefore;
+        private long nativeHeapPeak = nativeHeapBefore;
+        private long rssPeak = rssBefore;
+
+        PeakSampler(){
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @Override
+        public void run() {
+            while (!stopped) {
+                sample();
+                try {
+                    Thread.sleep(SAMPLE_INTERVAL_MS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        private void sample(){
+            javaHeapPeak = Math.max(javaHeapPeak, javaHeapUsed());
+            nativeHeapPeak = Math.max(nativeHeapPeak, Debug.getNativeHeapAllocatedSize());
+            if (rssBefore >= 0) {
+                rssPeak = Math.max(rssPeak, readRssBytes());
+            }
+        }
+
+        LoadReport stop(Source source, long loadDurationMs){
+            stopped = true;
+            thread.interrupt();
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            sample();
+            return new LoadReport(source, loadDurationMs, javaHeapPeak - javaHeapBefore,
+                    nativeHeapPeak - nativeHeapBefore, rssBefore < 0 ? -1 : rssPeak - rssBefore);
+        }
+
+        private static long javaHeapUsed(){
+            Runtime runtime = Runtime.getRuntime();
+            return runtime.totalMemory() - runtime.freeMemory();
+        }
+
+        // The "VmRSS:    123456 kB" line.
+        private static long readRssBytes(){
+            try (BufferedReader reader = new BufferedReader(new FileReader("/proc/self/status"))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.startsWith("VmRSS:")) {
+                        return 1024 * Long.parseLong(line.substring(6).replace("kB", "").trim());
+                    }
+                }
+            } catch (IOException | NumberFormatException e) {
+                // Reported as unknown.
+            }
+            return -1;
+        }
+    }
+
+    private final Context context;
+    private LoadReport lastReport;
+
+    public ModelLoader(Context context){
+        this.context = context.getApplicationContext();
+    }
+
+    public OrtSession load(OrtEnvironment env, String assetPath, OrtSession.SessionOptions options)
+            throws OrtException, IOException {
+        return load(env, assetPath, options, null);
+    }
+
+    /**
+     * @param preferred forces one of the two paths, e.g. to compare them; null picks the mapped
+     *                  asset when the APK stores it uncompressed.
+     */
+    public OrtSession load(OrtEnvironment env, String assetPath, OrtSession.SessionOptions options,
+                           Source preferred) throws OrtException, IOException {
+        PeakSampler sampler = new PeakSampler();
+        long startTime = SystemClock.elapsedRealtime();
+
+        OrtSession session = null;
+        Source source = Source.MAPPED_ASSET;
+        try {
+            if (preferred != Source.EXTRACTED_FILE) {
+                session = loadMapped(env, assetPath, options);
+            }
+            if (session == null) {
+                source = Source.EXTRACTED_FILE;
+                session = env.createSession(extract(assetPath).getAbsolutePath(), options);
+            }
+        } catch (OrtException | IOException | RuntimeException e) {
+            sampler.stop(source, SystemClock.elapsedRealtime() - startTime);
+            throw e;
+        }
+
+        lastReport = sampler.stop(source, SystemClock.elapsedRealtime() - startTime);
+        Log.v(TAG, "Model loaded from " + lastReport);
+        return session;
+    }
+
+    public LoadReport getLastReport(){
+        return lastReport;
+    }
+
+    // Returns null when the asset is compressed and therefore cannot be mapped.
+    private OrtSession loadMapped(OrtEnvironment env, String assetPath, OrtSession.SessionOptions options)
+            throws OrtException {
+        try (AssetFileDescriptor fd = context.getAssets().openFd(assetPath);
+             FileInputStream is = fd.createInputStream()) {
+            MappedByteBuffer buffer = is.getChannel().map(
+                    FileChannel.MapMode.READ_ONLY, fd.getStartOffset(), fd.getDeclaredLength());
+            return env.createSession(buffer, options);
+        } catch (FileNotFoundException e) {
+            Log.v(TAG, assetPath + " is compressed, extracting instead");
+            return null;
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot map " + assetPath, e);
+            return null;
+        }
+    }
+
+    // Copies the asset to app storage unless a copy from the installed APK version is already there.
+    private File extract(String assetPath) throws IOException {
+        File dir = new File(context.getFilesDir(), MODEL_DIR);
+        File target = new File(dir, assetPath);
+        if (isCurrent(target)) {
+            return target;
+        }
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+
+        File partial = new File(dir, assetPath + ".part");
+        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        try (InputStream is = context.getAssets().open(assetPath);
+             OutputStream os = new FileOutputStream(partial)) {
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                os.write(buffer, 0, read);
+            }
+        }
+        if (!partial.renameTo(target)) {
+            throw new IOException("Cannot move " + partial + " to " + target);
+        }
+        return target;
+    }
+
+    /** Whether a file derived from the model was written after the installed APK version. */
+    public boolean isCurrent(File file){
+        return file.isFile() && file.lastModified() >= installTime();
+    }
+
+    /** When the installed APK, and with it the bundled model, was last updated. */
+    public long installTime(){
+        try {
+            return context.getPackageManager()
+                    .getPackageInfo(context.getPackageName(), 0).lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+}
@@ -8,6 +8,7 @@ import android.text.TextWatcher;
 import android.util.Log;
 import android.view.View;
 import android.widget.EditText;
+import android.widget.LinearLayout;
 
 import androidx.annotation.Nullable;
 import androidx.annotation.WorkerThread;
@@ -15,98 +16,83 @@ import androidx.appcompat.widget.Toolbar;
 
 import com.example.llm.BaseModuleActivity;
 import com.example.llm.R;
+import com.example.llm.inference.ChunkedClassifier;
+import com.example.llm.inference.InferenceException;
+import com.example.llm.inference.MachineLearningEngine;
+import com.example.llm.inference.NearDuplicateCache;
+import com.example.llm.inference.OnnxInferenceEngine;
+import com.example.llm.inference.ResultCache;
+import com.example.llm.metrics.MetricsRegistry;
+import com.example.llm.metrics.StageTimes;
+import com.example.llm.metrics.Timer;
+import com.example.llm.tokenization.IncrementalTokenizer;
 import com.example.llm.transformers.Feature;
 import com.example.llm.transformers.FeatureConverter;
 import com.example.llm.view.ResultRowView;
+import com.google.common.util.concurrent.ListenableFuture;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.nio.LongBuffer;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Locale;
-import java.util.Map;
-import java.util.Objects;
-
-import ai.onnxruntime.OnnxTensor;
-import ai.onnxruntime.OrtEnvironment;
-import ai.onnxruntime.OrtException;
-import ai.onnxruntime.OrtSession;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class TorchActivity extends BaseModuleActivity {
     private static final String TAG = "SpamClassification";
-    private static final String MODEL_PATH = "DistilBert.onnx";
-    private static final String DIC_PATH = "vocab.txt";
     private static final Integer SHAPE_SIZE = 512;
-    private static final long EDIT_TEXT_STOP_DELAY = 600L;
+    private static final long EDIT_TEXT_STOP_DELAY = 150L;
     private static final String FORMAT_MS = "%dms";
     private static final String SCORE_FORMAT = "%.2f";
+    private static final String STAGE_FORMAT = "%.2fms";
     private static final boolean IS_LLM_MODEL = true;
+    private static final String TOKENIZE_INCREMENTAL_TIMER = "tokenize.incremental";
+    private static final String SOFTMAX_TIMER = "softmax";
+    // Stages listed under the total time, in pipeline order.
+    private static final String[] STAGE_TIMERS = {
+            TOKENIZE_INCREMENTAL_TIMER,
+            FeatureConverter.TOKENIZE_TIMER,
+            NearDuplicateCache.SIGNATURE_TIMER,
+            FeatureConverter.FEATURES_TIMER,
+            MachineLearningEngine.PREFILTER_TIMER,
+            ChunkedClassifier.BATCHING_TIMER,
+            OnnxInferenceEngine.TENSORS_TIMER,
+            OnnxInferenceEngine.RUN_TIMER,
+            OnnxInferenceEngine.OUTPUTS_TIMER,
+            SOFTMAX_TIMER
+    };
 
     private EditText mEditText;
     private View mResultContent;
     private ResultRowView[] mResultRowViews = new ResultRowView[3]; // Positive & Negative & Time elapsed
+    private final ResultRowView[] mStageRowViews = new ResultRowView[STAGE_TIMERS.length];
+    private final Timer mIncrementalTokenizeTimer = MetricsRegistry.getDefault().timer(TOKENIZE_INCREMENTAL_TIMER);
+    private final Timer mSoftmaxTimer = MetricsRegistry.getDefault().timer(SOFTMAX_TIMER);
     private Toolbar toolbar;
     private String mLastBgHandledText;
 
-    private Map<String, Integer> dic = new HashMap<>();
-    private static final int MAX_SEQ_LEN = 512;
-    private static final boolean DO_LOWER_CASE = false;
-    private static final boolean PAD_TO_MAX_LENGTH = false;
-
     private static final boolean ADD_SPECIAL_TOKENS = true;
-    private FeatureConverter featureConverter;
-
-    private OrtEnvironment env;
-    private OrtSession session;
-
-    public void loadDictionary() {
-        try (InputStream is = getAssets().open(DIC_PATH);
-             BufferedReader reader = new BufferedReader(new InputStreamReader(is))) {
-            int index = 0;
-            while (reader.ready()) {
-                String key = reader.readLine();
-                dic.put(key, index++);
-            }
-        } catch (IOException e) {
-            Log.e(TAG, Objects.requireNonNull(e.getMessage()));
-        }
-    }
-
-    public void loadModel(){
-        long startTime = SystemClock.elapsedRealtime();
-        env = OrtEnvironment.getEnvironment();
-        Log.v(TAG, "getEnv: "+ (SystemClock.elapsedRealtime()-startTime));
-
-        try (InputStream is = getAssets().open(MODEL_PATH)){
-            int size = is.available();
-            byte[] buffer = new byte[size];
-
-            int read;
-            while ((read = is.read(buffer, 0, size)) != -1){
-                if(read < 0 ){
-                    break;
-                }
-            }
-
-            startTime = SystemClock.elapsedRealtime();
-            session = env.createSession(buffer);
-            Log.v(TAG, "CreateSession: " + (SystemClock.elapsedRealtime() - startTime));
-        } catch (OrtException | IOException e) {
-            throw new RuntimeException(e);
-        }
-    }
 
+    private ModelHolder mModelHolder;
+    private volatile ListenableFuture<ModelHolder.LoadedModel> mModel;
+    // Follows every edit on the UI thread, so a pause in typing only has to run the model.
+    private IncrementalTokenizer mIncrementalTokenizer;
+    // UI thread only: how long the last edit took to tokenize, or -1 before the first.
+    private long mIncrementalTokenizeNanos = -1;
+    // Bumped on every edit; background work for an older generation is dropped.
+    private final AtomicInteger mTextGeneration = new AtomicInteger();
 
     private static class AnalysisResult {
         private final float[] scores;
         private final String[] className;
         private final long moduleForwardDuration;
+        private final boolean cached;
+        // Per STAGE_TIMERS entry: the stage's duration for this text, or -1 if it did not run.
+        private final long[] stageNanos;
 
-        public AnalysisResult(float[] scores, long moduleForwardDuration){
+        public AnalysisResult(float[] scores, long moduleForwardDuration, boolean cached, long[] stageNanos){
             this.scores = scores;
             this.moduleForwardDuration = moduleForwardDuration;
+            this.cached = cached;
+            this.stageNanos = stageNanos;
             this.className = new String[2];
             this.className[0] = "Normal";
             this.className[1] = "Spam";
@@ -115,25 +101,40 @@ public class TorchActivity extends BaseModuleActivity {
 
     private Runnable mOnEditTextStopRunnable = () -> {
         final String text = mEditText.getText().toString();
+        final int[] ids = mIncrementalTokenizer == null ? null : mIncrementalTokenizer.copyIds();
+        final long incrementalNanos = ids == null ? -1 : mIncrementalTokenizeNanos;
+        final int generation = mTextGeneration.get();
+        // The task holds its own reference, so the model is not closed under it after onStop.
+        final ListenableFuture<ModelHolder.LoadedModel> model = mModelHolder.acquire();
         mBackgroundHandler.post(()->{
-            if(TextUtils.equals(text, mLastBgHandledText)){
-                return;
-            }
-
-            if(TextUtils.isEmpty(text)){
-                runOnUiThread(()-> applyUIEmptyTextState());
-                mLastBgHandledText = null;
-                return;
-            }
-
-            final AnalysisResult result = analyzeText(text);
-            if(result != null){
-                runOnUiThread(()-> applyUIAnalysisResult(result));
-                mLastBgHandledText = text;
+            try {
+                analyzeInBackground(model, text, ids, incrementalNanos, generation);
+            } finally {
+                mModelHolder.release(model);
             }
         });
     };
 
+    @WorkerThread
+    private void analyzeInBackground(ListenableFuture<ModelHolder.LoadedModel> model, String text,
+                                     @Nullable int[] ids, long incrementalNanos, int generation){
+        if(generation != mTextGeneration.get() || TextUtils.equals(text, mLastBgHandledText)){
+            return;
+        }
+
+        if(TextUtils.isEmpty(text)){
+            runOnUiThread(()-> applyUIEmptyTextState());
+            mLastBgHandledText = null;
+            return;
+        }
+
+        final AnalysisResult result = analyzeText(model, text, ids, incrementalNanos, generation);
+        if(result != null && generation == mTextGeneration.get()){
+            runOnUiThread(()-> applyUIAnalysisResult(result));
+            mLastBgHandledText = text;
+        }
+    }
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         Log.v(TAG, "onCreate");
@@ -154,6 +155,11 @@ public class TorchActivity extends BaseModuleActivity {
         mResultRowViews[1] = findViewById(R.id.nsmc_top2_result_row);
         mResultRowViews[2] = findViewById(R.id.nsmc_time_row);
         mResultContent = findViewById(R.id.nsmc_result_content);
+        LinearLayout stageRows = findViewById(R.id.nsmc_stage_rows);
+        for(int i = 0; i < STAGE_TIMERS.length; i++){
+            mStageRowViews[i] = new ResultRowView(this);
+            stageRows.addView(mStageRowViews[i]);
+        }
 
         mEditText.addTextChangedListener(new InternalTextWatcher());
     }
@@ -162,68 +168,137 @@ public class TorchActivity extends BaseModuleActivity {
     protected void onStart() {
         Log.v(TAG, "onStart");
         super.onStart();
-        Log.v(TAG, "Loading model...");
-        loadModel();
-        Log.v(TAG, "Loading Dictionary...");
-        loadDictionary();
-        Log.v(TAG, "Loading Feature Converter");
-        featureConverter = new FeatureConverter(dic, DO_LOWER_CASE, MAX_SEQ_LEN, PAD_TO_MAX_LENGTH);
+        mModelHolder = ModelHolder.get(this);
+        mModel = mModelHolder.acquire();
+        if(!mModel.isDone()){
+            Log.v(TAG, "Warming up model...");
+            toolbar.setSubtitle(R.string.warming_up);
+            mModel.addListener(() -> toolbar.setSubtitle(null), this::runOnUiThread);
+        }
+        final ListenableFuture<ModelHolder.LoadedModel> model = mModel;
+        model.addListener(() -> onModelReady(model), this::runOnUiThread);
     }
 
-    private AnalysisResult analyzeText(String text){
-        if(IS_LLM_MODEL){
-            return analyzeTextLLM(text);
+    private void onModelReady(ListenableFuture<ModelHolder.LoadedModel> model){
+        if(model != mModel || model.isCancelled()){
+            return;
         }
-        else {
-            return analyzeTextMachineLearning(text);
+        try {
+            IncrementalTokenizer tokenizer =
+                    new IncrementalTokenizer(model.get().featureConverter.getTokenizer());
+            tokenizer.reset(mEditText.getText());
+            mIncrementalTokenizer = tokenizer;
+        } catch (ExecutionException | InterruptedException e) {
+            // Already logged by awaitModel() when the text is analyzed.
         }
     }
-    @WorkerThread
-    @Nullable
-    private AnalysisResult analyzeTextLLM(String text){
-        Feature feature = featureConverter.convert(text, ADD_SPECIAL_TOKENS);
-        int seqLength = feature.inputIds.length;
-        long[] inputIds = new long[seqLength];
-        for (int i = 0; i < seqLength; i++) {
-            inputIds[i] = feature.inputIds[i];
+
+    // The stages timed on this thread while the text is analyzed are its breakdown, whatever other
+    // threads run at the same time; incremental tokenization ran on the UI thread before.
+    private AnalysisResult analyzeText(ListenableFuture<ModelHolder.LoadedModel> model, String text,
+                                       @Nullable int[] ids, long incrementalNanos, int generation){
+        try (StageTimes stages = StageTimes.open()) {
+            if(incrementalNanos >= 0){
+                stages.add(TOKENIZE_INCREMENTAL_TIMER, incrementalNanos);
+            }
+            if(IS_LLM_MODEL){
+                return analyzeTextLLM(awaitModel(model), text, ids, generation, stages);
+            }
+            else {
+                return analyzeTextMachineLearning(awaitModel(model), text, stages);
+            }
         }
+    }
 
-        Map<String, OnnxTensor> inputs = new HashMap<>();
+    // Waits on the background thread while the model is still warming up.
+    @WorkerThread
+    @Nullable
+    private ModelHolder.LoadedModel awaitModel(ListenableFuture<ModelHolder.LoadedModel> model){
         try {
-            inputs.put((String) session.getInputNames().toArray()[0],
-                    OnnxTensor.createTensor(env, LongBuffer.wrap(inputIds), new long[]{1, seqLength}));
+            return model.get();
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Model unavailable", e.getCause());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
         }
-        catch (OrtException e){
-            throw new RuntimeException(e);
+    }
+
+    @WorkerThread
+    @Nullable
+    private AnalysisResult analyzeTextLLM(@Nullable ModelHolder.LoadedModel model, String text,
+                                          @Nullable int[] ids, int generation, StageTimes stages){
+        if(model == null){
+            return null;
         }
-        OrtSession.Result outputs = null;
         long start = SystemClock.elapsedRealtime();
+        if(ids == null){
+            // Typed before the model was ready; tokenize from scratch this once.
+            int[] buffer = new int[text.length()];
+            ids = Arrays.copyOf(buffer,
+                    model.featureConverter.getTokenizer().tokenizeToIds(text, buffer, 0, buffer.length));
+        }
+        // Keyed on ids rather than the string, so spacing and punctuation variants hit too.
+        long key = ResultCache.key(ids, ids.length);
+        float[] logits = model.resultCache.get(key);
+        if(logits != null){
+            return toAnalysisResult(logits, start, true, stages);
+        }
+        // A reworded copy of a recent message, e.g. with another phone number, gets its verdict.
+        int[] signature = model.nearDuplicates.signature(ids, ids.length);
+        logits = model.nearDuplicates.get(signature);
+        if(logits != null){
+            return toAnalysisResult(logits, start, true, stages);
+        }
         try {
-            outputs = session.run(inputs);
+            logits = model.cascadeClassifier.classify(
+                    ids, ids.length, () -> generation != mTextGeneration.get());
         }
-        catch (OrtException e){
+        catch (InferenceException e){
             throw new RuntimeException(e);
         }
+        if(logits != null){
+            model.resultCache.put(key, logits);
+            model.nearDuplicates.put(signature, logits);
+        }
+        return toAnalysisResult(logits, start, false, stages);
+    }
+
+    @WorkerThread
+    @Nullable
+    private AnalysisResult analyzeTextMachineLearning(@Nullable ModelHolder.LoadedModel model, String text,
+                                                      StageTimes stages) {
+        if(model == null){
+            return null;
+        }
+        Feature feature = model.featureConverter.convert(text, ADD_SPECIAL_TOKENS);
+        long start = SystemClock.elapsedRealtime();
+        return toAnalysisResult(model.prefilter.classify(feature), start, false, stages);
+    }
+
+    @Nullable
+    private AnalysisResult toAnalysisResult(@Nullable float[] logits, long start, boolean cached,
+                                            StageTimes stages){
+        if(logits == null){
+            return null;
+        }
 
-        OnnxTensor onnxTensor = (OnnxTensor) outputs.get(0);
-        float[] logits = onnxTensor.getFloatBuffer().array();
+        long softmaxStart = System.nanoTime();
         float[] scores = new float[2];
         float sum = (float) (Math.exp(logits[0])+Math.exp(logits[1]));
         scores[0] = (float) Math.exp(logits[0])/sum;
         scores[1] = (float) Math.exp(logits[1])/sum;
+        mSoftmaxTimer.recordSince(softmaxStart);
 
         long time = SystemClock.elapsedRealtime() - start;
-        return new AnalysisResult(scores, time);
-    }
-
-    private OnnxTensor createTensor(long[] input, long[] shape) throws OrtException {
-        return OnnxTensor.createTensor(env, LongBuffer.wrap(input), shape);
+        long[] stageNanos = new long[STAGE_TIMERS.length];
+        for(int i = 0; i < stageNanos.length; i++){
+            stageNanos[i] = stages.getNanos(STAGE_TIMERS[i]);
+        }
+        return new AnalysisResult(scores, time, cached, stageNanos);
     }
 
-    @WorkerThread
-    @Nullable
-    private AnalysisResult analyzeTextMachineLearning(String text) {return null;};
-
     private void applyUIAnalysisResult(AnalysisResult result){
         int first_idx, second_idx;
 
@@ -249,9 +324,22 @@ public class TorchActivity extends BaseModuleActivity {
         );
         setUIResultRowView(
                 mResultRowViews[2],
-                "Time elapsed",
+                result.cached ? "Time elapsed (cached)" : "Time elapsed",
                 String.format(Locale.US, FORMAT_MS, result.moduleForwardDuration)
         );
+        for(int i = 0; i < mStageRowViews.length; i++){
+            long nanos = result.stageNanos[i];
+            if(nanos < 0 || result.cached){
+                mStageRowViews[i].setVisibility(View.GONE);
+                continue;
+            }
+            mStageRowViews[i].setVisibility(View.VISIBLE);
+            setUIResultRowView(
+                    mStageRowViews[i],
+                    "  " + STAGE_TIMERS[i],
+                    String.format(Locale.US, STAGE_FORMAT, nanos / 1e6)
+            );
+        }
         mResultContent.setVisibility(View.VISIBLE);
     }
 
@@ -267,20 +355,14 @@ public class TorchActivity extends BaseModuleActivity {
     protected void onStop() {
         Log.v(TAG, "onStop");
         super.onStop();
-        if(session != null){
-            Log.v(TAG, "Unload session...");
-            try {
-                session.close();
-            }
-            catch (Exception e){
-                Log.v(TAG, "Exception: " + e);
-            }
-        }
-
-        if(dic != null){
-            Log.v(TAG, "Unload dictionary...");
-            dic.clear();
-        }
+        // A pause in typing just before onStop must not start a task; one already queued or
+        // running sees a stale generation and stops early, then releases its own reference.
+        mUIHandler.removeCallbacks(mOnEditTextStopRunnable);
+        mTextGeneration.incrementAndGet();
+        mIncrementalTokenizer = null;
+        Log.v(TAG, "Pipeline metrics:\n" + MetricsRegistry.getDefault().dump());
+        // The holder keeps the session warm for the next onStart and unloads it on its own.
+        mModelHolder.release(mModel);
     }
 
     private class InternalTextWatcher implements TextWatcher{
@@ -292,7 +374,16 @@ public class TorchActivity extends BaseModuleActivity {
 
         @Override
         public void onTextChanged(CharSequence s, int start, int before, int count) {
-
+            mTextGeneration.incrementAndGet();
+            if(mModel != null && !mModel.isDone()){
+                // The user is waiting for a result now, not for every shape to be primed.
+                mModelHolder.cancelWarmup();
+            }
+            if(mIncrementalTokenizer != null){
+                long startNanos = System.nanoTime();
+                mIncrementalTokenizer.update(s, start, before, count);
+                mIncrementalTokenizeNanos = mIncrementalTokenizeTimer.recordSince(startNanos) - startNanos;
+            }
         }
 
         @Override
@@ -0,0 +1,161 @@
+package com.example.llm.inference;
+
+import com.example.llm.transformers.Feature;
+import com.example.llm.transformers.SequenceBuckets;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BatchingClassifierTest {
+    private static final long FOREVER_MS = 60_000;
+
+    // Each row's logits are its first id and the padded length, so a result shows its row and batch.
+    private final List<String> batches = Collections.synchronizedList(new ArrayList<>());
+    private final CountDownLatch running = new CountDownLatch(1);
+    private CountDownLatch blocked = new CountDownLatch(0);
+    private BatchingClassifier classifier;
+
+    private final InferenceEngine engine = new InferenceEngine() {
+        @Override
+        public float[] classify(Feature feature) {
+            fail("features are batched");
+            return null;
+        }
+
+        @Override
+        public float[][] classify(LongBuffer inputIds, LongBuffer attentionMask, int batchSize, int seqLen)
+                throws InferenceException {
+            float[][] logits = new float[batchSize][];
+            StringBuilder ids = new StringBuilder();
+            for (int row = 0; row < batchSize; row++) {
+                long id = inputIds.get(row * seqLen);
+                ids.append(row == 0 ? "" : ",").append(id);
+                logits[row] = new float[]{id, seqLen};
+            }
+            batches.add(ids + "/" + seqLen);
+            running.countDown();
+            try {
+                blocked.await();
+            } catch (InterruptedException e) {
+                throw new InferenceException("interrupted", e);
+            }
+            return logits;
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    @After
+    public void closeClassifier() {
+        if (classifier != null) {
+            classifier.close();
+        }
+    }
+
+    @Test
+    public void batchesUpToMaxBatchSize() throws Exception {
+        classifier = new BatchingClassifier(engine, 3, FOREVER_MS);
+        ListenableFuture<float[]> a = classifier.submit(feature(10, 2));
+        ListenableFuture<float[]> b = classifier.submit(feature(11, 4));
+        ListenableFuture<float[]> c = classifier.submit(feature(12, 3));
+
+        // A full batch runs without waiting for maxWait.
+        assertArrayEquals(new float[]{10, 4}, get(a), 0f);
+        assertArrayEquals(new float[]{11, 4}, get(b), 0f);
+        assertArrayEquals(new float[]{12, 4}, get(c), 0f);
+        assertEquals(Arrays.asList("10,11,12/4"), batches);
+        assertEquals(1, classifier.getStats().getBatchCount(3));
+    }
+
+    @Test
+    public void partialBatchRunsAfterMaxWait() throws Exception {
+        classifier = new BatchingClassifier(engine, 8, 20);
+        ListenableFuture<float[]> a = classifier.submit(feature(10, 2));
+        ListenableFuture<float[]> b = classifier.submit(feature(11, 3));
+
+        assertArrayEquals(new float[]{10, 3}, get(a), 0f);
+        assertArrayEquals(new float[]{11, 3}, get(b), 0f);
+        assertEquals(Arrays.asList("10,11/3"), batches);
+    }
+
+    @Test
+    public void bucketsSplitTheBatchAndKeepEachRowWithItsRequest() throws Exception {
+        classifier = new BatchingClassifier(engine, new SequenceBuckets(4, 8), 3, FOREVER_MS);
+        ListenableFuture<float[]> longer = classifier.submit(feature(10, 6));
+        ListenableFuture<float[]> shortest = classifier.submit(feature(11, 2));
+        ListenableFuture<float[]> shorter = classifier.submit(feature(12, 3));
+
+        assertArrayEquals(new float[]{10, 8}, get(longer), 0f);
+        assertArrayEquals(new float[]{11, 4}, get(shortest), 0f);
+        assertArrayEquals(new float[]{12, 4}, get(shorter), 0f);
+        assertEquals(Arrays.asList("11,12/4", "10/8"), batches);
+    }
+
+    @Test
+    public void cancelledRequestTakesNoRow() throws Exception {
+        blocked = new CountDownLatch(1);
+        classifier = new BatchingClassifier(engine, 2, 20);
+        ListenableFuture<float[]> first = classifier.submit(feature(10, 2));
+        assertTrue(running.await(10, TimeUnit.SECONDS));
+
+        // Queued while the first batch runs.
+        ListenableFuture<float[]> cancelled = classifier.submit(feature(11, 2));
+        ListenableFuture<float[]> kept = classifier.submit(feature(12, 5));
+        cancelled.cancel(false);
+        blocked.countDown();
+
+        assertArrayEquals(new float[]{12, 5}, get(kept), 0f);
+        get(first);
+        assertEquals(Arrays.asList("10/2", "12/5"), batches);
+    }
+
+    @Test
+    public void closeCancelsQueuedRequests() throws Exception {
+        blocked = new CountDownLatch(1);
+        classifier = new BatchingClassifier(engine, 1, 20);
+        ListenableFuture<float[]> running = classifier.submit(feature(10, 2));
+        assertTrue(this.running.await(10, TimeUnit.SECONDS));
+        ListenableFuture<float[]> queued = classifier.submit(feature(11, 2));
+
+        classifier.close();
+        assertTrue(queued.isCancelled());
+        assertTrue(running.isDone());
+        assertEquals(Arrays.asList("10/2"), batches);
+        try {
+            get(classifier.submit(feature(12, 2)));
+            fail();
+        } catch (ExecutionException e) {
+            // Expected.
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    // firstId followed by ones, tokenCount long.
+    private static Feature feature(int firstId, int tokenCount){
+        int[] ids = new int[tokenCount];
+        Arrays.fill(ids, 1);
+        ids[0] = firstId;
+        return new Feature(ids);
+    }
+
+    private static float[] get(ListenableFuture<float[]> future) throws Exception {
+        return future.get(10, TimeUnit.SECONDS);
+    }
+}
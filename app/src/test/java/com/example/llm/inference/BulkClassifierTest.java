@@ -0,0 +1,161 @@
+package com.example.llm.inference;
+
+import com.example.llm.tokenization.VocabTrie;
+import com.example.llm.transformers.Feature;
+import com.example.llm.transformers.FeatureConverter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.LongBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BulkClassifierTest {
+    private static final int WORDS = 50;
+    private static final int FIRST_WORD_ID = 4;
+
+    private BulkClassifier classifier;
+
+    // Each row's logits are its first wordpiece id, so results can be matched to their texts.
+    private static final class EchoEngine implements InferenceEngine {
+        @Override
+        public float[] classify(Feature feature) {
+            return new float[]{feature.inputIds[1]};
+        }
+
+        @Override
+        public float[][] classify(LongBuffer inputIds, LongBuffer attentionMask, int batchSize, int seqLen) {
+            float[][] logits = new float[batchSize][];
+            for (int row = 0; row < batchSize; row++) {
+                logits[row] = new float[]{inputIds.get(row * seqLen + 1)};
+            }
+            return logits;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Before
+    public void createClassifier() {
+        Map<String, Integer> vocab = new HashMap<>();
+        vocab.put("[PAD]", 0);
+        vocab.put("[UNK]", 1);
+        vocab.put("[CLS]", 2);
+        vocab.put("[SEP]", 3);
+        for (int i = 0; i < WORDS; i++) {
+            vocab.put("w" + i, FIRST_WORD_ID + i);
+        }
+        FeatureConverter converter = new FeatureConverter(VocabTrie.build(vocab), false, 16, false);
+        classifier = new BulkClassifier(new EchoEngine(), converter, 4, 8, 32);
+    }
+
+    @After
+    public void closeClassifier() {
+        classifier.close();
+    }
+
+    @Test
+    public void resultsComeBackInInputOrder() throws InterruptedException {
+        BulkClassifier.Job job = classifier.classify(new Texts(500, -1));
+        for (int i = 0; i < 500; i++) {
+            BulkClassifier.Result result = job.next();
+            assertNotNull(result);
+            assertEquals(i, result.index);
+            assertEquals(text(i), result.text);
+            assertNull(result.error);
+            assertEquals(FIRST_WORD_ID + i % WORDS, result.logits[0], 0f);
+        }
+        assertNull(job.next());
+        assertEquals(500, job.getCompletedCount());
+    }
+
+    @Test
+    public void stopsReadingWhileResultsAreNotTaken() throws InterruptedException {
+        Texts texts = new Texts(Integer.MAX_VALUE, -1);
+        BulkClassifier.Job job = classifier.classify(texts);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (job.getSubmittedCount() < 32 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        Thread.sleep(100);
+        assertEquals(32, job.getSubmittedCount());
+        // The feeder holds at most one more text while waiting for a slot.
+        assertTrue(texts.read.get() <= 33);
+
+        assertNotNull(job.next());
+        deadline = System.currentTimeMillis() + 5000;
+        while (job.getSubmittedCount() < 33 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(33, job.getSubmittedCount());
+        job.cancel();
+    }
+
+    @Test
+    public void cancelEndsTheJob() throws InterruptedException {
+        BulkClassifier.Job job = classifier.classify(new Texts(Integer.MAX_VALUE, -1));
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, job.next().index);
+        }
+        job.cancel();
+        assertTrue(job.isCancelled());
+        assertNull(job.next());
+        assertNull(job.next());
+    }
+
+    @Test
+    public void sourceErrorAfterTheResultsReadBefore() throws InterruptedException {
+        BulkClassifier.Job job = classifier.classify(new Texts(100, 3));
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i, job.next().index);
+        }
+        try {
+            job.next();
+            fail();
+        } catch (IllegalStateException expected) {
+            assertEquals("broken source", expected.getCause().getMessage());
+        }
+        assertNull(job.next());
+    }
+
+    private static String text(int i) {
+        return "w" + (i % WORDS) + " w" + ((i + 1) % WORDS);
+    }
+
+    private static final class Texts implements Iterator<String> {
+        private final int count;
+        private final int failAt;
+        final AtomicInteger read = new AtomicInteger();
+
+        Texts(int count, int failAt) {
+            this.count = count;
+            this.failAt = failAt;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return read.get() < count;
+        }
+
+        @Override
+        public String next() {
+            int i = read.getAndIncrement();
+            if (i == failAt) {
+                throw new IllegalStateException("broken source");
+            }
+            return text(i);
+        }
+    }
+}
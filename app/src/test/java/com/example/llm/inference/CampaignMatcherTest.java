@@ -0,0 +1,118 @@
+package com.example.llm.inference;
+
+import com.example.llm.embedding.EmbeddingPooling;
+import com.example.llm.embedding.VectorIndex;
+import com.example.llm.tokenization.VocabTrie;
+import com.example.llm.transformers.Feature;
+import com.example.llm.transformers.FeatureConverter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.LongBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CampaignMatcherTest {
+    private static final int DIMENSION = 32;
+    private static final long PRIZE_CAMPAIGN = 7;
+    private static final long PARCEL_CAMPAIGN = 8;
+
+    private FeatureConverter converter;
+
+    // Bag of wordpieces: rows sharing most of their ids get similar embeddings.
+    private static class BagOfIdsEngine implements InferenceEngine {
+        @Override
+        public float[] classify(Feature feature) {
+            return null;
+        }
+
+        @Override
+        public float[][] classify(LongBuffer inputIds, LongBuffer attentionMask, int batchSize, int seqLen) {
+            return null;
+        }
+
+        @Override
+        public float[][] embed(InputBatch batch) {
+            float[][] embeddings = new float[batch.batchSize][DIMENSION];
+            for (int row = 0; row < batch.batchSize; row++) {
+                for (int t = 0; t < batch.seqLen; t++) {
+                    int index = row * batch.seqLen + t;
+                    if (batch.attentionMask().get(index) != 0) {
+                        embeddings[row][(int) (batch.inputIds().get(index) * 7 % DIMENSION)] += 1;
+                    }
+                }
+                EmbeddingPooling.normalize(embeddings[row]);
+            }
+            return embeddings;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Before
+    public void createConverter() {
+        Map<String, Integer> vocab = new HashMap<>();
+        vocab.put("[PAD]", 0);
+        vocab.put("[UNK]", 1);
+        vocab.put("[CLS]", 2);
+        vocab.put("[SEP]", 3);
+        converter = new FeatureConverter(VocabTrie.build(vocab), false, 16, false);
+    }
+
+    @Test
+    public void matchesRewordedCampaignMessages() throws InferenceException, IOException {
+        try (VectorIndex index = VectorIndex.inMemory(DIMENSION)) {
+            CampaignMatcher matcher = new CampaignMatcher(new BagOfIdsEngine(), converter, index, 14, 0.8f);
+            int[] prize = {10, 11, 12, 13, 14, 15, 16, 17};
+            int[] parcel = {20, 21, 22, 23, 24, 25};
+            assertNull(matcher.match(prize, prize.length));
+            assertTrue(matcher.addExample(PRIZE_CAMPAIGN, prize, prize.length));
+            assertTrue(matcher.addExample(PARCEL_CAMPAIGN, parcel, parcel.length));
+
+            // One wordpiece swapped, e.g. a new link.
+            int[] reworded = {10, 11, 12, 13, 14, 15, 16, 18};
+            VectorIndex.Match match = matcher.match(reworded, reworded.length);
+            assertEquals(PRIZE_CAMPAIGN, match.label);
+            assertTrue(match.score > 0.8f);
+
+            int[] unrelated = {30, 31, 12, 33, 34};
+            assertNull(matcher.match(unrelated, unrelated.length));
+        }
+    }
+
+    @Test
+    public void onlyTheFirstWindowIsEmbedded() throws InferenceException, IOException {
+        try (VectorIndex index = VectorIndex.inMemory(DIMENSION)) {
+            CampaignMatcher matcher = new CampaignMatcher(new BagOfIdsEngine(), converter, index, 4, 0.99f);
+            int[] opening = {10, 11, 12, 13};
+            int[] longer = {10, 11, 12, 13, 40, 41, 42, 43, 44};
+            matcher.addExample(PRIZE_CAMPAIGN, opening, opening.length);
+            assertEquals(PRIZE_CAMPAIGN, matcher.match(longer, longer.length).label);
+        }
+    }
+
+    @Test
+    public void enginesWithoutEmbeddingsMatchNothing() throws InferenceException, IOException {
+        InferenceEngine classifierOnly = new BagOfIdsEngine() {
+            @Override
+            public float[][] embed(InputBatch batch) {
+                return null;
+            }
+        };
+        try (VectorIndex index = VectorIndex.inMemory(DIMENSION)) {
+            CampaignMatcher matcher = new CampaignMatcher(classifierOnly, converter, index, 14, 0.5f);
+            int[] ids = {10, 11, 12};
+            assertFalse(matcher.addExample(PRIZE_CAMPAIGN, ids, ids.length));
+            assertEquals(0, index.size());
+        }
+    }
+}
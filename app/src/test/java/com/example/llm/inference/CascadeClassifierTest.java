@@ -0,0 +1,132 @@
+package com.example.llm.inference;
+
+import com.example.llm.metrics.MetricsRegistry;
+import com.example.llm.prefilter.HashedLogisticModel;
+import com.example.llm.tokenization.VocabTrie;
+import com.example.llm.transformers.Feature;
+import com.example.llm.transformers.FeatureConverter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.LongBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CascadeClassifierTest {
+    private static final int CLS_ID = 2;
+    private static final int SEP_ID = 3;
+    private static final int[] SPAM = {10, 11, 12};
+    private static final int[] HAM = {20, 21, 22};
+    private static final int[] UNSURE = {30, 31, 32};
+    private static final float[] TRANSFORMER_LOGITS = {1f, -1f};
+
+    private final AtomicInteger transformerCalls = new AtomicInteger();
+    private ChunkedClassifier transformer;
+    private HashedLogisticModel model;
+
+    private final class CountingEngine implements InferenceEngine {
+        @Override
+        public float[] classify(Feature feature) {
+            transformerCalls.incrementAndGet();
+            return TRANSFORMER_LOGITS.clone();
+        }
+
+        @Override
+        public float[][] classify(LongBuffer inputIds, LongBuffer attentionMask, int batchSize, int seqLen) {
+            fail("one window per text");
+            return null;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Before
+    public void createStages() {
+        Map<String, Integer> vocab = new HashMap<>();
+        vocab.put("[PAD]", 0);
+        vocab.put("[UNK]", 1);
+        vocab.put("[CLS]", CLS_ID);
+        vocab.put("[SEP]", SEP_ID);
+        FeatureConverter converter = new FeatureConverter(VocabTrie.build(vocab), false, 16, false);
+        transformer = new ChunkedClassifier(new CountingEngine(), converter, 14, 14, WindowAggregation.MAX);
+
+        model = new HashedLogisticModel(8);
+        for (int step = 0; step < 500; step++) {
+            model.train(SPAM, 0, SPAM.length, true, 0.5f, 0f);
+            model.train(HAM, 0, HAM.length, false, 0.5f, 0f);
+        }
+    }
+
+    @Test
+    public void confidentTextsExitEarly() throws InferenceException {
+        CascadeClassifier cascade = new CascadeClassifier(
+                new MachineLearningEngine(model, CLS_ID, SEP_ID), transformer, 0.05f, 0.95f);
+        long escalatedBefore = counter(CascadeClassifier.ESCALATED_COUNTER);
+
+        float[] spam = cascade.classify(SPAM, SPAM.length, () -> false);
+        float[] ham = cascade.classify(HAM, HAM.length, () -> false);
+        assertEquals(0, transformerCalls.get());
+        assertTrue(spam[1] > spam[0]);
+        assertTrue(ham[1] < ham[0]);
+        // The logits reproduce the pre-filter's probability through the usual softmax.
+        assertEquals(model.probability(SPAM, 0, SPAM.length), softmaxSpam(spam), 1e-5f);
+
+        assertArrayEquals(TRANSFORMER_LOGITS, cascade.classify(UNSURE, UNSURE.length, () -> false), 0f);
+        assertEquals(1, transformerCalls.get());
+        assertEquals(escalatedBefore + 1, counter(CascadeClassifier.ESCALATED_COUNTER));
+    }
+
+    @Test
+    public void fullThresholdsAlwaysEscalate() throws InferenceException {
+        CascadeClassifier cascade = new CascadeClassifier(
+                new MachineLearningEngine(model, CLS_ID, SEP_ID), transformer, 0f, 1f);
+        cascade.classify(SPAM, SPAM.length, () -> false);
+        cascade.classify(HAM, HAM.length, () -> false);
+        assertEquals(2, transformerCalls.get());
+    }
+
+    @Test
+    public void withoutModelEverythingEscalates() throws InferenceException {
+        CascadeClassifier cascade = new CascadeClassifier(new MachineLearningEngine(), transformer, 0.05f, 0.95f);
+        assertArrayEquals(TRANSFORMER_LOGITS, cascade.classify(SPAM, SPAM.length, () -> false), 0f);
+        assertEquals(1, transformerCalls.get());
+    }
+
+    @Test
+    public void cancelledShortTextNeverRuns() throws InferenceException {
+        CascadeClassifier cascade = new CascadeClassifier(new MachineLearningEngine(), transformer, 0.05f, 0.95f);
+        assertNull(cascade.classify(UNSURE, UNSURE.length, () -> true));
+        assertEquals(0, transformerCalls.get());
+    }
+
+    @Test
+    public void prefilterIgnoresSpecialTokens() {
+        MachineLearningEngine prefilter = new MachineLearningEngine(model, CLS_ID, SEP_ID);
+        int[] feature = {CLS_ID, SPAM[0], SPAM[1], SPAM[2], SEP_ID};
+        float[] logits = prefilter.classify(new Feature(feature));
+        assertEquals(model.logit(SPAM, 0, SPAM.length), logits[1], 1e-6f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsCrossedThresholds() {
+        new CascadeClassifier(new MachineLearningEngine(), transformer, 0.9f, 0.1f);
+    }
+
+    private static long counter(String name){
+        return MetricsRegistry.getDefault().counter(name).get();
+    }
+
+    private static float softmaxSpam(float[] logits){
+        return (float) (1 / (1 + Math.exp(logits[0] - logits[1])));
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.llm.inference;
+
+import com.example.llm.tokenization.VocabTrie;
+import com.example.llm.transformers.Feature;
+import com.example.llm.transformers.FeatureConverter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.LongBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class FileClassifierTest {
+    private BulkClassifier bulkClassifier;
+    private File dir;
+    private File input;
+    private File output;
+
+    // Spam when the text starts with "buy", so verdicts can be checked per line.
+    private static final class FirstWordEngine implements InferenceEngine {
+        private static final int BUY_ID = 4;
+
+        @Override
+        public float[] classify(Feature feature) {
+            return logits(feature.inputIds[1]);
+        }
+
+        @Override
+        public float[][] classify(LongBuffer inputIds, LongBuffer attentionMask, int batchSize, int seqLen) {
+            float[][] logits = new float[batchSize][];
+            for (int row = 0; row < batchSize; row++) {
+                logits[row] = logits(inputIds.get(row * seqLen + 1));
+            }
+            return logits;
+        }
+
+        private static float[] logits(long firstId) {
+            return firstId == BUY_ID ? new float[]{0f, 0f} : new float[]{0f, -100f};
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        Map<String, Integer> vocab = new HashMap<>();
+        vocab.put("[PAD]", 0);
+        vocab.put("[UNK]", 1);
+        vocab.put("[CLS]", 2);
+        vocab.put("[SEP]", 3);
+        vocab.put("buy", 4);
+        vocab.put("hello", 5);
+        FeatureConverter converter = new FeatureConverter(VocabTrie.build(vocab), true, 16, false);
+        bulkClassifier = new BulkClassifier(new FirstWordEngine(), converter, 2, 4, 8);
+        dir = Files.createTempDirectory("audit").toFile();
+        input = new File(dir, "export.jsonl");
+        output = new File(dir, "verdicts.jsonl");
+    }
+
+    @After
+    public void tearDown() {
+        bulkClassifier.close();
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void writesOneVerdictPerLine() throws IOException, InterruptedException {
+        write("{\"body\":\"Buy now\"}\n{\"body\":\"hello\"}\nnot json\n{\"other\":1}\n");
+        FileClassifier classifier = new FileClassifier(bulkClassifier, FileClassifier.Format.JSONL, "body");
+        assertEquals(4, classifier.classify(input, output, null));
+
+        List<String> verdicts = Files.readAllLines(output.toPath(), StandardCharsets.UTF_8);
+        assertEquals(4, verdicts.size());
+        assertEquals("{\"line\":0,\"spam\":0.5}", verdicts.get(0));
+        assertEquals("{\"line\":1,\"spam\":0.0}", verdicts.get(1));
+        assertEquals(0, verdicts.get(2).indexOf("{\"line\":2,\"error\":\"cannot read body"));
+        assertEquals("{\"line\":3,\"spam\":0.0}", verdicts.get(3));
+        assertFalse(FileClassifier.checkpointFile(output).exists());
+    }
+
+    @Test
+    public void resumesFromCheckpoint() throws IOException, InterruptedException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 25; i++) {
+            text.append(i % 2 == 0 ? "buy " : "hello ").append(i).append('\n');
+        }
+        write(text.toString());
+        FileClassifier classifier = new FileClassifier(bulkClassifier, FileClassifier.Format.LINES, null)
+                .setCheckpointInterval(10);
+        classifier.classify(input, output, null);
+        byte[] expected = Files.readAllBytes(output.toPath());
+
+        // As if the process died after the checkpoint at line 10 while writing line 12.
+        long inputOffset = text.indexOf("hello 9\n") + "hello 9\n".length();
+        long outputBytes = indexOfLine(expected, 10);
+        try (RandomAccessFile partial = new RandomAccessFile(output, "rw")) {
+            partial.setLength(outputBytes);
+            partial.seek(outputBytes);
+            partial.write("{\"line\":10,\"spam\":1.0}\n{\"li".getBytes(StandardCharsets.UTF_8));
+        }
+        new FileClassifier.Checkpoint(inputOffset, 10, outputBytes, input)
+                .write(FileClassifier.checkpointFile(output));
+
+        long[] progress = new long[2];
+        assertEquals(15, classifier.classify(input, output, (lines, bytesRead, totalBytes) -> {
+            progress[0] = lines;
+            progress[1] = bytesRead;
+        }));
+        assertEquals(new String(expected, StandardCharsets.UTF_8),
+                new String(Files.readAllBytes(output.toPath()), StandardCharsets.UTF_8));
+        assertEquals(20, progress[0]);
+        assertEquals(text.indexOf("buy 20\n"), progress[1]);
+    }
+
+    @Test
+    public void ignoresCheckpointOfAnotherInput() throws IOException, InterruptedException {
+        write("buy\nhello\n");
+        new FileClassifier.Checkpoint(6, 1, 999, input.length() + 1, input.lastModified())
+                .write(FileClassifier.checkpointFile(output));
+        FileClassifier classifier = new FileClassifier(bulkClassifier, FileClassifier.Format.LINES, null);
+        assertEquals(2, classifier.classify(input, output, null));
+        assertEquals(2, Files.readAllLines(output.toPath(), StandardCharsets.UTF_8).size());
+    }
+
+    private void write(String text) throws IOException {
+        Files.write(input.toPath(), text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static long indexOfLine(byte[] text, int line) {
+        int index = 0;
+        for (int i = 0; i < line; i++) {
+            while (text[index] != '\n') {
+                index++;
+            }
+            index++;
+        }
+        return index;
+    }
+}
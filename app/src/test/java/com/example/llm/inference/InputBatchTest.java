@@ -0,0 +1,80 @@
+package com.example.llm.inference;
+
+import org.junit.Test;
+
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class InputBatchTest {
+
+    @Test
+    public void putRowPadsAndMasks() {
+        InputBatch batch = InputBatch.allocateHeap(2, 4);
+        batch.putRow(0, new int[]{101, 7, 102, 55}, 3);
+        batch.putRow(1, new int[]{101, 8, 9, 10, 102}, 5);
+
+        assertRows(batch.inputIds(), 101, 7, 102, 0, 101, 8, 9, 10);
+        assertRows(batch.attentionMask(), 1, 1, 1, 0, 1, 1, 1, 1);
+    }
+
+    @Test
+    public void tokenCountsComeFromTheMask() {
+        InputBatch batch = InputBatch.allocateHeap(2, 4);
+        batch.putRow(0, new int[]{101, 7, 8, 102}, 4);
+        batch.putRow(1, new int[]{101, 7, 8, 102}, 4);
+        assertFalse(batch.isPadded());
+
+        batch.putRow(1, new int[]{101, 102}, 2);
+        assertTrue(batch.isPadded());
+        assertEquals(4, batch.tokenCount(0));
+        assertEquals(2, batch.tokenCount(1));
+    }
+
+    @Test
+    public void reusedRowsClearStaleIds() {
+        InputBatch batch = InputBatch.allocateHeap(1, 4);
+        batch.putRow(0, new int[]{101, 5, 6, 102}, 4);
+        batch.putRow(0, new int[]{101, 102}, 2);
+
+        assertRows(batch.inputIds(), 101, 102, 0, 0);
+        assertRows(batch.attentionMask(), 1, 1, 0, 0);
+    }
+
+    @Test
+    public void endRowPadsIdsWrittenInPlace() {
+        InputBatch batch = InputBatch.allocateHeap(2, 3);
+        batch.inputIds().put(3, 101).put(4, 102).put(5, 77);
+        batch.endRow(1, 2);
+        batch.endRow(0, 0);
+
+        assertRows(batch.inputIds(), 0, 0, 0, 101, 102, 0);
+        assertRows(batch.attentionMask(), 0, 0, 0, 1, 1, 0);
+    }
+
+    @Test
+    public void directBatchIsNativeOrderAndReleasedOnce() {
+        int[] released = new int[1];
+        InputBatch batch = InputBatch.allocateDirect(1, 2, b -> released[0]++);
+        assertTrue(batch.inputIds().isDirect());
+        assertEquals(ByteOrder.nativeOrder(), batch.inputIds().order());
+
+        batch.close();
+        batch.close();
+        assertEquals(1, released[0]);
+
+        batch.reopen();
+        batch.close();
+        assertEquals(2, released[0]);
+    }
+
+    private static void assertRows(LongBuffer buffer, long... expected) {
+        assertEquals(expected.length, buffer.remaining());
+        for (long value : expected) {
+            assertEquals(value, buffer.get());
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.llm.inference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class MappedLineReaderTest {
+    private static final String[] SUFFIXES = {
+            "", " \u00e9", " \u4e2d\u6587", " \ud83d\ude00", " \u00e9\u4e2d\ud83d\ude00"};
+
+    private File file;
+
+    @Before
+    public void createFile() throws IOException {
+        file = File.createTempFile("lines", ".txt");
+    }
+
+    @After
+    public void deleteFile() {
+        file.delete();
+    }
+
+    @Test
+    public void linesAcrossWindowBoundaries() throws IOException {
+        List<String> lines = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            // Multi-byte chars land on window boundaries; every line fits in the smallest window.
+            String line = "line " + i + SUFFIXES[i % SUFFIXES.length];
+            lines.add(line);
+            text.append(line).append(i % 3 == 0 ? "\r\n" : "\n");
+        }
+        write(text.toString());
+
+        for (int window : new int[]{24, 29, 61, 4096}) {
+            assertEquals("window " + window, lines, readAll(0, window));
+        }
+    }
+
+    @Test
+    public void lastLineWithoutNewlineAndEmptyLines() throws IOException {
+        write("\ufeffa\n\n\nb");
+        assertEquals(Arrays.asList("a", "", "", "b"), readAll(0, 3));
+    }
+
+    @Test
+    public void longLinesAreCutToTheWindow() throws IOException {
+        write("short\n0123456789abcdef\nnext\n");
+        assertEquals(Arrays.asList("short", "01234567", "next"), readAll(0, 8));
+    }
+
+    @Test
+    public void resumesAtOffset() throws IOException {
+        write("one\ntwo\nthree\n");
+        long offset;
+        try (MappedLineReader reader = new MappedLineReader(file, 0, 5)) {
+            assertEquals("one", reader.next());
+            offset = reader.getOffset();
+        }
+        assertEquals(4, offset);
+        assertEquals(Arrays.asList("two", "three"), readAll(offset, 5));
+
+        try (MappedLineReader reader = new MappedLineReader(file, file.length(), 5)) {
+            assertFalse(reader.hasNext());
+        }
+    }
+
+    @Test
+    public void invalidUtf8IsReplaced() throws IOException {
+        Files.write(file.toPath(), new byte[]{'a', (byte) 0xc3, '\n', (byte) 0xff, 'b'});
+        assertEquals(Arrays.asList("a\ufffd", "\ufffdb"), readAll(0, 4096));
+    }
+
+    private void write(String text) throws IOException {
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private List<String> readAll(long offset, int windowBytes) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (MappedLineReader reader = new MappedLineReader(file, offset, windowBytes)) {
+            while (reader.hasNext()) {
+                lines.add(reader.next());
+            }
+        }
+        return lines;
+    }
+}
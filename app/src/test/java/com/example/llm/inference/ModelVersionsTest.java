@@ -0,0 +1,153 @@
+package com.example.llm.inference;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ModelVersionsTest {
+    // Loads and closes wait here until the test runs them, like the holder's loader thread.
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+    private final List<String> closed = new ArrayList<>();
+    private final List<Integer> failingGenerations = new ArrayList<>();
+    private int unused;
+    private final ModelVersions<String> versions = new ModelVersions<>(tasks::add,
+            (generation, warmupCancelled) -> {
+                if (failingGenerations.contains(generation)) {
+                    throw new IOException("load " + generation);
+                }
+                return "model-" + generation;
+            },
+            closed::add, () -> unused++);
+
+    @Test
+    public void reloadSwapsInWhileHoldersKeepTheirVersion() {
+        ListenableFuture<String> old = versions.acquire();
+        runTasks();
+        assertEquals("model-0", Futures.getUnchecked(old));
+
+        ListenableFuture<String> reloaded = versions.reload();
+        assertSame(reloaded, versions.reload());
+        // Until the reload has loaded, acquire() still hands out the current version.
+        ListenableFuture<String> beforeSwap = versions.acquire();
+        assertSame(old, beforeSwap);
+        runTasks();
+
+        ListenableFuture<String> fresh = versions.acquire();
+        assertEquals("model-1", Futures.getUnchecked(fresh));
+        assertEquals("model-0", Futures.getUnchecked(old));
+        assertTrue(closed.isEmpty());
+
+        versions.release(old);
+        runTasks();
+        assertTrue(closed.isEmpty());
+        versions.release(beforeSwap);
+        runTasks();
+        assertEquals(Arrays.asList("model-0"), closed);
+
+        versions.release(fresh);
+        assertTrue(versions.unloadIfUnused());
+        runTasks();
+        assertEquals(Arrays.asList("model-0", "model-1"), closed);
+    }
+
+    @Test
+    public void failedReloadKeepsTheCurrentVersion() {
+        failingGenerations.add(1);
+        ListenableFuture<String> current = versions.acquire();
+        runTasks();
+
+        ListenableFuture<String> reloaded = versions.reload();
+        runTasks();
+        assertTrue(reloaded.isDone());
+        try {
+            Futures.getUnchecked(reloaded);
+            fail();
+        } catch (RuntimeException expected) {
+            // Expected.
+        }
+        ListenableFuture<String> again = versions.acquire();
+        assertSame(current, again);
+        assertEquals("model-0", Futures.getUnchecked(again));
+        assertTrue(closed.isEmpty());
+        versions.release(current);
+        versions.release(again);
+    }
+
+    @Test
+    public void failedLoadIsRetriedByTheNextAcquire() {
+        failingGenerations.add(0);
+        ListenableFuture<String> failed = versions.acquire();
+        runTasks();
+        assertTrue(failed.isDone());
+
+        failingGenerations.clear();
+        ListenableFuture<String> retried = versions.acquire();
+        assertFalse(retried == failed);
+        runTasks();
+        assertEquals("model-0", Futures.getUnchecked(retried));
+
+        versions.release(failed);
+        versions.release(retried);
+        runTasks();
+        assertTrue(closed.isEmpty());
+        assertEquals(1, unused);
+    }
+
+    @Test
+    public void unusedVersionIsOnlyUnloadedWhenNobodyHoldsIt() {
+        ListenableFuture<String> model = versions.acquire();
+        runTasks();
+        assertFalse(versions.unloadIfUnused());
+        versions.release(model);
+        assertEquals(1, unused);
+        try {
+            versions.release(model);
+            fail();
+        } catch (IllegalStateException expected) {
+            // Expected.
+        }
+
+        assertTrue(versions.unloadIfUnused());
+        runTasks();
+        assertEquals(Arrays.asList("model-0"), closed);
+        // The next acquire loads again.
+        ListenableFuture<String> reloaded = versions.acquire();
+        runTasks();
+        assertEquals("model-0", Futures.getUnchecked(reloaded));
+        versions.release(reloaded);
+    }
+
+    @Test
+    public void reloadOfAnUnusedVersionClosesTheOldOneAtOnce() {
+        versions.release(versions.acquire());
+        runTasks();
+        int unusedBefore = unused;
+
+        versions.reload();
+        runTasks();
+        assertEquals(Arrays.asList("model-0"), closed);
+        // Nobody holds the new version either, so the holder can start its idle timeout.
+        assertEquals(unusedBefore + 1, unused);
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.llm.inference;
+
+import com.example.llm.transformers.Feature;
+import com.example.llm.transformers.SequenceBuckets;
+
+import org.junit.Test;
+
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ModelWarmupTest {
+    private static final int CLS_ID = 2;
+    private static final int SEP_ID = 3;
+
+    // Records the shape of every run and checks the synthetic rows.
+    private static class RecordingEngine implements InferenceEngine {
+        final List<String> runs = new ArrayList<>();
+
+        @Override
+        public float[] classify(Feature feature) {
+            return null;
+        }
+
+        @Override
+        public float[][] classify(LongBuffer inputIds, LongBuffer attentionMask, int batchSize, int seqLen) {
+            runs.add(batchSize + "x" + seqLen);
+            for (int row = 0; row < batchSize; row++) {
+                int offset = row * seqLen;
+                assertEquals(CLS_ID, inputIds.get(offset));
+                assertEquals(SEP_ID, inputIds.get(offset + seqLen - 1));
+                assertEquals(1, attentionMask.get(offset + seqLen - 1));
+            }
+            return new float[batchSize][2];
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Test
+    public void warmsEveryShapeShortestFirst() throws InferenceException {
+        RecordingEngine engine = new RecordingEngine();
+        List<ModelWarmup.Shape> shapes = ModelWarmup.shapes(SequenceBuckets.defaults(128), 1, 4);
+        assertEquals("[1x32, 4x32, 1x64, 4x64, 1x128, 4x128]", shapes.toString());
+
+        ModelWarmup.Report report = new ModelWarmup(engine, CLS_ID, SEP_ID, 2).run(shapes, () -> false);
+        assertFalse(report.isCancelled());
+        assertEquals(shapes, report.getShapes());
+        assertEquals(18, engine.runs.size());
+        assertEquals("1x32", engine.runs.get(2));
+        assertEquals("4x32", engine.runs.get(3));
+        for (int i = 0; i < shapes.size(); i++) {
+            assertTrue(report.getColdNanos(i) > 0);
+            assertTrue(report.getWarmNanos(i) > 0);
+        }
+    }
+
+    @Test
+    public void stopsWhenCancelled() throws InferenceException {
+        final AtomicBoolean typing = new AtomicBoolean();
+        RecordingEngine engine = new RecordingEngine() {
+            @Override
+            public float[][] classify(LongBuffer inputIds, LongBuffer attentionMask, int batchSize, int seqLen) {
+                // The user starts typing during the second run.
+                typing.set(runs.size() == 1);
+                return super.classify(inputIds, attentionMask, batchSize, seqLen);
+            }
+        };
+        ModelWarmup.Report report = new ModelWarmup(engine, CLS_ID, SEP_ID, 3)
+                .run(ModelWarmup.shapes(SequenceBuckets.defaults(512), 1), typing::get);
+        assertTrue(report.isCancelled());
+        assertEquals(2, engine.runs.size());
+        assertEquals(1, report.getShapes().size());
+        assertTrue(report.getWarmNanos(0) > 0);
+        assertTrue(report.toString().endsWith("(cancelled)"));
+    }
+
+    @Test
+    public void noWarmRunsReportsColdOnly() throws InferenceException {
+        RecordingEngine engine = new RecordingEngine();
+        ModelWarmup.Report report = new ModelWarmup(engine, CLS_ID, SEP_ID, 0)
+                .run(ModelWarmup.shapes(SequenceBuckets.fixed(16), 1), () -> false);
+        assertEquals(1, engine.runs.size());
+        assertEquals(-1, report.getWarmNanos(0));
+        assertFalse(report.toString().contains("warm"));
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.llm.inference;
+
+import com.example.llm.metrics.MetricsRegistry;
+import com.google.common.base.Ticker;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class NearDuplicateCacheTest {
+    private static final float[] SPAM = {-1f, 2f};
+    private static final float[] HAM = {3f, -1f};
+
+    private static final class ManualTicker extends Ticker {
+        long nanos;
+
+        @Override
+        public long read() {
+            return nanos;
+        }
+    }
+
+    private final ManualTicker ticker = new ManualTicker();
+
+    @Test
+    public void reusesTheVerdictOfARewordedMessage() {
+        NearDuplicateCache cache = new NearDuplicateCache(16, 1, TimeUnit.HOURS, 0.7f, ticker);
+        Random random = new Random(1);
+        int[] message = randomIds(random, 60);
+        int[] other = randomIds(random, 60);
+        cache.put(cache.signature(message, message.length), SPAM);
+        cache.put(cache.signature(other, other.length), HAM);
+
+        // Another phone number: four wordpieces in the middle change.
+        int[] reworded = message.clone();
+        for (int i = 30; i < 34; i++) {
+            reworded[i] = 5000 + i;
+        }
+        assertArrayEquals(SPAM, cache.get(cache.signature(reworded, reworded.length)), 0f);
+        assertArrayEquals(HAM, cache.get(cache.signature(other, other.length)), 0f);
+        assertEquals(2, cache.getHitCount());
+
+        assertNull(cache.get(cache.signature(randomIds(random, 60), 60)));
+    }
+
+    @Test
+    public void dissimilarMessagesMiss() {
+        NearDuplicateCache cache = new NearDuplicateCache(16, 1, TimeUnit.HOURS, 0.7f, ticker);
+        Random random = new Random(2);
+        int[] message = randomIds(random, 40);
+        cache.put(cache.signature(message, message.length), SPAM);
+
+        // Half of the text replaced is far below the threshold.
+        int[] half = message.clone();
+        for (int i = 20; i < half.length; i++) {
+            half[i] = 9000 + i;
+        }
+        assertNull(cache.get(cache.signature(half, half.length)));
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0, cache.getHitCount());
+    }
+
+    @Test
+    public void countsArePerCacheAndInTheRegistry() {
+        NearDuplicateCache first = new NearDuplicateCache(16, 1, TimeUnit.HOURS, 0.7f, ticker);
+        NearDuplicateCache second = new NearDuplicateCache(16, 1, TimeUnit.HOURS, 0.7f, ticker);
+        int[] message = randomIds(new Random(3), 40);
+        int[] signature = first.signature(message, message.length);
+        first.put(signature, SPAM);
+        long registryHits = MetricsRegistry.getDefault().counter(NearDuplicateCache.HIT_COUNTER).get();
+
+        first.get(signature);
+        second.get(signature);
+        assertEquals(1, first.getHitCount());
+        assertEquals(0, second.getHitCount());
+        assertEquals(1, second.getMissCount());
+        assertEquals(registryHits + 1,
+                MetricsRegistry.getDefault().counter(NearDuplicateCache.HIT_COUNTER).get());
+    }
+
+    @Test
+    public void signatureEstimatesJaccardSimilarity() {
+        NearDuplicateCache cache = new NearDuplicateCache(16, 1, TimeUnit.HOURS, 0.5f, ticker);
+        int[] a = new int[202];
+        int[] b = new int[202];
+        for (int i = 0; i < a.length; i++) {
+            a[i] = i;
+            b[i] = i + 100;
+        }
+        // 100 shared shingles of 300 distinct ones.
+        int[] signatureA = cache.signature(a, a.length);
+        int[] signatureB = cache.signature(b, b.length);
+        int equal = 0;
+        for (int i = 0; i < signatureA.length; i++) {
+            if (signatureA[i] == signatureB[i]) {
+                equal++;
+            }
+        }
+        assertEquals(1 / 3.0, equal / (double) signatureA.length, 0.15);
+        assertArrayEquals(signatureA, cache.signature(a.clone(), a.length));
+        assertEquals(NearDuplicateCache.BANDS * NearDuplicateCache.ROWS, cache.signature(new int[]{7}, 1).length);
+    }
+
+    @Test
+    public void entriesExpire() {
+        NearDuplicateCache cache = new NearDuplicateCache(16, 10, TimeUnit.MINUTES, 0.7f, ticker);
+        int[] message = randomIds(new Random(3), 30);
+        int[] signature = cache.signature(message, message.length);
+        cache.put(signature, SPAM);
+        ticker.nanos = TimeUnit.MINUTES.toNanos(9);
+        assertArrayEquals(SPAM, cache.get(signature), 0f);
+        ticker.nanos = TimeUnit.MINUTES.toNanos(10);
+        assertNull(cache.get(signature));
+        assertEquals(0, cache.size());
+        assertTrue(cache.toString().contains("1 expired"));
+    }
+
+    @Test
+    public void oldestEntriesAreEvicted() {
+        NearDuplicateCache cache = new NearDuplicateCache(4, 1, TimeUnit.HOURS, 0.7f, ticker);
+        Random random = new Random(4);
+        int[][] signatures = new int[6][];
+        for (int i = 0; i < signatures.length; i++) {
+            int[] message = randomIds(random, 30);
+            signatures[i] = cache.signature(message, message.length);
+            cache.put(signatures[i], new float[]{i, 0});
+        }
+        assertEquals(4, cache.size());
+        assertNull(cache.get(signatures[0]));
+        assertNull(cache.get(signatures[1]));
+        for (int i = 2; i < signatures.length; i++) {
+            assertEquals(i, cache.get(signatures[i])[0], 0f);
+        }
+        assertTrue(cache.toString().contains("2 evicted"));
+    }
+
+    private static int[] randomIds(Random random, int count){
+        int[] ids = new int[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = 1000 + random.nextInt(20000);
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.llm.inference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ResultCacheTest {
+    private static final float[] SPAM = {-1.5f, 2.25f};
+    private static final float[] HAM = {3f, -0.5f};
+
+    private File dir;
+
+    @Before
+    public void createDir() throws IOException {
+        dir = Files.createTempDirectory("results").toFile();
+    }
+
+    @After
+    public void deleteDir() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void key_dependsOnIdsAndCount() {
+        int[] ids = {101, 2054, 2003, 102};
+        assertEquals(ResultCache.key(ids, 4), ResultCache.key(ids.clone(), 4));
+        assertNotEquals(ResultCache.key(ids, 4), ResultCache.key(ids, 3));
+        assertNotEquals(ResultCache.key(ids, 4), ResultCache.key(new int[]{101, 2003, 2054, 102}, 4));
+        assertNotEquals(ResultCache.key(new int[0], 0), ResultCache.key(new int[]{0}, 1));
+    }
+
+    @Test
+    public void get_countsHitsAndMisses() {
+        ResultCache cache = new ResultCache(4);
+        assertNull(cache.get(1));
+        cache.put(1, SPAM);
+        assertArrayEquals(SPAM, cache.get(1), 0f);
+        assertArrayEquals(SPAM, cache.get(1), 0f);
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertFalse(cache.isPersistent());
+    }
+
+    @Test
+    public void put_evictsLeastRecentlyUsed() {
+        ResultCache cache = new ResultCache(2);
+        cache.put(1, SPAM);
+        cache.put(2, HAM);
+        cache.get(1);
+        cache.put(3, HAM);
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertArrayEquals(SPAM, cache.get(1), 0f);
+        assertNull(cache.get(2));
+    }
+
+    @Test
+    public void open_readsBackEntriesOfSameVersion() throws IOException {
+        ResultCache cache = ResultCache.open(dir, "v1", 16);
+        assertTrue(cache.isPersistent());
+        cache.put(1, SPAM);
+        cache.put(2, HAM);
+        cache.close();
+
+        ResultCache reopened = ResultCache.open(dir, "v1", 16);
+        assertEquals(2, reopened.size());
+        assertArrayEquals(SPAM, reopened.get(1), 0f);
+        assertArrayEquals(HAM, reopened.get(2), 0f);
+        reopened.close();
+
+        ResultCache otherVersion = ResultCache.open(dir, "v2", 16);
+        assertEquals(0, otherVersion.size());
+        otherVersion.close();
+        assertFalse(new File(dir, "v1.results").exists());
+    }
+
+    @Test
+    public void open_ignoresTornLastRecord() throws IOException {
+        ResultCache cache = ResultCache.open(dir, "v1", 16);
+        cache.put(1, SPAM);
+        cache.put(2, HAM);
+        cache.close();
+        File file = new File(dir, "v1.results");
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+
+        ResultCache reopened = ResultCache.open(dir, "v1", 16);
+        assertEquals(1, reopened.size());
+        assertArrayEquals(SPAM, reopened.get(1), 0f);
+        reopened.close();
+    }
+
+    @Test
+    public void put_compactsFileKeepingOnlyLiveEntries() throws IOException {
+        ResultCache cache = ResultCache.open(dir, "v1", 4);
+        for (long key = 0; key < 50; key++) {
+            cache.put(key, SPAM);
+        }
+        cache.close();
+        // Header plus at most 2 * maxEntries records of key, length and two floats.
+        assertTrue(new File(dir, "v1.results").length() <= 4 + 8 * (8 + 4 + 8));
+
+        ResultCache reopened = ResultCache.open(dir, "v1", 4);
+        assertEquals(4, reopened.size());
+        assertArrayEquals(SPAM, reopened.get(49), 0f);
+        assertNull(reopened.get(45));
+        reopened.close();
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.llm.inference;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class WindowAggregationTest {
+    private static final float[][] WINDOWS = {
+            {4f, -1f},  // confident ham
+            {0.5f, 2f}, // spam by a margin of 1.5
+            {-2f, 1f}}; // spam by a margin of 3
+
+    @Test
+    public void maxKeepsTheSpammiestWindowWhole() {
+        float[] combined = WindowAggregation.MAX.combine(WINDOWS);
+        assertArrayEquals(new float[]{-2f, 1f}, combined, 0f);
+        // Not the class-wise maximum {4, 2}, which no window produced.
+        combined[0] = 99f;
+        assertArrayEquals(new float[]{-2f, 1f}, WINDOWS[2], 0f);
+    }
+
+    @Test
+    public void maxOfHamWindowsIsTheLeastConfidentHam() {
+        float[] combined = WindowAggregation.MAX.combine(new float[][]{{4f, -1f}, {1f, 0f}});
+        assertArrayEquals(new float[]{1f, 0f}, combined, 0f);
+    }
+
+    @Test
+    public void meanIsClassWise() {
+        assertArrayEquals(new float[]{2.5f / 3, 2f / 3},
+                WindowAggregation.MEAN.combine(WINDOWS), 1e-6f);
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.llm.build;
+
+import com.example.llm.tokenization.VocabTrie;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Compiles vocab.txt into the binary trie that the app memory-maps at startup.
+ * */
+public abstract class CompileVocabularyTask extends DefaultTask {
+    public static final String OUTPUT_NAME = "vocab.bin";
+
+    @InputFile
+    @PathSensitive(PathSensitivity.NONE)
+    public abstract RegularFileProperty getVocabulary();
+
+    @OutputDirectory
+    public abstract DirectoryProperty getOutputDir();
+
+    @TaskAction
+    public void compile() throws IOException {
+        File output = getOutputDir().file(OUTPUT_NAME).get().getAsFile();
+        try (InputStream in = new BufferedInputStream(new FileInputStream(getVocabulary().get().getAsFile()));
+             OutputStream out = new BufferedOutputStream(new FileOutputStream(output))) {
+            VocabTrie.compile(in, out);
+        }
+    }
+}
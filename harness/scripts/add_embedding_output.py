@@ -0,0 +1,47 @@
+#!/usr/bin/env python3
+"""Exposes the encoder's last hidden state of an ONNX classifier as an extra graph output.
+
+Classification exports only output the logits, so the hidden states the app pools into sentence
+embeddings (EngineConfig.setEmbeddingOutput) are internal to the graph. This adds the output of
+the encoder's last LayerNormalization, shape [batch, seq, hidden], under a stable name next to
+the logits, so one model serves both classification and campaign matching.
+
+    pip install onnx
+    python3 harness/scripts/add_embedding_output.py --output app/src/main/assets/DistilBert.embed.onnx
+"""
+import argparse
+
+import onnx
+from onnx import helper
+
+
+def last_hidden_state(graph):
+    # Nodes are topologically sorted; the last LayerNormalization ends the encoder stack.
+    for node in reversed(graph.node):
+        if node.op_type == "LayerNormalization":
+            return node.output[0]
+    raise SystemExit("No LayerNormalization node; pass the tensor name with --tensor")
+
+
+def main():
+    parser = argparse.ArgumentParser(description=__doc__.splitlines()[0])
+    parser.add_argument("--model", default="app/src/main/assets/DistilBert.onnx")
+    parser.add_argument("--output", required=True)
+    parser.add_argument("--tensor", help="hidden state tensor, found automatically if omitted")
+    parser.add_argument("--name", default="last_hidden_state")
+    args = parser.parse_args()
+
+    model = onnx.load(args.model)
+    graph = model.graph
+    tensor = args.tensor or last_hidden_state(graph)
+    # An Identity node gives the output its own name without renaming anything inside the graph.
+    graph.node.append(helper.make_node("Identity", [tensor], [args.name]))
+    graph.output.append(helper.make_tensor_value_info(
+        args.name, onnx.TensorProto.FLOAT, ["batch", "sequence", "hidden"]))
+    onnx.checker.check_model(model)
+    onnx.save(model, args.output)
+    print("Wrote %s with output %s = %s" % (args.output, args.name, tensor))
+
+
+if __name__ == "__main__":
+    main()
@@ -0,0 +1,96 @@
+#!/usr/bin/env python3
+"""Writes a small, randomly initialized classifier with the same interface as DistilBert.onnx.
+
+The harness needs a model to run when the real weights are not available. This one takes the
+same inputs (input_ids and attention_mask, int64 [batch, sequence]) and produces the same output
+(logits, float [batch, 2]), so tokenization, tensor creation and post-processing are exercised
+exactly as with the real model; only session.run is much cheaper. The weights come from a fixed
+seed, so every run of the script writes the same model.
+
+    pip install numpy onnx
+    python3 harness/scripts/make_tiny_model.py
+"""
+import argparse
+import os
+
+import numpy as np
+import onnx
+from onnx import TensorProto, helper, numpy_helper
+
+OPSET = 13
+
+
+def vocab_size(vocab_path):
+    with open(vocab_path, encoding="utf-8") as f:
+        return sum(1 for _ in f)
+
+
+def build_model(vocab, hidden, num_labels, seed):
+    rng = np.random.default_rng(seed)
+
+    def weight(name, shape, std=0.02):
+        return numpy_helper.from_array(rng.normal(0.0, std, shape).astype(np.float32), name)
+
+    initializers = [
+        weight("embeddings", (vocab, hidden)),
+        weight("dense_w", (hidden, hidden), 0.2),
+        numpy_helper.from_array(np.zeros(hidden, np.float32), "dense_b"),
+        weight("classifier_w", (hidden, num_labels), 0.2),
+        numpy_helper.from_array(np.zeros(num_labels, np.float32), "classifier_b"),
+        numpy_helper.from_array(np.array([1], np.int64), "sequence_axis"),
+        numpy_helper.from_array(np.array([2], np.int64), "hidden_axis"),
+        numpy_helper.from_array(np.array(1e-6, np.float32), "epsilon"),
+    ]
+
+    # Embedding lookup, mean over the unmasked positions, one tanh layer, linear classifier.
+    nodes = [
+        helper.make_node("Gather", ["embeddings", "input_ids"], ["embedded"]),
+        helper.make_node("Cast", ["attention_mask"], ["mask_float"], to=TensorProto.FLOAT),
+        helper.make_node("Unsqueeze", ["mask_float", "hidden_axis"], ["mask_3d"]),
+        helper.make_node("Mul", ["embedded", "mask_3d"], ["masked"]),
+        helper.make_node("ReduceSum", ["masked", "sequence_axis"], ["summed"], keepdims=0),
+        helper.make_node("ReduceSum", ["mask_3d", "sequence_axis"], ["counts"], keepdims=0),
+        helper.make_node("Max", ["counts", "epsilon"], ["safe_counts"]),
+        helper.make_node("Div", ["summed", "safe_counts"], ["pooled"]),
+        helper.make_node("MatMul", ["pooled", "dense_w"], ["dense"]),
+        helper.make_node("Add", ["dense", "dense_b"], ["dense_biased"]),
+        helper.make_node("Tanh", ["dense_biased"], ["hidden"]),
+        helper.make_node("MatMul", ["hidden", "classifier_w"], ["scores"]),
+        helper.make_node("Add", ["scores", "classifier_b"], ["logits"]),
+    ]
+
+    graph = helper.make_graph(
+        nodes,
+        "tiny_classifier",
+        inputs=[
+            helper.make_tensor_value_info("input_ids", TensorProto.INT64, ["batch", "sequence"]),
+            helper.make_tensor_value_info("attention_mask", TensorProto.INT64, ["batch", "sequence"]),
+        ],
+        outputs=[helper.make_tensor_value_info("logits", TensorProto.FLOAT, ["batch", num_labels])],
+        initializer=initializers,
+    )
+    model = helper.make_model(graph, opset_imports=[helper.make_opsetid("", OPSET)],
+                              producer_name="make_tiny_model")
+    # IR version 8 is read by every ONNX Runtime release the harness may be built against.
+    model.ir_version = 8
+    onnx.checker.check_model(model)
+    return model
+
+
+def main():
+    parser = argparse.ArgumentParser(description=__doc__.splitlines()[0])
+    parser.add_argument("--vocab", default="app/src/main/assets/vocab.txt")
+    parser.add_argument("--output", default="harness/tiny-model/tiny.onnx")
+    parser.add_argument("--hidden", type=int, default=64)
+    parser.add_argument("--labels", type=int, default=2)
+    parser.add_argument("--seed", type=int, default=1234)
+    args = parser.parse_args()
+
+    model = build_model(vocab_size(args.vocab), args.hidden, args.labels, args.seed)
+    os.makedirs(os.path.dirname(args.output) or ".", exist_ok=True)
+    onnx.save(model, args.output)
+    print("Wrote %s (%.1f MB)" % (args.output, os.path.getsize(args.output) / 1e6))
+
+
+if __name__ == "__main__":
+    main()
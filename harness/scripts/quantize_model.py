@@ -0,0 +1,56 @@
+#!/usr/bin/env python3
+"""Writes the quantized variants of an FP32 ONNX classifier listed in models.json.
+
+    int8: dynamic quantization. MatMul and Gemm weights are stored as int8 and activations are
+          quantized at run time, so no calibration data is needed. Roughly 4x smaller and usually
+          the fastest on mobile CPUs.
+    fp16: every float weight and activation in half precision, inputs and outputs kept as they
+          are so the app feeds it unchanged. Half the size; fast where the hardware has fp16
+          arithmetic or through NNAPI, slower than fp32 on CPUs without it.
+
+Compare the variants with ./gradlew :harness:compareVariants before choosing one in models.json.
+
+    pip install onnx onnxruntime onnxconverter-common
+    python3 harness/scripts/quantize_model.py
+"""
+import argparse
+import os
+
+import onnx
+from onnxconverter_common import float16
+from onnxruntime.quantization import QuantType, quantize_dynamic
+
+
+def variant_path(model, suffix):
+    root, ext = os.path.splitext(model)
+    return "%s.%s%s" % (root, suffix, ext)
+
+
+def write_int8(model, output):
+    quantize_dynamic(model, output, weight_type=QuantType.QInt8,
+                     op_types_to_quantize=["MatMul", "Gemm"])
+
+
+def write_fp16(model, output):
+    converted = float16.convert_float_to_float16(onnx.load(model), keep_io_types=True)
+    onnx.save(converted, output)
+
+
+def main():
+    parser = argparse.ArgumentParser(description=__doc__.splitlines()[0])
+    parser.add_argument("--model", default="app/src/main/assets/DistilBert.onnx")
+    parser.add_argument("--variants", default="int8,fp16")
+    args = parser.parse_args()
+
+    writers = {"int8": write_int8, "fp16": write_fp16}
+    size = os.path.getsize(args.model)
+    for name in args.variants.split(","):
+        output = variant_path(args.model, name)
+        writers[name](args.model, output)
+        variant_size = os.path.getsize(output)
+        print("Wrote %s (%.1f MB, %+.0f%%)"
+              % (output, variant_size / 1e6, 100.0 * (variant_size - size) / size))
+
+
+if __name__ == "__main__":
+    main()
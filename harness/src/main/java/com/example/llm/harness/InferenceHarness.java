@@ -0,0 +1,296 @@
+package com.example.llm.harness;
+
+import com.example.llm.tokenization.VocabTrie;
+import com.example.llm.transformers.Feature;
+import com.example.llm.transformers.FeatureConverter;
+import com.example.llm.transformers.SequenceBuckets;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.FloatBuffer;
+import java.nio.LongBuffer;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ai.onnxruntime.OnnxTensor;
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+
+/**
+ * Replays a corpus through the app's FeatureConverter and an ONNX Runtime CPU session on the
+ * desktop, and reports throughput plus latency percentiles per stage: tokenization, tensor
+ * creation, session.run and post-processing.
+ *
+ * Without the real DistilBert.onnx, run harness/scripts/make_tiny_model.py once; the harness
+ * then falls back to the small randomly initialized model it writes.
+ * */
+public class InferenceHarness {
+    private static final String INPUT_IDS = "input_ids";
+    private static final String ATTENTION_MASK = "attention_mask";
+    private static final String REAL_MODEL = "app/src/main/assets/DistilBert.onnx";
+    private static final String TINY_MODEL = "harness/tiny-model/tiny.onnx";
+
+    static final class Options {
+        String model;
+        String vocab = "app/src/main/assets/vocab.txt";
+        String corpus; // null generates texts from the vocabulary
+        int corpusSize = 1000;
+        long seed = 42;
+        int requests = 1000;
+        int warmup = 50;
+        int concurrency = 1;
+        int batchSize = 1;
+        int maxSeqLen = 512;
+        String buckets = "default";
+        int intraOpThreads = 0; // 0 leaves the ONNX Runtime default
+        boolean doLowerCase = false;
+
+        static Options parse(String[] args){
+            Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String name = args[i];
+                if (name.equals("--help")) {
+                    usage(null);
+                }
+                if (i + 1 >= args.length) {
+                    usage("Missing value for " + name);
+                }
+                String value = args[++i];
+                switch (name) {
+                    case "--model": options.model = value; break;
+                    case "--vocab": options.vocab = value; break;
+                    case "--corpus": options.corpus = value; break;
+                    case "--corpus-size": options.corpusSize = Integer.parseInt(value); break;
+                    case "--seed": options.seed = Long.parseLong(value); break;
+                    case "--requests": options.requests = Integer.parseInt(value); break;
+                    case "--warmup": options.warmup = Integer.parseInt(value); break;
+                    case "--concurrency": options.concurrency = Integer.parseInt(value); break;
+                    case "--batch-size": options.batchSize = Integer.parseInt(value); break;
+                    case "--max-seq-len": options.maxSeqLen = Integer.parseInt(value); break;
+                    case "--buckets": options.buckets = value; break;
+                    case "--intra-op-threads": options.intraOpThreads = Integer.parseInt(value); break;
+                    case "--lower-case": options.doLowerCase = Boolean.parseBoolean(value); break;
+                    default: usage("Unknown option " + name);
+                }
+            }
+            if (options.model == null) {
+                options.model = new File(REAL_MODEL).isFile() ? REAL_MODEL : TINY_MODEL;
+            }
+            if (options.concurrency < 1 || options.batchSize < 1 || options.requests < 1) {
+                usage("--concurrency, --batch-size and --requests must be positive");
+            }
+            return options;
+        }
+
+        // "default", "fixed" for a single bucket of --max-seq-len, or explicit lengths "32,64,128".
+        SequenceBuckets sequenceBuckets(){
+            if (buckets.equals("default")) {
+                return SequenceBuckets.defaults(maxSeqLen);
+            }
+            if (buckets.equals("fixed")) {
+                return SequenceBuckets.fixed(maxSeqLen);
+            }
+            String[] parts = buckets.split(",");
+            int[] lengths = new int[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                lengths[i] = Integer.parseInt(parts[i].trim());
+            }
+            return new SequenceBuckets(lengths);
+        }
+
+        private static void usage(String error){
+            if (error != null) {
+                System.err.println(error);
+            }
+            System.err.println("Options: --model PATH --vocab PATH --corpus FILE --corpus-size N --seed N\n"
+                    + "         --requests N --warmup N --concurrency N --batch-size N\n"
+                    + "         --max-seq-len N --buckets default|fixed|32,64,128 --intra-op-threads N\n"
+                    + "         --lower-case true|false");
+            System.exit(error == null ? 0 : 2);
+        }
+    }
+
+    private final Options options;
+    private final OrtEnvironment env;
+    private final OrtSession session;
+    private final FeatureConverter converter;
+    private final String inputIdsName;
+    private final String attentionMaskName;
+
+    private final LatencyRecorder tokenize = new LatencyRecorder("tokenize");
+    private final LatencyRecorder tensors = new LatencyRecorder("tensors");
+    private final LatencyRecorder run = new LatencyRecorder("run");
+    private final LatencyRecorder postprocess = new LatencyRecorder("post");
+    private final LatencyRecorder total = new LatencyRecorder("total");
+    private final AtomicInteger spamCount = new AtomicInteger();
+
+    InferenceHarness(Options options) throws OrtException, IOException {
+        this.options = options;
+        if (!new File(options.model).isFile()) {
+            throw new IOException("No model at " + options.model
+                    + "; run harness/scripts/make_tiny_model.py or pass --model");
+        }
+        env = OrtEnvironment.getEnvironment();
+        OrtSession.SessionOptions sessionOptions = new OrtSession.SessionOptions();
+        sessionOptions.setOptimizationLevel(OrtSession.SessionOptions.OptLevel.ALL_OPT);
+        if (options.intraOpThreads > 0) {
+            sessionOptions.setIntraOpNumThreads(options.intraOpThreads);
+        }
+        session = env.createSession(options.model, sessionOptions);
+
+        Set<String> inputNames = session.getInputNames();
+        inputIdsName = inputNames.contains(INPUT_IDS) ? INPUT_IDS : inputNames.iterator().next();
+        attentionMaskName = inputNames.contains(ATTENTION_MASK) ? ATTENTION_MASK : null;
+
+        try (InputStream is = new FileInputStream(options.vocab)) {
+            converter = new FeatureConverter(
+                    VocabTrie.readText(is), options.doLowerCase, options.sequenceBuckets());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        TextCorpus corpus = options.corpus != null
+                ? TextCorpus.read(Paths.get(options.corpus))
+                : TextCorpus.synthetic(Paths.get(options.vocab), options.corpusSize, options.seed);
+        InferenceHarness harness = new InferenceHarness(options);
+        System.out.println(String.format(Locale.US,
+                "model=%s texts=%d requests=%d concurrency=%d batch=%d buckets=%s",
+                options.model, corpus.size(), options.requests, options.concurrency,
+                options.batchSize, harness.converter.getBuckets()));
+        harness.run(corpus);
+    }
+
+    void run(TextCorpus corpus) throws Exception {
+        // Warm-up batches run on one thread and are not recorded.
+        for (int i = 0; i < options.warmup; i++) {
+            classifyBatch(corpus, i * options.batchSize, false);
+        }
+
+        final AtomicInteger nextBatch = new AtomicInteger();
+        final int batches = (options.requests + options.batchSize - 1) / options.batchSize;
+        ExecutorService executor = Executors.newFixedThreadPool(options.concurrency);
+        List<Future<?>> workers = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < options.concurrency; t++) {
+            workers.add(executor.submit(() -> {
+                int batch;
+                while ((batch = nextBatch.getAndIncrement()) < batches) {
+                    classifyBatch(corpus, batch * options.batchSize, true);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+
+        double seconds = elapsed / 1e9;
+        System.out.println(String.format(Locale.US, "throughput: %.1f texts/s, %.1f batches/s over %.2fs",
+                batches * options.batchSize / seconds, batches / seconds, seconds));
+        System.out.println(String.format(Locale.US, "classified as spam: %d of %d",
+                spamCount.get(), batches * options.batchSize));
+        System.out.println("per batch:");
+        System.out.println(LatencyRecorder.header());
+        for (LatencyRecorder recorder : new LatencyRecorder[]{tokenize, tensors, run, postprocess, total}) {
+            System.out.println(recorder);
+        }
+        session.close();
+    }
+
+    private void classifyBatch(TextCorpus corpus, int first, boolean record) throws OrtException {
+        int batchSize = options.batchSize;
+        long t0 = System.nanoTime();
+
+        Feature[] features = new Feature[batchSize];
+        int seqLen = 1;
+        for (int row = 0; row < batchSize; row++) {
+            features[row] = converter.convert(corpus.get(first + row), true);
+            seqLen = Math.max(seqLen, features[row].inputIds.length);
+        }
+        long t1 = System.nanoTime();
+
+        // Features are padded to their own bucket; the batch takes the largest one.
+        long[] inputIds = new long[batchSize * seqLen];
+        long[] attentionMask = new long[batchSize * seqLen];
+        for (int row = 0; row < batchSize; row++) {
+            Feature feature = features[row];
+            for (int i = 0; i < feature.inputIds.length; i++) {
+                inputIds[row * seqLen + i] = feature.inputIds[i];
+                attentionMask[row * seqLen + i] = feature.attentionMask[i];
+            }
+        }
+        long[] shape = new long[]{batchSize, seqLen};
+        Map<String, OnnxTensor> inputs = new HashMap<>();
+        try (OnnxTensor idsTensor = OnnxTensor.createTensor(env, LongBuffer.wrap(inputIds), shape);
+             OnnxTensor maskTensor = attentionMaskName == null
+                     ? null : OnnxTensor.createTensor(env, LongBuffer.wrap(attentionMask), shape)) {
+            inputs.put(inputIdsName, idsTensor);
+            if (maskTensor != null) {
+                inputs.put(attentionMaskName, maskTensor);
+            }
+            long t2 = System.nanoTime();
+
+            long t3;
+            long t4;
+            try (OrtSession.Result outputs = session.run(inputs)) {
+                t3 = System.nanoTime();
+                FloatBuffer logits = ((OnnxTensor) outputs.get(0)).getFloatBuffer();
+                int numClasses = logits.remaining() / batchSize;
+                float[] row = new float[numClasses];
+                int spam = 0;
+                for (int r = 0; r < batchSize; r++) {
+                    logits.get(row);
+                    if (softmax(row)[numClasses - 1] > 0.5f) {
+                        spam++;
+                    }
+                }
+                t4 = System.nanoTime();
+                if (record) {
+                    spamCount.addAndGet(spam);
+                }
+            }
+
+            if (record) {
+                tokenize.record(t1 - t0);
+                tensors.record(t2 - t1);
+                run.record(t3 - t2);
+                postprocess.record(t4 - t3);
+                total.record(t4 - t0);
+            }
+        }
+    }
+
+    static float[] softmax(float[] logits){
+        float max = Float.NEGATIVE_INFINITY;
+        for (float logit : logits) {
+            max = Math.max(max, logit);
+        }
+        float sum = 0;
+        float[] scores = new float[logits.length];
+        for (int i = 0; i < logits.length; i++) {
+            scores[i] = (float) Math.exp(logits[i] - max);
+            sum += scores[i];
+        }
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] /= sum;
+        }
+        return scores;
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.llm.harness;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Collects every sample of one stage and reports exact percentiles. Thread-safe; the harness runs
+ * a bounded number of requests, so keeping all samples is cheaper than being clever.
+ * */
+public class LatencyRecorder {
+    private final String name;
+    private long[] samples = new long[1024];
+    private int count;
+
+    public LatencyRecorder(String name){
+        this.name = name;
+    }
+
+    public synchronized void record(long nanos){
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, count * 2);
+        }
+        samples[count++] = nanos;
+    }
+
+    public synchronized int count(){
+        return count;
+    }
+
+    public synchronized double meanMillis(){
+        if (count == 0) {
+            return 0;
+        }
+        double sum = 0;
+        for (int i = 0; i < count; i++) {
+            sum += samples[i];
+        }
+        return sum / count / 1e6;
+    }
+
+    /** Nearest-rank percentile in milliseconds, p in (0, 100]. */
+    public synchronized double percentileMillis(double p){
+        if (count == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(p / 100.0 * count);
+        return sorted[Math.max(0, Math.min(count, rank) - 1)] / 1e6;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "%-10s %8d %9.3f %9.3f %9.3f %9.3f",
+                name, count, meanMillis(), percentileMillis(50), percentileMillis(95),
+                percentileMillis(99));
+    }
+
+    public static String header(){
+        return String.format(Locale.US, "%-10s %8s %9s %9s %9s %9s",
+                "stage", "count", "mean ms", "p50 ms", "p95 ms", "p99 ms");
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.llm.harness;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The texts replayed by the harness: one text per line of a file, or generated from the
+ * vocabulary with a fixed seed so that runs without a corpus are still comparable.
+ * */
+public final class TextCorpus {
+    private final List<String> texts;
+
+    private TextCorpus(List<String> texts){
+        if (texts.isEmpty()) {
+            throw new IllegalArgumentException("Empty corpus");
+        }
+        this.texts = texts;
+    }
+
+    /** One text per non-empty line; a literal \n inside a line stands for a line break. */
+    public static TextCorpus read(Path file) throws IOException {
+        List<String> texts = new ArrayList<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (!line.trim().isEmpty()) {
+                texts.add(line.replace("\\n", "\n"));
+            }
+        }
+        return new TextCorpus(texts);
+    }
+
+    /**
+     * Texts of whole vocabulary words, with lengths spread from a short message to several
+     * times the model's maximum sequence length.
+     */
+    public static TextCorpus synthetic(Path vocab, int size, long seed) throws IOException {
+        List<String> words = new ArrayList<>();
+        for (String line : Files.readAllLines(vocab, StandardCharsets.UTF_8)) {
+            String word = line.trim();
+            if (!word.isEmpty() && !word.startsWith("##") && !word.startsWith("[")) {
+                words.add(word);
+            }
+        }
+        Random random = new Random(seed);
+        List<String> texts = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            // Mostly short texts with a long tail, like a real inbox.
+            int length = (int) Math.min(2000, 5 + Math.exp(random.nextDouble() * 7));
+            StringBuilder text = new StringBuilder();
+            for (int w = 0; w < length; w++) {
+                text.append(words.get(random.nextInt(words.size())));
+                text.append(random.nextInt(15) == 0 ? ". " : " ");
+            }
+            texts.add(text.toString());
+        }
+        return new TextCorpus(texts);
+    }
+
+    public int size(){
+        return texts.size();
+    }
+
+    /** Cycles through the texts, so any number of requests can be replayed. */
+    public String get(int index){
+        return texts.get(index % texts.size());
+    }
+}
@@ -0,0 +1,183 @@
+package com.example.llm.harness;
+
+import com.example.llm.prefilter.HashedLogisticModel;
+import com.example.llm.tokenization.FullTokenizer;
+import com.example.llm.tokenization.VocabTrie;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Trains the app's pre-filter, a {@link HashedLogisticModel} over wordpiece ids, on a labeled
+ * corpus ("label TAB text" per line, spam/ham or 1/0) and reports on a held-out split how the
+ * cascade thresholds would behave: the fraction of texts that escalate to the transformer and
+ * how accurate the early verdicts are. The app reads its thresholds from the "prefilter" section
+ * of models.json, so thresholds chosen here are copied there.
+ *
+ *   ./gradlew :harness:trainPrefilter --args="--corpus sms.tsv --ham-below 0.02 --spam-above 0.98"
+ * */
+public class TrainPrefilter {
+
+    static final class Options {
+        String corpus;
+        String vocab = "app/src/main/assets/vocab.txt";
+        String output = "app/src/main/assets/prefilter.bin";
+        int bits = HashedLogisticModel.DEFAULT_BITS;
+        int epochs = 10;
+        float learningRate = 0.5f;
+        float l2 = 1e-6f;
+        float hamBelow = 0.02f;
+        float spamAbove = 0.98f;
+        double holdout = 0.2;
+        long seed = 42;
+        boolean doLowerCase = false;
+
+        static Options parse(String[] args){
+            Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String name = args[i];
+                if (name.equals("--help")) {
+                    usage(null);
+                }
+                if (i + 1 >= args.length) {
+                    usage("Missing value for " + name);
+                }
+                String value = args[++i];
+                switch (name) {
+                    case "--corpus": options.corpus = value; break;
+                    case "--vocab": options.vocab = value; break;
+                    case "--output": options.output = value; break;
+                    case "--bits": options.bits = Integer.parseInt(value); break;
+                    case "--epochs": options.epochs = Integer.parseInt(value); break;
+                    case "--learning-rate": options.learningRate = Float.parseFloat(value); break;
+                    case "--l2": options.l2 = Float.parseFloat(value); break;
+                    case "--ham-below": options.hamBelow = Float.parseFloat(value); break;
+                    case "--spam-above": options.spamAbove = Float.parseFloat(value); break;
+                    case "--holdout": options.holdout = Double.parseDouble(value); break;
+                    case "--seed": options.seed = Long.parseLong(value); break;
+                    case "--lower-case": options.doLowerCase = Boolean.parseBoolean(value); break;
+                    default: usage("Unknown option " + name);
+                }
+            }
+            if (options.corpus == null) {
+                usage("--corpus is required");
+            }
+            return options;
+        }
+
+        private static void usage(String error){
+            if (error != null) {
+                System.err.println(error);
+            }
+            System.err.println("Options: --corpus FILE --vocab PATH --output PATH --bits N --epochs N\n"
+                    + "         --learning-rate X --l2 X --ham-below P --spam-above P --holdout F\n"
+                    + "         --seed N --lower-case true|false");
+            System.exit(error == null ? 0 : 2);
+        }
+    }
+
+    static final class Example {
+        final int[] ids;
+        final boolean spam;
+
+        Example(int[] ids, boolean spam){
+            this.ids = ids;
+            this.spam = spam;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Options options = Options.parse(args);
+        FullTokenizer tokenizer;
+        try (InputStream is = new FileInputStream(options.vocab)) {
+            tokenizer = new FullTokenizer(VocabTrie.readText(is), options.doLowerCase);
+        }
+        List<String> texts = new ArrayList<>();
+        int[] labels = VariantComparison.readLabeled(Paths.get(options.corpus), texts);
+        List<Example> examples = new ArrayList<>();
+        for (int i = 0; i < texts.size(); i++) {
+            if (labels[i] >= 0) {
+                examples.add(new Example(tokenize(tokenizer, texts.get(i)), labels[i] == 1));
+            }
+        }
+        if (examples.isEmpty()) {
+            throw new IOException("No labeled texts in " + options.corpus);
+        }
+        Random random = new Random(options.seed);
+        Collections.shuffle(examples, random);
+        int split = (int) Math.round(examples.size() * (1 - options.holdout));
+        List<Example> training = examples.subList(0, split);
+        List<Example> heldOut = examples.subList(split, examples.size());
+
+        HashedLogisticModel model = train(training, options, random);
+        System.out.println(String.format(Locale.US, "trained on %d texts, evaluated on %d",
+                training.size(), heldOut.size()));
+        System.out.println(evaluate(model, heldOut.isEmpty() ? training : heldOut,
+                options.hamBelow, options.spamAbove));
+
+        try (OutputStream out = new FileOutputStream(options.output)) {
+            model.write(out);
+        }
+        System.out.println("Wrote " + options.output);
+    }
+
+    static int[] tokenize(FullTokenizer tokenizer, String text){
+        // Every wordpiece consumes at least one char, so the text length bounds the id count.
+        int[] ids = new int[text.length()];
+        return Arrays.copyOf(ids, tokenizer.tokenizeToIds(text, ids, 0, ids.length));
+    }
+
+    static HashedLogisticModel train(List<Example> examples, Options options, Random random){
+        HashedLogisticModel model = new HashedLogisticModel(options.bits);
+        List<Example> order = new ArrayList<>(examples);
+        for (int epoch = 0; epoch < options.epochs; epoch++) {
+            Collections.shuffle(order, random);
+            float learningRate = options.learningRate / (1 + epoch);
+            double loss = 0;
+            for (Example example : order) {
+                float p = model.train(example.ids, 0, example.ids.length, example.spam,
+                        learningRate, options.l2);
+                loss -= Math.log(Math.max(1e-7, example.spam ? p : 1 - p));
+            }
+            System.out.println(String.format(Locale.US, "epoch %d: log loss %.4f",
+                    epoch + 1, loss / Math.max(1, order.size())));
+        }
+        return model;
+    }
+
+    static String evaluate(HashedLogisticModel model, List<Example> examples, float hamBelow,
+                           float spamAbove){
+        int correct = 0;
+        int early = 0;
+        int earlyCorrect = 0;
+        for (Example example : examples) {
+            float p = model.probability(example.ids, 0, example.ids.length);
+            boolean right = (p > 0.5f) == example.spam;
+            if (right) {
+                correct++;
+            }
+            if (p < hamBelow || p > spamAbove) {
+                early++;
+                if (right) {
+                    earlyCorrect++;
+                }
+            }
+        }
+        int total = examples.size();
+        return String.format(Locale.US,
+                "accuracy %.2f%%; with thresholds [%.3f, %.3f]: %.1f%% exit early at %.2f%% accuracy, "
+                        + "%.1f%% escalate to the transformer",
+                100.0 * correct / total, hamBelow, spamAbove, 100.0 * early / total,
+                early == 0 ? 0.0 : 100.0 * earlyCorrect / early, 100.0 * (total - early) / total);
+    }
+}
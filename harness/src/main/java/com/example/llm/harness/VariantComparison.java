@@ -0,0 +1,267 @@
+package com.example.llm.harness;
+
+import com.example.llm.model.ModelManifest;
+import com.example.llm.tokenization.VocabTrie;
+import com.example.llm.transformers.Feature;
+import com.example.llm.transformers.FeatureConverter;
+import com.example.llm.transformers.SequenceBuckets;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.FloatBuffer;
+import java.nio.LongBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import ai.onnxruntime.OnnxTensor;
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+
+/**
+ * Runs every model variant of the manifest over the same corpus, one text at a time as the app
+ * does, and reports per variant: accuracy against the corpus labels, label agreement and score
+ * drift against the reference variant, p50/p95 latency and the size and speed deltas.
+ *
+ *   ./gradlew :harness:compareVariants --args="--corpus sms.tsv --reference fp32"
+ *
+ * A labeled corpus has one "label TAB text" per line, with spam/ham or 1/0 labels. Any other
+ * corpus file is read as in InferenceHarness and reported without accuracy; without a corpus,
+ * texts are generated from the vocabulary. Variants are produced by
+ * harness/scripts/quantize_model.py.
+ * */
+public class VariantComparison {
+    private static final String INPUT_IDS = "input_ids";
+    private static final String ATTENTION_MASK = "attention_mask";
+
+    static final class Options {
+        String manifest = "app/src/main/assets/" + ModelManifest.ASSET_NAME;
+        String vocab = "app/src/main/assets/vocab.txt";
+        String corpus;
+        int corpusSize = 300;
+        long seed = 42;
+        String variants; // null compares every variant whose file exists
+        String reference; // null takes the first FP32 variant
+        int warmup = 10;
+        int maxSeqLen = 512;
+        int intraOpThreads = 0;
+        boolean doLowerCase = false;
+
+        static Options parse(String[] args){
+            Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String name = args[i];
+                if (name.equals("--help")) {
+                    usage(null);
+                }
+                if (i + 1 >= args.length) {
+                    usage("Missing value for " + name);
+                }
+                String value = args[++i];
+                switch (name) {
+                    case "--manifest": options.manifest = value; break;
+                    case "--vocab": options.vocab = value; break;
+                    case "--corpus": options.corpus = value; break;
+                    case "--corpus-size": options.corpusSize = Integer.parseInt(value); break;
+                    case "--seed": options.seed = Long.parseLong(value); break;
+                    case "--variants": options.variants = value; break;
+                    case "--reference": options.reference = value; break;
+                    case "--warmup": options.warmup = Integer.parseInt(value); break;
+                    case "--max-seq-len": options.maxSeqLen = Integer.parseInt(value); break;
+                    case "--intra-op-threads": options.intraOpThreads = Integer.parseInt(value); break;
+                    case "--lower-case": options.doLowerCase = Boolean.parseBoolean(value); break;
+                    default: usage("Unknown option " + name);
+                }
+            }
+            return options;
+        }
+
+        private static void usage(String error){
+            if (error != null) {
+                System.err.println(error);
+            }
+            System.err.println("Options: --manifest PATH --vocab PATH --corpus FILE --corpus-size N --seed N\n"
+                    + "         --variants int8,fp32 --reference NAME --warmup N --max-seq-len N\n"
+                    + "         --intra-op-threads N --lower-case true|false");
+            System.exit(error == null ? 0 : 2);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        File manifestFile = new File(options.manifest);
+        ModelManifest manifest;
+        try (InputStream is = new FileInputStream(manifestFile)) {
+            manifest = ModelManifest.read(is);
+        }
+        List<ModelManifest.Variant> variants = new ArrayList<>();
+        for (ModelManifest.Variant variant : manifest.getVariants()) {
+            boolean wanted = options.variants == null
+                    || Arrays.asList(options.variants.split(",")).contains(variant.getName());
+            if (wanted && modelFile(manifestFile, variant).isFile()) {
+                variants.add(variant);
+            } else if (wanted) {
+                System.err.println("Skipping " + variant + ": no " + modelFile(manifestFile, variant));
+            }
+        }
+        if (variants.isEmpty()) {
+            throw new IOException("No variant of " + manifestFile + " to compare");
+        }
+        ModelManifest.Variant reference = reference(variants, options.reference);
+
+        List<String> texts = new ArrayList<>();
+        int[] labels = readCorpus(options, texts);
+        FeatureConverter converter;
+        try (InputStream is = new FileInputStream(options.vocab)) {
+            converter = new FeatureConverter(VocabTrie.readText(is), options.doLowerCase,
+                    SequenceBuckets.defaults(options.maxSeqLen));
+        }
+        List<Feature> features = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            features.add(converter.convert(text, true));
+        }
+
+        Map<String, VariantReport> reports = new HashMap<>();
+        for (ModelManifest.Variant variant : variants) {
+            File model = modelFile(manifestFile, variant);
+            System.out.println("Running " + variant + " over " + texts.size() + " texts");
+            reports.put(variant.getName(), run(model, variant.getName(), features, options));
+        }
+
+        VariantReport referenceReport = reports.get(reference.getName());
+        System.out.println(String.format(Locale.US, "reference: %s, spam threshold %.2f",
+                reference.getName(), VariantReport.THRESHOLD));
+        System.out.println(VariantReport.header());
+        for (ModelManifest.Variant variant : variants) {
+            System.out.println(reports.get(variant.getName()).row(referenceReport, labels));
+        }
+    }
+
+    private static File modelFile(File manifestFile, ModelManifest.Variant variant){
+        return new File(manifestFile.getAbsoluteFile().getParentFile(), variant.getFile());
+    }
+
+    private static ModelManifest.Variant reference(List<ModelManifest.Variant> variants, String name)
+            throws IOException {
+        for (ModelManifest.Variant variant : variants) {
+            if (name != null ? variant.getName().equals(name)
+                    : variant.getPrecision() == ModelManifest.Precision.FP32) {
+                return variant;
+            }
+        }
+        if (name != null) {
+            throw new IOException("Reference variant " + name + " is not among those compared");
+        }
+        return variants.get(0);
+    }
+
+    /** Fills texts and returns their labels, -1 where the corpus has none. */
+    static int[] readCorpus(Options options, List<String> texts) throws IOException {
+        if (options.corpus == null) {
+            TextCorpus corpus = TextCorpus.synthetic(
+                    Paths.get(options.vocab), options.corpusSize, options.seed);
+            for (int i = 0; i < corpus.size(); i++) {
+                texts.add(corpus.get(i));
+            }
+            int[] labels = new int[texts.size()];
+            Arrays.fill(labels, -1);
+            return labels;
+        }
+        return readLabeled(Paths.get(options.corpus), texts);
+    }
+
+    static int[] readLabeled(Path file, List<String> texts) throws IOException {
+        List<Integer> labels = new ArrayList<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            int tab = line.indexOf('\t');
+            int label = tab < 0 ? -1 : label(line.substring(0, tab).trim());
+            texts.add((label < 0 ? line : line.substring(tab + 1)).replace("\\n", "\n"));
+            labels.add(label);
+        }
+        int[] result = new int[labels.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = labels.get(i);
+        }
+        return result;
+    }
+
+    private static int label(String label){
+        switch (label.toLowerCase(Locale.ROOT)) {
+            case "spam":
+            case "1":
+                return 1;
+            case "ham":
+            case "0":
+                return 0;
+            default:
+                return -1;
+        }
+    }
+
+    private static VariantReport run(File model, String name, List<Feature> features, Options options)
+            throws OrtException {
+        OrtEnvironment env = OrtEnvironment.getEnvironment();
+        OrtSession.SessionOptions sessionOptions = new OrtSession.SessionOptions();
+        sessionOptions.setOptimizationLevel(OrtSession.SessionOptions.OptLevel.ALL_OPT);
+        if (options.intraOpThreads > 0) {
+            sessionOptions.setIntraOpNumThreads(options.intraOpThreads);
+        }
+        VariantReport report = new VariantReport(name, model.length(), features.size());
+        try (OrtSession session = env.createSession(model.getPath(), sessionOptions)) {
+            Set<String> inputNames = session.getInputNames();
+            String inputIdsName = inputNames.contains(INPUT_IDS) ? INPUT_IDS : inputNames.iterator().next();
+            String attentionMaskName = inputNames.contains(ATTENTION_MASK) ? ATTENTION_MASK : null;
+            for (int i = 0; i < Math.min(options.warmup, features.size()); i++) {
+                score(env, session, inputIdsName, attentionMaskName, features.get(i));
+            }
+            for (int i = 0; i < features.size(); i++) {
+                long start = System.nanoTime();
+                report.scores[i] = score(env, session, inputIdsName, attentionMaskName, features.get(i));
+                report.latency.record(System.nanoTime() - start);
+            }
+        }
+        return report;
+    }
+
+    // Spam probability of one text, including tensor creation and softmax as the app pays them.
+    private static float score(OrtEnvironment env, OrtSession session, String inputIdsName,
+                               String attentionMaskName, Feature feature) throws OrtException {
+        long[] shape = new long[]{1, feature.inputIds.length};
+        long[] inputIds = new long[feature.inputIds.length];
+        long[] attentionMask = new long[feature.inputIds.length];
+        for (int i = 0; i < inputIds.length; i++) {
+            inputIds[i] = feature.inputIds[i];
+            attentionMask[i] = feature.attentionMask[i];
+        }
+        Map<String, OnnxTensor> inputs = new HashMap<>();
+        try (OnnxTensor idsTensor = OnnxTensor.createTensor(env, LongBuffer.wrap(inputIds), shape);
+             OnnxTensor maskTensor = attentionMaskName == null
+                     ? null : OnnxTensor.createTensor(env, LongBuffer.wrap(attentionMask), shape)) {
+            inputs.put(inputIdsName, idsTensor);
+            if (maskTensor != null) {
+                inputs.put(attentionMaskName, maskTensor);
+            }
+            try (OrtSession.Result outputs = session.run(inputs)) {
+                FloatBuffer logits = ((OnnxTensor) outputs.get(0)).getFloatBuffer();
+                float[] row = new float[logits.remaining()];
+                logits.get(row);
+                float[] scores = InferenceHarness.softmax(row);
+                return scores[scores.length - 1];
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.llm.harness;
+
+import java.util.Locale;
+
+/**
+ * The spam scores and latencies of one model variant over a corpus, compared against a reference
+ * variant: how often both give the same label, how far the scores drift, and what the variant
+ * saves in size and time.
+ * */
+final class VariantReport {
+    static final float THRESHOLD = 0.5f;
+
+    final String name;
+    final long sizeBytes;
+    final float[] scores;
+    final LatencyRecorder latency;
+
+    VariantReport(String name, long sizeBytes, int texts){
+        this.name = name;
+        this.sizeBytes = sizeBytes;
+        this.scores = new float[texts];
+        this.latency = new LatencyRecorder(name);
+    }
+
+    /** Fraction of texts both variants put on the same side of the threshold. */
+    double agreement(VariantReport reference){
+        int same = 0;
+        for (int i = 0; i < scores.length; i++) {
+            if ((scores[i] > THRESHOLD) == (reference.scores[i] > THRESHOLD)) {
+                same++;
+            }
+        }
+        return (double) same / scores.length;
+    }
+
+    double meanDrift(VariantReport reference){
+        double sum = 0;
+        for (int i = 0; i < scores.length; i++) {
+            sum += Math.abs(scores[i] - reference.scores[i]);
+        }
+        return sum / scores.length;
+    }
+
+    double maxDrift(VariantReport reference){
+        double max = 0;
+        for (int i = 0; i < scores.length; i++) {
+            max = Math.max(max, Math.abs(scores[i] - reference.scores[i]));
+        }
+        return max;
+    }
+
+    /** Fraction of texts labeled correctly; labels are 1 for spam, 0 for ham, -1 for unknown. */
+    double accuracy(int[] labels){
+        int labeled = 0;
+        int correct = 0;
+        for (int i = 0; i < scores.length; i++) {
+            if (labels[i] < 0) {
+                continue;
+            }
+            labeled++;
+            if ((scores[i] > THRESHOLD) == (labels[i] == 1)) {
+                correct++;
+            }
+        }
+        return labeled == 0 ? Double.NaN : (double) correct / labeled;
+    }
+
+    static String header(){
+        return String.format(Locale.US, "%-8s %9s %7s %8s %9s %9s %9s %8s %8s %8s",
+                "variant", "size MB", "size", "accuracy", "agreement", "mean |dp|", "max |dp|",
+                "p50 ms", "p95 ms", "speedup");
+    }
+
+    String row(VariantReport reference, int[] labels){
+        return String.format(Locale.US, "%-8s %9.1f %+6.0f%% %8s %8.2f%% %9.4f %9.4f %8.2f %8.2f %7.2fx",
+                name, sizeBytes / 1e6, 100.0 * (sizeBytes - reference.sizeBytes) / reference.sizeBytes,
+                Double.isNaN(accuracy(labels))
+                        ? "-" : String.format(Locale.US, "%.2f%%", 100 * accuracy(labels)),
+                100 * agreement(reference), meanDrift(reference), maxDrift(reference),
+                latency.percentileMillis(50), latency.percentileMillis(95),
+                reference.latency.meanMillis() / latency.meanMillis());
+    }
+}
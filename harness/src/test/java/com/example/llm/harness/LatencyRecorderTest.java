@@ -0,0 +1,33 @@
+package com.example.llm.harness;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class LatencyRecorderTest {
+    private static final double EPSILON = 1e-9;
+
+    @Test
+    public void percentiles_useNearestRank() {
+        LatencyRecorder recorder = new LatencyRecorder("run");
+        // 1..100 ms, recorded out of order.
+        for (int i = 100; i >= 1; i--) {
+            recorder.record(i * 1_000_000L);
+        }
+        assertEquals(100, recorder.count());
+        assertEquals(50.5, recorder.meanMillis(), EPSILON);
+        assertEquals(50, recorder.percentileMillis(50), EPSILON);
+        assertEquals(95, recorder.percentileMillis(95), EPSILON);
+        assertEquals(99, recorder.percentileMillis(99), EPSILON);
+        assertEquals(100, recorder.percentileMillis(100), EPSILON);
+    }
+
+    @Test
+    public void percentiles_ofSingleAndNoSample() {
+        LatencyRecorder recorder = new LatencyRecorder("run");
+        assertEquals(0, recorder.percentileMillis(99), EPSILON);
+        recorder.record(2_500_000L);
+        assertEquals(2.5, recorder.percentileMillis(1), EPSILON);
+        assertEquals(2.5, recorder.percentileMillis(99), EPSILON);
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.llm.harness;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class VariantReportTest {
+    private static final double EPSILON = 1e-6;
+
+    @Test
+    public void comparesScoresWithReference() {
+        VariantReport reference = report("fp32", 1000, 0.9f, 0.1f, 0.6f, 0.2f);
+        VariantReport int8 = report("int8", 250, 0.8f, 0.1f, 0.4f, 0.3f);
+
+        assertEquals(0.75, int8.agreement(reference), EPSILON);
+        assertEquals((0.1 + 0 + 0.2 + 0.1) / 4, int8.meanDrift(reference), EPSILON);
+        assertEquals(0.2, int8.maxDrift(reference), EPSILON);
+        assertEquals(1.0, reference.agreement(reference), EPSILON);
+    }
+
+    @Test
+    public void accuracySkipsUnlabeledTexts() {
+        VariantReport report = report("fp32", 1000, 0.9f, 0.1f, 0.6f, 0.2f);
+        assertEquals(2.0 / 3, report.accuracy(new int[]{1, 1, -1, 0}), EPSILON);
+        assertTrue(Double.isNaN(report.accuracy(new int[]{-1, -1, -1, -1})));
+    }
+
+    @Test
+    public void readsLabeledCorpus() throws IOException {
+        File file = File.createTempFile("corpus", ".tsv");
+        try {
+            Files.write(file.toPath(), Arrays.asList(
+                    "spam\tWIN a prize\\nnow", "ham\tsee you at 6", "", "0\tok", "no label here"),
+                    StandardCharsets.UTF_8);
+            List<String> texts = new ArrayList<>();
+            int[] labels = VariantComparison.readLabeled(file.toPath(), texts);
+            assertArrayEquals(new int[]{1, 0, 0, -1}, labels);
+            assertEquals(Arrays.asList("WIN a prize\nnow", "see you at 6", "ok", "no label here"), texts);
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static VariantReport report(String name, long size, float... scores) {
+        VariantReport report = new VariantReport(name, size, scores.length);
+        System.arraycopy(scores, 0, report.scores, 0, scores.length);
+        return report;
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.llm.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/** A monotonically increasing count, cheap to bump from many threads. */
+public final class Counter {
+    private final String name;
+    private final LongAdder value = new LongAdder();
+
+    Counter(String name){
+        this.name = name;
+    }
+
+    public String getName(){
+        return name;
+    }
+
+    public void increment(){
+        value.increment();
+    }
+
+    public void add(long delta){
+        value.add(delta);
+    }
+
+    public long get(){
+        return value.sum();
+    }
+
+    void reset(){
+        value.reset();
+    }
+}
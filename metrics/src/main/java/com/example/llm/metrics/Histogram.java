@@ -0,0 +1,129 @@
+package com.example.llm.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of non-negative longs (nanoseconds, typically) in a fixed array of
+ * log-linear buckets, in the style of HdrHistogram: values below 64 are exact, larger ones fall in
+ * one of 32 buckets per power of two, so any reported value is within about 3% of a recorded one.
+ * Recording never allocates; values beyond {@link #MAX_VALUE} are clamped to it.
+ * */
+public final class Histogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_LIMIT = 2 * SUB_BUCKETS;
+    /** Largest value kept apart, about 18 minutes in nanoseconds. */
+    public static final long MAX_VALUE = (1L << 40) - 1;
+    static final int BUCKET_COUNT = indexOf(MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long value){
+        value = Math.max(0, Math.min(MAX_VALUE, value));
+        counts.incrementAndGet(indexOf(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // Another thread raised the maximum in between; retry against its value.
+        }
+    }
+
+    public long getCount(){
+        return count.get();
+    }
+
+    /** Not atomic with respect to concurrent recording; samples recorded meanwhile may be lost. */
+    public void reset(){
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    /** Copies the current state; the only place a histogram allocates. */
+    public Snapshot snapshot(){
+        long[] copy = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            copy[i] = counts.get(i);
+            total += copy[i];
+        }
+        return new Snapshot(copy, total, sum.get(), max.get());
+    }
+
+    static int indexOf(long value){
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int top = (int) (value >>> shift);
+        return LINEAR_LIMIT + (shift - 1) * SUB_BUCKETS + (top - SUB_BUCKETS);
+    }
+
+    static long lowestValueAt(int index){
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        int shift = (index - LINEAR_LIMIT) / SUB_BUCKETS + 1;
+        long top = (index - LINEAR_LIMIT) % SUB_BUCKETS + SUB_BUCKETS;
+        return top << shift;
+    }
+
+    static long highestValueAt(int index){
+        return index + 1 < BUCKET_COUNT ? lowestValueAt(index + 1) - 1 : MAX_VALUE;
+    }
+
+    /** Immutable view of a histogram at one point in time. */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        Snapshot(long[] counts, long count, long sum, long max){
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount(){
+            return count;
+        }
+
+        public double getMean(){
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        public long getMax(){
+            return max;
+        }
+
+        /**
+         * The value at or below which p percent of the samples fall, p in [0, 100]; reported as
+         * the middle of its bucket, capped at the recorded maximum. 0 if nothing was recorded.
+         */
+        public long getValueAtPercentile(double p){
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(p / 100.0 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    long middle = (lowestValueAt(i) + highestValueAt(i)) / 2;
+                    return Math.min(middle, max);
+                }
+            }
+            return max;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.llm.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Named timers and counters. Look them up once, e.g. into a final field, and record through the
+ * returned object; the registry itself is only touched to create metrics and to take snapshots.
+ * Metrics are listed in the order they were first registered.
+ * */
+public final class MetricsRegistry {
+    private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+
+    private final Map<String, Timer> timers = new LinkedHashMap<>();
+    private final Map<String, Counter> counters = new LinkedHashMap<>();
+
+    /** The process-wide registry the pipeline records into. */
+    public static MetricsRegistry getDefault(){
+        return DEFAULT;
+    }
+
+    public synchronized Timer timer(String name){
+        Timer timer = timers.get(name);
+        if (timer == null) {
+            timer = new Timer(name);
+            timers.put(name, timer);
+        }
+        return timer;
+    }
+
+    public synchronized Counter counter(String name){
+        Counter counter = counters.get(name);
+        if (counter == null) {
+            counter = new Counter(name);
+            counters.put(name, counter);
+        }
+        return counter;
+    }
+
+    public synchronized Snapshot snapshot(){
+        Map<String, Histogram.Snapshot> timerSnapshots = new LinkedHashMap<>();
+        Map<String, Long> lastNanos = new LinkedHashMap<>();
+        for (Timer timer : timers.values()) {
+            timerSnapshots.put(timer.getName(), timer.snapshot());
+            lastNanos.put(timer.getName(), timer.getLastNanos());
+        }
+        Map<String, Long> counterValues = new LinkedHashMap<>();
+        for (Counter counter : counters.values()) {
+            counterValues.put(counter.getName(), counter.get());
+        }
+        return new Snapshot(timerSnapshots, lastNanos, counterValues);
+    }
+
+    /** Text table of every metric, for logs, tests and benchmarks. */
+    public String dump(){
+        return snapshot().toString();
+    }
+
+    /** Clears all values; the metrics themselves stay registered. */
+    public synchronized void reset(){
+        for (Timer timer : timers.values()) {
+            timer.reset();
+        }
+        for (Counter counter : counters.values()) {
+            counter.reset();
+        }
+    }
+
+    /** Values of all metrics at one point in time. */
+    public static final class Snapshot {
+        private final Map<String, Histogram.Snapshot> timers;
+        private final Map<String, Long> lastNanos;
+        private final Map<String, Long> counters;
+
+        Snapshot(Map<String, Histogram.Snapshot> timers, Map<String, Long> lastNanos,
+                 Map<String, Long> counters){
+            this.timers = Collections.unmodifiableMap(timers);
+            this.lastNanos = Collections.unmodifiableMap(lastNanos);
+            this.counters = Collections.unmodifiableMap(counters);
+        }
+
+        public List<String> getTimerNames(){
+            return new ArrayList<>(timers.keySet());
+        }
+
+        /** null if no timer of that name was registered. */
+        public Histogram.Snapshot getTimer(String name){
+            return timers.get(name);
+        }
+
+        public long getLastNanos(String name){
+            Long nanos = lastNanos.get(name);
+            return nanos == null ? 0 : nanos;
+        }
+
+        public long getCounter(String name){
+            Long value = counters.get(name);
+            return value == null ? 0 : value;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder(String.format(Locale.US,
+                    "%-22s %8s %9s %9s %9s %9s %9s",
+                    "timer", "count", "mean ms", "p50 ms", "p95 ms", "p99 ms", "max ms"));
+            for (Map.Entry<String, Histogram.Snapshot> entry : timers.entrySet()) {
+                Histogram.Snapshot h = entry.getValue();
+                builder.append(String.format(Locale.US, "\n%-22s %8d %9.3f %9.3f %9.3f %9.3f %9.3f",
+                        entry.getKey(), h.getCount(), h.getMean() / 1e6,
+                        h.getValueAtPercentile(50) / 1e6, h.getValueAtPercentile(95) / 1e6,
+                        h.getValueAtPercentile(99) / 1e6, h.getMax() / 1e6));
+            }
+            for (Map.Entry<String, Long> entry : counters.entrySet()) {
+                builder.append(String.format(Locale.US, "\n%-22s %8d", entry.getKey(), entry.getValue()));
+            }
+            return builder.toString();
+        }
+    }
+}
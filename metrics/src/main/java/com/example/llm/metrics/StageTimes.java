@@ -0,0 +1,78 @@
+package com.example.llm.metrics;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The stage durations of one request, e.g. one text through the pipeline. While it is open on a
+ * thread, every {@link Timer} recording on that thread also adds to it, so a breakdown shows this
+ * request's stages even while other threads run the same stages:
+ *
+ * <pre>
+ * try (StageTimes stages = StageTimes.open()) {
+ *     classify(text);
+ *     long runNanos = stages.getNanos("onnx.run");
+ * }
+ * </pre>
+ *
+ * Stages that run on another thread, such as a shared batching worker, are not seen; callers add
+ * those with {@link #add(String, long)} if they know them.
+ * */
+public final class StageTimes implements AutoCloseable {
+    private static final ThreadLocal<StageTimes> CURRENT = new ThreadLocal<>();
+
+    private final Thread thread = Thread.currentThread();
+    private final StageTimes outer;
+    private final Map<String, long[]> nanos = new HashMap<>();
+
+    private StageTimes(StageTimes outer){
+        this.outer = outer;
+    }
+
+    /** Starts collecting on the calling thread until {@link #close()}. */
+    public static StageTimes open(){
+        StageTimes stages = new StageTimes(CURRENT.get());
+        CURRENT.set(stages);
+        return stages;
+    }
+
+    // Called by every Timer; a no-op unless a request is open on this thread.
+    static void recordCurrent(String stage, long nanos){
+        StageTimes stages = CURRENT.get();
+        if (stages != null) {
+            stages.add(stage, nanos);
+        }
+    }
+
+    /** Adds a duration to a stage; a stage that runs more than once sums up. */
+    public void add(String stage, long nanos){
+        long[] total = this.nanos.get(stage);
+        if (total == null) {
+            this.nanos.put(stage, new long[]{nanos});
+        } else {
+            total[0] += nanos;
+        }
+    }
+
+    /** Total duration of the stage in this request, or -1 if it did not run. */
+    public long getNanos(String stage){
+        long[] total = nanos.get(stage);
+        return total == null ? -1 : total[0];
+    }
+
+    /** Stops collecting; timers on this thread go back to an enclosing request, if any. */
+    @Override
+    public void close() {
+        if (Thread.currentThread() != thread) {
+            throw new IllegalStateException("StageTimes closed on another thread than it was opened on");
+        }
+        if (CURRENT.get() != this) {
+            return;
+        }
+        if (outer == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(outer);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.llm.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Durations of one pipeline stage. Callers take System.nanoTime() themselves, so timing a stage
+ * costs two clock reads and a few atomic adds, with nothing allocated:
+ *
+ * <pre>
+ * long start = System.nanoTime();
+ * ...
+ * start = tokenizeTimer.recordSince(start);
+ * ...
+ * padTimer.recordSince(start);
+ * </pre>
+ *
+ * Durations also go to the {@link StageTimes} open on the recording thread, if any.
+ * */
+public final class Timer {
+    private final String name;
+    private final Histogram histogram = new Histogram();
+    private final AtomicLong lastNanos = new AtomicLong();
+
+    Timer(String name){
+        this.name = name;
+    }
+
+    public String getName(){
+        return name;
+    }
+
+    public void record(long nanos){
+        histogram.record(nanos);
+        lastNanos.set(nanos);
+        StageTimes.recordCurrent(name, nanos);
+    }
+
+    /** Records the time since startNanos and returns now, to start timing the next stage. */
+    public long recordSince(long startNanos){
+        long now = System.nanoTime();
+        record(now - startNanos);
+        return now;
+    }
+
+    /**
+     * The most recent duration on any thread, for dumps. The breakdown of one request comes from
+     * {@link StageTimes}, as concurrent requests overwrite this.
+     */
+    public long getLastNanos(){
+        return lastNanos.get();
+    }
+
+    public long getCount(){
+        return histogram.getCount();
+    }
+
+    public Histogram.Snapshot snapshot(){
+        return histogram.snapshot();
+    }
+
+    void reset(){
+        histogram.reset();
+        lastNanos.set(0);
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.llm.metrics;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HistogramTest {
+    @Test
+    public void buckets_coverEveryValueOnce() {
+        assertEquals(0, Histogram.lowestValueAt(0));
+        for (int i = 1; i < Histogram.BUCKET_COUNT; i++) {
+            assertEquals(Histogram.highestValueAt(i - 1) + 1, Histogram.lowestValueAt(i));
+            assertEquals(i, Histogram.indexOf(Histogram.lowestValueAt(i)));
+            assertEquals(i, Histogram.indexOf(Histogram.highestValueAt(i)));
+        }
+        assertEquals(Histogram.MAX_VALUE, Histogram.highestValueAt(Histogram.BUCKET_COUNT - 1));
+    }
+
+    @Test
+    public void smallValues_areExact() {
+        Histogram histogram = new Histogram();
+        for (long value = 1; value <= 50; value++) {
+            histogram.record(value);
+        }
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(50, snapshot.getCount());
+        assertEquals(25.5, snapshot.getMean(), 1e-9);
+        assertEquals(25, snapshot.getValueAtPercentile(50));
+        assertEquals(50, snapshot.getValueAtPercentile(100));
+        assertEquals(50, snapshot.getMax());
+    }
+
+    @Test
+    public void percentiles_areWithinBucketPrecision() {
+        Random random = new Random(7);
+        Histogram histogram = new Histogram();
+        long[] values = new long[100_000];
+        for (int i = 0; i < values.length; i++) {
+            // Log-normal-ish latencies from about 10us to 1s.
+            values[i] = (long) Math.exp(9 + random.nextGaussian() * 2);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        for (double p : new double[]{1, 50, 90, 95, 99, 99.9}) {
+            long exact = values[(int) Math.ceil(p / 100 * values.length) - 1];
+            long reported = snapshot.getValueAtPercentile(p);
+            assertTrue(p + ": " + exact + " vs " + reported,
+                    Math.abs(reported - exact) <= exact / 32.0 + 1);
+        }
+        assertEquals(values[values.length - 1], snapshot.getMax());
+    }
+
+    @Test
+    public void record_clampsOutOfRangeValues() {
+        Histogram histogram = new Histogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(2, snapshot.getCount());
+        assertEquals(0, snapshot.getValueAtPercentile(50));
+        assertEquals(Histogram.MAX_VALUE, snapshot.getMax());
+    }
+
+    @Test
+    public void reset_clearsEverything() {
+        Histogram histogram = new Histogram();
+        histogram.record(1000);
+        histogram.reset();
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getValueAtPercentile(99));
+        assertEquals(0, snapshot.getMax());
+    }
+
+    @Test
+    public void record_fromManyThreads() throws InterruptedException {
+        final Histogram histogram = new Histogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 1; i <= 10_000; i++) {
+                    histogram.record(i);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(40_000, histogram.snapshot().getCount());
+        assertEquals(10_000, histogram.snapshot().getMax());
+    }
+}
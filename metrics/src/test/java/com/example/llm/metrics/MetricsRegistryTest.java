@@ -0,0 +1,63 @@
+package com.example.llm.metrics;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MetricsRegistryTest {
+    @Test
+    public void timer_isRegisteredOnce() {
+        MetricsRegistry registry = new MetricsRegistry();
+        assertSame(registry.timer("run"), registry.timer("run"));
+        assertSame(registry.counter("rows"), registry.counter("rows"));
+    }
+
+    @Test
+    public void snapshot_keepsRegistrationOrderAndLastValue() {
+        MetricsRegistry registry = new MetricsRegistry();
+        Timer tokenize = registry.timer("tokenize");
+        Timer run = registry.timer("run");
+        tokenize.record(2_000);
+        tokenize.record(1_000);
+        run.record(5_000_000);
+        registry.counter("rows").add(3);
+
+        MetricsRegistry.Snapshot snapshot = registry.snapshot();
+        assertEquals(Arrays.asList("tokenize", "run"), snapshot.getTimerNames());
+        assertEquals(2, snapshot.getTimer("tokenize").getCount());
+        assertEquals(1_000, snapshot.getLastNanos("tokenize"));
+        assertEquals(3, snapshot.getCounter("rows"));
+        assertNull(snapshot.getTimer("missing"));
+
+        String dump = registry.dump();
+        assertTrue(dump, dump.contains("tokenize"));
+        assertTrue(dump, dump.contains("rows"));
+    }
+
+    @Test
+    public void recordSince_returnsNowForTheNextStage() {
+        Timer timer = new MetricsRegistry().timer("stage");
+        long start = System.nanoTime();
+        long next = timer.recordSince(start);
+        assertTrue(next >= start);
+        assertEquals(next - start, timer.getLastNanos());
+    }
+
+    @Test
+    public void reset_keepsMetricsRegistered() {
+        MetricsRegistry registry = new MetricsRegistry();
+        Timer timer = registry.timer("run");
+        timer.record(10);
+        registry.counter("rows").increment();
+        registry.reset();
+        assertEquals(0, registry.snapshot().getTimer("run").getCount());
+        assertEquals(0, registry.snapshot().getCounter("rows"));
+        timer.record(10);
+        assertEquals(1, registry.snapshot().getTimer("run").getCount());
+    }
+}
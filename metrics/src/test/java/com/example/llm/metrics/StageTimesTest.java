@@ -0,0 +1,57 @@
+package com.example.llm.metrics;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+
+public class StageTimesTest {
+    @Test
+    public void collectsOnlyWhileOpenAndSumsRepeatedStages() {
+        Timer run = new MetricsRegistry().timer("run");
+        run.record(1_000);
+        try (StageTimes stages = StageTimes.open()) {
+            run.record(2_000);
+            run.record(3_000);
+            stages.add("softmax", 40);
+            assertEquals(5_000, stages.getNanos("run"));
+            assertEquals(40, stages.getNanos("softmax"));
+            assertEquals(-1, stages.getNanos("tokenize"));
+        }
+        run.record(7_000);
+        assertEquals(4, run.getCount());
+    }
+
+    @Test
+    public void otherThreadsDoNotShowUp() throws InterruptedException {
+        Timer run = new MetricsRegistry().timer("run");
+        AtomicLong otherNanos = new AtomicLong();
+        try (StageTimes stages = StageTimes.open()) {
+            Thread other = new Thread(() -> {
+                try (StageTimes otherStages = StageTimes.open()) {
+                    run.record(9_000);
+                    otherNanos.set(otherStages.getNanos("run"));
+                }
+            });
+            other.start();
+            other.join();
+            run.record(2_000);
+            assertEquals(2_000, stages.getNanos("run"));
+            assertEquals(9_000, otherNanos.get());
+        }
+    }
+
+    @Test
+    public void nestedRequestHandsBackToTheOuterOne() {
+        Timer run = new MetricsRegistry().timer("run");
+        try (StageTimes outer = StageTimes.open()) {
+            try (StageTimes inner = StageTimes.open()) {
+                run.record(5);
+                assertEquals(5, inner.getNanos("run"));
+            }
+            run.record(7);
+            assertEquals(7, outer.getNanos("run"));
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.llm.embedding;
+
+import java.nio.FloatBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * How the encoder's hidden states of a sequence become one sentence embedding. Every embedding is
+ * scaled to unit length, so the dot product of two is their cosine similarity.
+ * */
+public enum EmbeddingPooling {
+    /** The hidden state of the leading [CLS] token. */
+    CLS,
+    /** Mean of the hidden states of the real tokens, padding excluded through the mask. */
+    MEAN;
+
+    /**
+     * Pools a model output of shape [batchSize, seqLen, hiddenSize]. An output of shape
+     * [batchSize, hiddenSize] is taken to be pooled by the model already and is only normalized.
+     *
+     * @param attentionMask batchSize rows of seqLen, 1 for real tokens, read from index 0.
+     */
+    public float[][] pool(FloatBuffer hidden, long[] shape, LongBuffer attentionMask){
+        int batchSize = (int) shape[0];
+        float[][] embeddings;
+        if (shape.length == 2) {
+            embeddings = new float[batchSize][(int) shape[1]];
+            for (float[] embedding : embeddings) {
+                hidden.get(embedding);
+            }
+        } else if (shape.length == 3) {
+            int seqLen = (int) shape[1];
+            int hiddenSize = (int) shape[2];
+            embeddings = new float[batchSize][hiddenSize];
+            int base = hidden.position();
+            for (int row = 0; row < batchSize; row++) {
+                float[] embedding = embeddings[row];
+                int rowStart = base + row * seqLen * hiddenSize;
+                if (this == CLS) {
+                    for (int k = 0; k < hiddenSize; k++) {
+                        embedding[k] = hidden.get(rowStart + k);
+                    }
+                    continue;
+                }
+                // Summed only: the mean's 1/tokens factor drops out in the normalization below.
+                for (int t = 0; t < seqLen; t++) {
+                    if (attentionMask.get(row * seqLen + t) == 0) {
+                        continue;
+                    }
+                    int offset = rowStart + t * hiddenSize;
+                    for (int k = 0; k < hiddenSize; k++) {
+                        embedding[k] += hidden.get(offset + k);
+                    }
+                }
+            }
+        } else {
+            throw new IllegalArgumentException("Expected a rank 2 or 3 output, got rank " + shape.length);
+        }
+        for (float[] embedding : embeddings) {
+            normalize(embedding);
+        }
+        return embeddings;
+    }
+
+    /** Scales vector to unit length in place; a zero vector stays zero. */
+    public static void normalize(float[] vector){
+        double sum = 0;
+        for (float v : vector) {
+            sum += v * v;
+        }
+        if (sum == 0) {
+            return;
+        }
+        float scale = (float) (1 / Math.sqrt(sum));
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] *= scale;
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package com.example.llm.embedding;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Brute-force nearest-neighbour index over sentence embeddings, e.g. of known spam campaigns, so
+ * a new message can be matched against all of them in one pass.
+ *
+ * Vectors are quantized to one signed byte per dimension with a per-vector scale, and stored
+ * back to back in a single buffer: a header followed by fixed-size records of label, scale and
+ * codes. A query is quantized the same way, and each score is an integer dot product over two
+ * byte arrays times the two scales. That loop is what the JIT vectorizes well, and a few thousand
+ * 768-dimensional vectors take well under a millisecond. With unit-length vectors, as {@link
+ * EmbeddingPooling} produces, scores are cosine similarities.
+ *
+ * {@link #inMemory(int)} keeps the buffer on the heap. {@link #open(File, int)} memory-maps a
+ * file in the same format, so an index persists as it grows and opens without parsing. The record
+ * is written before the count in the header, so a crash loses at most the last vector.
+ * */
+public final class VectorIndex implements Closeable {
+    private static final int MAGIC = 0x58444956; // "VIDX"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final int COUNT_OFFSET = 12;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final int dimension;
+    private final int recordBytes;
+    private final FileChannel channel; // null when in memory
+    private ByteBuffer data;
+    private int capacity;
+    private int count;
+    private final byte[] codes;
+    private final byte[] queryCodes;
+
+    /** One search result: the label given to {@link #add(long, float[])} and its similarity. */
+    public static final class Match {
+        public final long label;
+        public final float score;
+
+        Match(long label, float score){
+            this.label = label;
+            this.score = score;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%d (%.3f)", label, score);
+        }
+    }
+
+    private VectorIndex(int dimension, FileChannel channel, ByteBuffer data, int capacity, int count){
+        this.dimension = dimension;
+        this.recordBytes = recordBytes(dimension);
+        this.channel = channel;
+        this.data = data;
+        this.capacity = capacity;
+        this.count = count;
+        this.codes = new byte[dimension];
+        this.queryCodes = new byte[dimension];
+    }
+
+    public static VectorIndex inMemory(int dimension){
+        checkDimension(dimension);
+        ByteBuffer data = ByteBuffer.allocate(HEADER_BYTES + INITIAL_CAPACITY * recordBytes(dimension))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        writeHeader(data, dimension);
+        return new VectorIndex(dimension, null, data, INITIAL_CAPACITY, 0);
+    }
+
+    /** Opens the index in file, creating it if it does not exist yet. */
+    public static VectorIndex open(File file, int dimension) throws IOException {
+        checkDimension(dimension);
+        boolean exists = file.length() > 0;
+        FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+        try {
+            int recordBytes = recordBytes(dimension);
+            if (!exists) {
+                MappedByteBuffer data = map(channel, HEADER_BYTES + (long) INITIAL_CAPACITY * recordBytes);
+                writeHeader(data, dimension);
+                return new VectorIndex(dimension, channel, data, INITIAL_CAPACITY, 0);
+            }
+            long size = channel.size();
+            if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+                throw new IOException("Not a vector index: " + file);
+            }
+            MappedByteBuffer data = map(channel, size);
+            if (data.getInt(0) != MAGIC || data.getInt(4) != VERSION) {
+                throw new IOException("Not a vector index: " + file);
+            }
+            if (data.getInt(8) != dimension) {
+                throw new IOException("Index of dimension " + data.getInt(8) + ", expected " + dimension);
+            }
+            int capacity = (int) ((size - HEADER_BYTES) / recordBytes);
+            int count = data.getInt(COUNT_OFFSET);
+            if (count < 0 || count > capacity) {
+                throw new IOException("Truncated vector index: " + file);
+            }
+            return new VectorIndex(dimension, channel, data, capacity, count);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public int dimension(){
+        return dimension;
+    }
+
+    public synchronized int size(){
+        return count;
+    }
+
+    /** Appends a vector; labels need not be unique, e.g. a campaign id per example message. */
+    public synchronized void add(long label, float[] vector) throws IOException {
+        checkOpen();
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException("Expected " + dimension + " dimensions, got " + vector.length);
+        }
+        if (count == capacity) {
+            grow();
+        }
+        float scale = quantize(vector, codes);
+        int offset = HEADER_BYTES + count * recordBytes;
+        data.putLong(offset, label);
+        data.putFloat(offset + 8, scale);
+        ByteBuffer record = data.duplicate();
+        record.position(offset + 12);
+        record.put(codes);
+        count++;
+        data.putInt(COUNT_OFFSET, count);
+    }
+
+    /** @return up to k matches, most similar first. */
+    public synchronized List<Match> search(float[] query, int k){
+        checkOpen();
+        if (query.length != dimension) {
+            throw new IllegalArgumentException("Expected " + dimension + " dimensions, got " + query.length);
+        }
+        if (k < 0) {
+            throw new IllegalArgumentException("k must not be negative");
+        }
+        int limit = Math.min(k, count);
+        long[] labels = new long[limit];
+        float[] scores = new float[limit];
+        int found = 0;
+        float queryScale = quantize(query, queryCodes);
+        ByteBuffer records = data.duplicate();
+        for (int i = 0; i < count && limit > 0; i++) {
+            int offset = HEADER_BYTES + i * recordBytes;
+            records.position(offset + 12);
+            records.get(codes);
+            int dot = 0;
+            for (int d = 0; d < dimension; d++) {
+                dot += codes[d] * queryCodes[d];
+            }
+            float score = dot * queryScale * data.getFloat(offset + 8);
+            if (found == limit && score <= scores[limit - 1]) {
+                continue;
+            }
+            // Insertion into the k best so far, kept sorted; k is small.
+            int slot = found < limit ? found++ : limit - 1;
+            while (slot > 0 && scores[slot - 1] < score) {
+                scores[slot] = scores[slot - 1];
+                labels[slot] = labels[slot - 1];
+                slot--;
+            }
+            scores[slot] = score;
+            labels[slot] = data.getLong(offset);
+        }
+        List<Match> matches = new ArrayList<>(found);
+        for (int i = 0; i < found; i++) {
+            matches.add(new Match(labels[i], scores[i]));
+        }
+        return matches;
+    }
+
+    /** Writes a mapped index out to its file; a no-op in memory. */
+    public synchronized void flush(){
+        if (data instanceof MappedByteBuffer) {
+            ((MappedByteBuffer) data).force();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (data == null) {
+            return;
+        }
+        flush();
+        data = null;
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private void grow() throws IOException {
+        int newCapacity = capacity * 2;
+        long bytes = HEADER_BYTES + (long) newCapacity * recordBytes;
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IOException("Vector index full");
+        }
+        if (channel != null) {
+            flush();
+            data = map(channel, bytes);
+        } else {
+            ByteBuffer larger = ByteBuffer.allocate((int) bytes).order(ByteOrder.LITTLE_ENDIAN);
+            data.rewind();
+            larger.put(data);
+            data = larger;
+        }
+        capacity = newCapacity;
+    }
+
+    private void checkOpen(){
+        if (data == null) {
+            throw new IllegalStateException("Vector index is closed");
+        }
+    }
+
+    // Symmetric: codes[i] = round(vector[i] / scale) with the largest magnitude mapped to 127.
+    private static float quantize(float[] vector, byte[] codes){
+        float max = 0;
+        for (float v : vector) {
+            max = Math.max(max, Math.abs(v));
+        }
+        if (max == 0) {
+            Arrays.fill(codes, (byte) 0);
+            return 0;
+        }
+        float scale = max / 127;
+        for (int i = 0; i < vector.length; i++) {
+            codes[i] = (byte) Math.round(vector[i] / scale);
+        }
+        return scale;
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long bytes) throws IOException {
+        MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+        data.order(ByteOrder.LITTLE_ENDIAN);
+        return data;
+    }
+
+    private static void writeHeader(ByteBuffer data, int dimension){
+        data.putInt(0, MAGIC);
+        data.putInt(4, VERSION);
+        data.putInt(8, dimension);
+        data.putInt(COUNT_OFFSET, 0);
+    }
+
+    // label, scale and codes, padded so every record starts 8-byte aligned.
+    private static int recordBytes(int dimension){
+        return (12 + dimension + 7) & ~7;
+    }
+
+    private static void checkDimension(int dimension){
+        if (dimension <= 0) {
+            throw new IllegalArgumentException("dimension must be positive");
+        }
+    }
+}
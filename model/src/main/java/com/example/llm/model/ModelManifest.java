@@ -0,0 +1,223 @@
+package com.example.llm.model;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The model files shipped with the app, e.g. the FP32 export plus FP16 and dynamic INT8
+ * quantizations of it, read from models.json:
+ *
+ * <pre>
+ * {
+ *   "selected": null,
+ *   "variants": [
+ *     {"name": "int8", "file": "DistilBert.int8.onnx", "precision": "INT8", "minCores": 4},
+ *     {"name": "fp32", "file": "DistilBert.onnx", "precision": "FP32"}
+ *   ],
+ *   "prefilter": {"file": "prefilter.bin", "hamBelow": 0.02, "spamAbove": 0.98}
+ * }
+ * </pre>
+ *
+ * Variants are listed in order of preference. {@link #select(DeviceProfile, Collection)} returns
+ * "selected" if it is set, and otherwise the first variant the device meets the requirements of.
+ * The pre-filter's thresholds are tuned together with its weights, so they ship next to it;
+ * without a "prefilter" section the defaults above apply.
+ * */
+public final class ModelManifest {
+    public static final String ASSET_NAME = "models.json";
+
+    public enum Precision {
+        FP32,
+        FP16,
+        /** Weights quantized to int8 ahead of time, activations quantized at run time. */
+        INT8
+    }
+
+    /** What a variant needs from the device to run fast enough. */
+    public static final class DeviceProfile {
+        public final int cores;
+        public final long totalRamMb;
+        /** Whether the CPU has half-precision arithmetic, e.g. ARMv8.2 FP16. */
+        public final boolean fp16Arithmetic;
+
+        public DeviceProfile(int cores, long totalRamMb, boolean fp16Arithmetic){
+            this.cores = cores;
+            this.totalRamMb = totalRamMb;
+            this.fp16Arithmetic = fp16Arithmetic;
+        }
+
+        @Override
+        public String toString() {
+            return "DeviceProfile{cores=" + cores + ", ram=" + totalRamMb + "MB, fp16=" + fp16Arithmetic + "}";
+        }
+    }
+
+    public static final class Variant {
+        private String name;
+        private String file;
+        private Precision precision = Precision.FP32;
+        private int minCores;
+        private long minRamMb;
+
+        Variant(){
+            // For Gson.
+        }
+
+        public Variant(String name, String file, Precision precision){
+            this.name = name;
+            this.file = file;
+            this.precision = precision;
+        }
+
+        public String getName(){
+            return name;
+        }
+
+        /** The model file, relative to the manifest. */
+        public String getFile(){
+            return file;
+        }
+
+        public Precision getPrecision(){
+            return precision;
+        }
+
+        public boolean runsOn(DeviceProfile device){
+            return device.cores >= minCores && device.totalRamMb >= minRamMb
+                    && (precision != Precision.FP16 || device.fp16Arithmetic);
+        }
+
+        @Override
+        public String toString() {
+            return name + " (" + precision + ", " + file + ")";
+        }
+    }
+
+    /**
+     * The cascade's cheap first stage: texts it scores below hamBelow or above spamAbove get its
+     * verdict, the rest go on to the transformer.
+     */
+    public static final class Prefilter {
+        private String file = "prefilter.bin";
+        private float hamBelow = 0.02f;
+        private float spamAbove = 0.98f;
+
+        Prefilter(){
+            // For Gson, and the defaults of a manifest without a "prefilter" section.
+        }
+
+        /** The pre-filter weights, relative to the manifest. */
+        public String getFile(){
+            return file;
+        }
+
+        public float getHamBelow(){
+            return hamBelow;
+        }
+
+        public float getSpamAbove(){
+            return spamAbove;
+        }
+
+        @Override
+        public String toString() {
+            return file + " [" + hamBelow + ", " + spamAbove + "]";
+        }
+    }
+
+    private String selected;
+    private List<Variant> variants = new ArrayList<>();
+    private Prefilter prefilter = new Prefilter();
+
+    private ModelManifest(){
+        // For Gson.
+    }
+
+    /** A manifest of one FP32 model, for builds that ship no models.json. */
+    public static ModelManifest single(String file){
+        ModelManifest manifest = new ModelManifest();
+        manifest.variants.add(new Variant("fp32", file, Precision.FP32));
+        return manifest;
+    }
+
+    public static ModelManifest read(InputStream json) throws IOException {
+        ModelManifest manifest;
+        try (Reader reader = new InputStreamReader(json, StandardCharsets.UTF_8)) {
+            manifest = new Gson().fromJson(reader, ModelManifest.class);
+        } catch (JsonParseException e) {
+            throw new IOException("Malformed " + ASSET_NAME, e);
+        }
+        if (manifest == null || manifest.variants == null || manifest.variants.isEmpty()) {
+            throw new IOException(ASSET_NAME + " lists no variants");
+        }
+        for (Variant variant : manifest.variants) {
+            if (variant.name == null || variant.file == null || variant.precision == null) {
+                throw new IOException(ASSET_NAME + " has a variant without name, file or precision");
+            }
+        }
+        if (manifest.selected != null && manifest.get(manifest.selected) == null) {
+            throw new IOException(ASSET_NAME + " selects unknown variant " + manifest.selected);
+        }
+        if (manifest.prefilter == null) {
+            manifest.prefilter = new Prefilter();
+        }
+        Prefilter prefilter = manifest.prefilter;
+        if (prefilter.file == null
+                || !(0 <= prefilter.hamBelow && prefilter.hamBelow <= prefilter.spamAbove && prefilter.spamAbove <= 1)) {
+            throw new IOException(ASSET_NAME + " needs a prefilter file and 0 <= hamBelow <= spamAbove <= 1");
+        }
+        return manifest;
+    }
+
+    public Prefilter getPrefilter(){
+        return prefilter;
+    }
+
+    public List<Variant> getVariants(){
+        return Collections.unmodifiableList(variants);
+    }
+
+    /** @return the variant of that name, or null. */
+    public Variant get(String name){
+        for (Variant variant : variants) {
+            if (variant.name.equals(name)) {
+                return variant;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The configured variant, else the first that runs on device, else the last as a fallback,
+     * skipping variants whose file is not among files, e.g. because the build left it out.
+     *
+     * @return the variant, or null if none of the files is present.
+     */
+    public Variant select(DeviceProfile device, Collection<String> files){
+        Variant configured = selected == null ? null : get(selected);
+        if (configured != null && files.contains(configured.file)) {
+            return configured;
+        }
+        Variant fallback = null;
+        for (Variant variant : variants) {
+            if (!files.contains(variant.file)) {
+                continue;
+            }
+            if (variant.runsOn(device)) {
+                return variant;
+            }
+            fallback = variant;
+        }
+        return fallback;
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.llm.embedding;
+
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+import java.nio.LongBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class EmbeddingPoolingTest {
+    // Two rows of three tokens with hidden size 2; the second row's last token is padding.
+    private static final float[] HIDDEN = {
+            3, 0,   0, 4,   0, 0,
+            1, 1,   1, -1,  100, 100};
+    private static final long[] SHAPE = {2, 3, 2};
+    private static final long[] MASK = {1, 1, 1, 1, 1, 0};
+
+    @Test
+    public void clsTakesTheFirstToken() {
+        float[][] embeddings = EmbeddingPooling.CLS.pool(FloatBuffer.wrap(HIDDEN), SHAPE, LongBuffer.wrap(MASK));
+        assertArrayEquals(new float[]{1, 0}, embeddings[0], 1e-6f);
+        assertArrayEquals(new float[]{0.70710677f, 0.70710677f}, embeddings[1], 1e-6f);
+    }
+
+    @Test
+    public void meanSkipsPadding() {
+        float[][] embeddings = EmbeddingPooling.MEAN.pool(FloatBuffer.wrap(HIDDEN), SHAPE, LongBuffer.wrap(MASK));
+        assertArrayEquals(new float[]{0.6f, 0.8f}, embeddings[0], 1e-6f);
+        assertArrayEquals(new float[]{1, 0}, embeddings[1], 1e-6f);
+    }
+
+    @Test
+    public void pooledOutputIsOnlyNormalized() {
+        float[][] embeddings = EmbeddingPooling.MEAN.pool(
+                FloatBuffer.wrap(new float[]{0, 2, 5, 0}), new long[]{2, 2}, LongBuffer.wrap(MASK));
+        assertArrayEquals(new float[]{0, 1}, embeddings[0], 1e-6f);
+        assertArrayEquals(new float[]{1, 0}, embeddings[1], 1e-6f);
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.llm.embedding;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class VectorIndexTest {
+    private static final int DIMENSION = 96;
+
+    private File file;
+
+    @After
+    public void deleteFile() {
+        if (file != null) {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void findsNearestNeighboursInOrder() throws IOException {
+        Random random = new Random(1);
+        float[][] vectors = new float[500][];
+        try (VectorIndex index = VectorIndex.inMemory(DIMENSION)) {
+            for (int i = 0; i < vectors.length; i++) {
+                vectors[i] = randomUnitVector(random);
+                index.add(i, vectors[i]);
+            }
+            assertEquals(vectors.length, index.size());
+            for (int i = 0; i < 20; i++) {
+                float[] query = perturbed(vectors[i * 7], random, 0.05f);
+                List<VectorIndex.Match> matches = index.search(query, 5);
+                assertEquals(5, matches.size());
+                assertEquals(i * 7, matches.get(0).label);
+                assertEquals(dot(query, vectors[i * 7]), matches.get(0).score, 0.02f);
+                for (int k = 1; k < matches.size(); k++) {
+                    assertTrue(matches.get(k - 1).score >= matches.get(k).score);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void searchOfSmallIndexReturnsEverything() throws IOException {
+        try (VectorIndex index = VectorIndex.inMemory(DIMENSION)) {
+            assertTrue(index.search(new float[DIMENSION], 3).isEmpty());
+            index.add(42, randomUnitVector(new Random(2)));
+            assertEquals(1, index.search(new float[DIMENSION], 3).size());
+        }
+    }
+
+    @Test
+    public void searchRejectsBadArguments() throws IOException {
+        try (VectorIndex index = VectorIndex.inMemory(DIMENSION)) {
+            index.add(42, randomUnitVector(new Random(3)));
+            assertTrue(index.search(new float[DIMENSION], 0).isEmpty());
+            for (Runnable search : new Runnable[]{
+                    () -> index.search(new float[DIMENSION], -1),
+                    () -> index.search(new float[DIMENSION - 1], 1)}) {
+                try {
+                    search.run();
+                    fail();
+                } catch (IllegalArgumentException expected) {
+                    // Expected.
+                }
+            }
+        }
+    }
+
+    @Test
+    public void persistsThroughTheMappedFile() throws IOException {
+        file = File.createTempFile("campaigns", ".vidx");
+        file.delete();
+        Random random = new Random(3);
+        float[][] vectors = new float[150][];
+        try (VectorIndex index = VectorIndex.open(file, DIMENSION)) {
+            for (int i = 0; i < vectors.length; i++) {
+                vectors[i] = randomUnitVector(random);
+                index.add(1000 + i, vectors[i]);
+            }
+        }
+        try (VectorIndex index = VectorIndex.open(file, DIMENSION)) {
+            assertEquals(vectors.length, index.size());
+            assertEquals(1000 + 99, index.search(vectors[99], 1).get(0).label);
+            index.add(7, vectors[0]);
+            assertEquals(vectors.length + 1, index.size());
+        }
+        try {
+            VectorIndex.open(file, DIMENSION * 2);
+            fail();
+        } catch (IOException expected) {
+            // ok
+        }
+    }
+
+    @Test
+    public void normalizeGivesUnitLength() {
+        float[] vector = {3, 4, 0};
+        EmbeddingPooling.normalize(vector);
+        assertEquals(0.6f, vector[0], 1e-6f);
+        assertEquals(0.8f, vector[1], 1e-6f);
+    }
+
+    private static float[] randomUnitVector(Random random){
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        EmbeddingPooling.normalize(vector);
+        return vector;
+    }
+
+    private static float[] perturbed(float[] vector, Random random, float noise){
+        float[] result = vector.clone();
+        for (int i = 0; i < result.length; i++) {
+            result[i] += noise * (float) random.nextGaussian();
+        }
+        EmbeddingPooling.normalize(result);
+        return result;
+    }
+
+    private static float dot(float[] a, float[] b){
+        float sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+}
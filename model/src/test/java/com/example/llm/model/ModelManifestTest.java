@@ -0,0 +1,92 @@
+package com.example.llm.model;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class ModelManifestTest {
+    private static final String MANIFEST = "{\"variants\": ["
+            + "{\"name\": \"fp16\", \"file\": \"m.fp16.onnx\", \"precision\": \"FP16\"},"
+            + "{\"name\": \"int8\", \"file\": \"m.int8.onnx\", \"precision\": \"INT8\", \"minCores\": 4},"
+            + "{\"name\": \"fp32\", \"file\": \"m.onnx\", \"precision\": \"FP32\", \"minRamMb\": 3000}]}";
+    private static final List<String> ALL_FILES = Arrays.asList("m.fp16.onnx", "m.int8.onnx", "m.onnx");
+
+    @Test
+    public void selectsFirstVariantTheDeviceRuns() throws IOException {
+        ModelManifest manifest = read(MANIFEST);
+        assertEquals(3, manifest.getVariants().size());
+        assertEquals(ModelManifest.Precision.INT8, manifest.get("int8").getPrecision());
+
+        ModelManifest.DeviceProfile fp16Device = new ModelManifest.DeviceProfile(8, 8000, true);
+        ModelManifest.DeviceProfile octaCore = new ModelManifest.DeviceProfile(8, 8000, false);
+        ModelManifest.DeviceProfile dualCore = new ModelManifest.DeviceProfile(2, 4000, false);
+        ModelManifest.DeviceProfile lowEnd = new ModelManifest.DeviceProfile(2, 1000, false);
+        assertEquals("fp16", manifest.select(fp16Device, ALL_FILES).getName());
+        assertEquals("int8", manifest.select(octaCore, ALL_FILES).getName());
+        assertEquals("fp32", manifest.select(dualCore, ALL_FILES).getName());
+        // Nothing fits, so the last shipped variant is the fallback.
+        assertEquals("fp32", manifest.select(lowEnd, ALL_FILES).getName());
+    }
+
+    @Test
+    public void skipsVariantsNotShipped() throws IOException {
+        ModelManifest manifest = read(MANIFEST);
+        ModelManifest.DeviceProfile device = new ModelManifest.DeviceProfile(8, 8000, true);
+        assertEquals("fp32", manifest.select(device, Collections.singletonList("m.onnx")).getName());
+        assertNull(manifest.select(device, Collections.<String>emptyList()));
+    }
+
+    @Test
+    public void selectedOverridesTheDevice() throws IOException {
+        ModelManifest manifest = read(MANIFEST.replace("{\"variants\"", "{\"selected\": \"fp32\", \"variants\""));
+        ModelManifest.DeviceProfile device = new ModelManifest.DeviceProfile(8, 8000, true);
+        assertEquals("fp32", manifest.select(device, ALL_FILES).getName());
+    }
+
+    @Test
+    public void prefilterThresholdsComeFromTheManifest() throws IOException {
+        ModelManifest.Prefilter defaults = read(MANIFEST).getPrefilter();
+        assertEquals("prefilter.bin", defaults.getFile());
+        assertEquals(0.02f, defaults.getHamBelow(), 0f);
+        assertEquals(0.98f, defaults.getSpamAbove(), 0f);
+
+        ModelManifest.Prefilter tuned = read(MANIFEST.replace("]}",
+                "], \"prefilter\": {\"file\": \"p.bin\", \"hamBelow\": 0.1}}")).getPrefilter();
+        assertEquals("p.bin", tuned.getFile());
+        assertEquals(0.1f, tuned.getHamBelow(), 0f);
+        assertEquals(0.98f, tuned.getSpamAbove(), 0f);
+    }
+
+    @Test
+    public void rejectsInvalidManifests() {
+        for (String json : new String[]{
+                "{}",
+                "{\"variants\": []}",
+                "{\"variants\": [{\"name\": \"a\"}]}",
+                "{\"selected\": \"b\", \"variants\": [{\"name\": \"a\", \"file\": \"a.onnx\"}]}",
+                "{\"variants\": [{\"name\": \"a\", \"file\": \"a.onnx\", \"precision\": \"INT4\"}]}",
+                "{\"variants\": [{\"name\": \"a\", \"file\": \"a.onnx\"}],"
+                        + " \"prefilter\": {\"hamBelow\": 0.9, \"spamAbove\": 0.1}}",
+                "not json"}) {
+            try {
+                read(json);
+                fail(json);
+            } catch (IOException expected) {
+                // Expected.
+            }
+        }
+    }
+
+    private static ModelManifest read(String json) throws IOException {
+        return ModelManifest.read(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.llm.prefilter;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HashedLogisticModelTest {
+    private static final int[] SPAM_WORDS = {101, 102, 103, 104};
+    private static final int[] HAM_WORDS = {201, 202, 203, 204};
+    private static final int[] SHARED_WORDS = {1, 2, 3, 4, 5, 6};
+
+    @Test
+    public void learnsSeparableTexts() {
+        Random random = new Random(7);
+        HashedLogisticModel model = new HashedLogisticModel(12);
+        for (int step = 0; step < 2000; step++) {
+            boolean spam = random.nextBoolean();
+            int[] ids = text(random, spam);
+            model.train(ids, 0, ids.length, spam, 0.5f, 1e-6f);
+        }
+        for (int i = 0; i < 100; i++) {
+            boolean spam = i % 2 == 0;
+            int[] ids = text(random, spam);
+            float probability = model.probability(ids, 0, ids.length);
+            assertTrue(spam ? probability > 0.9f : probability < 0.1f);
+        }
+    }
+
+    @Test
+    public void scoresOnlyTheGivenRange() {
+        HashedLogisticModel model = new HashedLogisticModel(8);
+        int[] ids = {101, 102, 201, 202};
+        for (int step = 0; step < 200; step++) {
+            model.train(ids, 0, 2, true, 0.5f, 0f);
+            model.train(ids, 2, 4, false, 0.5f, 0f);
+        }
+        assertTrue(model.probability(ids, 0, 2) > 0.5f);
+        assertTrue(model.probability(ids, 2, 4) < 0.5f);
+        // An empty range scores the bias alone.
+        assertEquals(HashedLogisticModel.sigmoid(model.logit(ids, 1, 1)), model.probability(ids, 3, 3), 0f);
+    }
+
+    @Test
+    public void writeAndReadRoundTrip() throws IOException {
+        Random random = new Random(3);
+        HashedLogisticModel model = new HashedLogisticModel(10);
+        for (int step = 0; step < 200; step++) {
+            boolean spam = random.nextBoolean();
+            int[] ids = text(random, spam);
+            model.train(ids, 0, ids.length, spam, 0.1f, 0f);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        model.write(out);
+        HashedLogisticModel read = HashedLogisticModel.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(10, read.getBits());
+        for (int i = 0; i < 20; i++) {
+            int[] ids = text(random, i % 2 == 0);
+            assertEquals(model.logit(ids, 0, ids.length), read.logit(ids, 0, ids.length), 0f);
+        }
+    }
+
+    @Test
+    public void rejectsOtherFiles() {
+        try {
+            HashedLogisticModel.read(new ByteArrayInputStream(new byte[]{'H', 'L', 'R', 'X', 0, 0, 0, 1}));
+            fail();
+        } catch (IOException expected) {
+            // ok
+        }
+    }
+
+    private static int[] text(Random random, boolean spam){
+        int[] words = spam ? SPAM_WORDS : HAM_WORDS;
+        int[] ids = new int[5 + random.nextInt(20)];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = i % 2 == 0
+                    ? words[random.nextInt(words.length)]
+                    : SHARED_WORDS[random.nextInt(SHARED_WORDS.length)];
+        }
+        return ids;
+    }
+}
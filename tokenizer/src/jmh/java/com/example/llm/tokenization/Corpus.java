@@ -0,0 +1,84 @@
+package com.example.llm.tokenization;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+/**
+ * Synthetic, reproducible texts for the benchmarks, one kind per shape of input the app sees.
+ * */
+public enum Corpus {
+    /** Around 160 chars of plain ASCII, one text message. */
+    SHORT_SMS(160),
+    /** Around 6000 chars of prose, several times the model's window. */
+    LONG_EMAIL(6000),
+    /** Accented Latin, CJK, Arabic, emoji and zero-width chars mixed with English. */
+    UNICODE(1000),
+    /** URLs, e-mail addresses and phone numbers: almost every other char is punctuation. */
+    URLS(1000);
+
+    public static final String VOCAB_PATH =
+            System.getProperty("vocab.path", "../app/src/main/assets/vocab.txt");
+
+    private static final String[] WORDS = {
+            "you", "have", "won", "a", "free", "prize", "call", "now", "to", "claim", "your",
+            "reward", "the", "meeting", "is", "moved", "tomorrow", "please", "confirm", "by",
+            "replying", "congratulations", "selected", "winner", "weekly", "draw", "offer",
+            "expires", "unsubscribe", "internationalization", "antidisestablishmentarianism",
+            "xqzvbnmkl", "Hello", "Thanks", "URGENT", "Account", "verification", "required"
+    };
+    private static final String[] UNICODE_WORDS = {
+            "caf\u00e9", "na\u00efve", "r\u00e9sum\u00e9", "\u00fcber", "\u4e2d\u6587\u5b57",
+            "\u6771\u4eac", "\u0645\u0631\u062d\u0628\u0627", "\ud83d\ude00", "\ud83c\udf81",
+            "zero\u200bwidth", "non\u00a0breaking", "\u0417\u0434\u0440\u0430\u0432\u0441\u0442\u0432\u0443\u0439"
+    };
+    private static final String[] URL_PARTS = {
+            "https://", "www.", "example", ".com", "/claim", "?id=", "&ref=", "sms_blast", "#top",
+            "win-", "prize", ".co.uk", "/u/", "%20", "info@", "bit.ly/", "+44-800-123-456", "(0)"
+    };
+
+    private final int length;
+
+    Corpus(int length){
+        this.length = length;
+    }
+
+    /** The same text on every call for a given seed. */
+    public String text(long seed){
+        Random random = new Random(seed + ordinal());
+        StringBuilder builder = new StringBuilder(length + 64);
+        while (builder.length() < length) {
+            switch (this) {
+                case UNICODE:
+                    builder.append(random.nextInt(3) == 0
+                            ? pick(random, UNICODE_WORDS) : pick(random, WORDS));
+                    break;
+                case URLS:
+                    for (int i = 2 + random.nextInt(5); i > 0; i--) {
+                        builder.append(pick(random, URL_PARTS));
+                    }
+                    builder.append(random.nextInt(1000));
+                    break;
+                default:
+                    builder.append(pick(random, WORDS));
+                    if (random.nextInt(12) == 0) {
+                        builder.append(random.nextBoolean() ? '.' : ',');
+                    }
+                    break;
+            }
+            builder.append(this == LONG_EMAIL && random.nextInt(40) == 0 ? "\n\n" : " ");
+        }
+        return builder.toString();
+    }
+
+    private static String pick(Random random, String[] values){
+        return values[random.nextInt(values.length)];
+    }
+
+    public static VocabTrie loadVocab() throws IOException {
+        try (InputStream is = new FileInputStream(VOCAB_PATH)) {
+            return VocabTrie.readText(is);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.llm.tokenization;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The original substring-probing wordpiece search over a HashMap, kept as the reference the
+ * trie-based {@link WorkPieceTokenizer} is benchmarked against here and checked against by the
+ * unit tests, which compile against this source set.
+ * */
+class ReferenceWorkPieceTokenizer {
+    private static final String UNKNOWN_TOKEN = "[UNK]";
+    private static final int MAX_INPUTCHARS_PER_WORD = 100;
+
+    private final Map<String, Integer> dic;
+
+    ReferenceWorkPieceTokenizer(Map<String, Integer> vocab){ dic = vocab; }
+
+    static Map<String, Integer> loadVocab() throws IOException {
+        Map<String, Integer> dic = new HashMap<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(Corpus.VOCAB_PATH), StandardCharsets.UTF_8))) {
+            int index = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                dic.put(line, index++);
+            }
+        }
+        return dic;
+    }
+
+    List<String> tokenize(String text){
+        List<String> outputTokens = new ArrayList<>();
+        for(String token: BasicTokenizer.whitespaceTokenize(text)){
+            if(token.length() > MAX_INPUTCHARS_PER_WORD){
+                outputTokens.add(UNKNOWN_TOKEN);
+                continue;
+            }
+
+            boolean isBad = false;
+            int start = 0;
+            List<String> subTokens = new ArrayList<>();
+
+            while(start< token.length()){
+                String curSubStr = "";
+
+                int end = token.length();
+                while(start<end){
+                    String subStr =
+                            (start==0) ? token.substring(start,end) : "##" + token.substring(start,end);
+                    if(dic.containsKey(subStr)){
+                        curSubStr = subStr;
+                        break;
+                    }
+                    end--;
+                }
+
+                if(curSubStr.isEmpty()){
+                    isBad = true;
+                    break;
+                }
+                subTokens.add(curSubStr);
+                start = end;
+            }
+
+            if(isBad){
+                outputTokens.add(UNKNOWN_TOKEN);
+            }
+            else{
+                outputTokens.addAll(subTokens);
+            }
+        }
+        return outputTokens;
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.llm.tokenization;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Each stage of tokenization over one text of the given corpus. Run with the gc profiler to see
+ * the bytes allocated per text next to the time. The *HashMap benchmarks are the same stages with
+ * the original HashMap wordpiece search, as the baseline for the trie.
+ * */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TokenizerBenchmark {
+    @Param({"SHORT_SMS", "LONG_EMAIL", "UNICODE", "URLS"})
+    public Corpus corpus;
+
+    @Param({"false", "true"})
+    public boolean doLowerCase;
+
+    /** 0 runs without the {@link WordPieceCache}. */
+    @Param({"0", "4096"})
+    public int wordCacheSize;
+
+    private String text;
+    private String[] words;
+    private BasicTokenizer basicTokenizer;
+    private WorkPieceTokenizer workPieceTokenizer;
+    private ReferenceWorkPieceTokenizer hashMapTokenizer;
+    private FullTokenizer fullTokenizer;
+    private int[] ids;
+
+    @Setup
+    public void setUp() throws IOException {
+        VocabTrie vocab = Corpus.loadVocab();
+        text = corpus.text(42);
+        basicTokenizer = new BasicTokenizer(doLowerCase);
+        workPieceTokenizer = new WorkPieceTokenizer(vocab);
+        hashMapTokenizer = new ReferenceWorkPieceTokenizer(ReferenceWorkPieceTokenizer.loadVocab());
+        fullTokenizer = new FullTokenizer(vocab, doLowerCase, wordCacheSize);
+        words = basicTokenizer.tokenize(text).toArray(new String[0]);
+        ids = new int[text.length()];
+    }
+
+    @Benchmark
+    public List<String> basicTokenize(){
+        return basicTokenizer.tokenize(text);
+    }
+
+    /** Wordpiece only, over the words the basic tokenizer produced. */
+    @Benchmark
+    public int wordPieceTokenize(){
+        int pieces = 0;
+        for (String word : words) {
+            pieces += workPieceTokenizer.tokenize(word).size();
+        }
+        return pieces;
+    }
+
+    @Benchmark
+    public int wordPieceTokenizeHashMap(){
+        int pieces = 0;
+        for (String word : words) {
+            pieces += hashMapTokenizer.tokenize(word).size();
+        }
+        return pieces;
+    }
+
+    @Benchmark
+    public List<String> fullTokenize(){
+        return fullTokenizer.tokenize(text);
+    }
+
+    /** Basic tokenization followed by the HashMap search, as the tokenizer worked originally. */
+    @Benchmark
+    public List<String> fullTokenizeHashMap(){
+        List<String> pieces = new ArrayList<>();
+        for (String word : basicTokenizer.tokenize(text)) {
+            pieces.addAll(hashMapTokenizer.tokenize(word));
+        }
+        return pieces;
+    }
+
+    @Benchmark
+    public List<Integer> fullTokenizeThenConvert(){
+        return fullTokenizer.convertTokensToIds(fullTokenizer.tokenize(text));
+    }
+
+    /** The streaming path used for inference; should allocate nothing per text. */
+    @Benchmark
+    public int tokenizeToIds(){
+        return fullTokenizer.tokenizeToIds(text, ids, 0, ids.length);
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.llm.tokenization;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@link VocabTrie} against the HashMap it replaced, both read from vocab.txt: the wordpiece
+ * search over the words of each corpus, and loading the vocabulary. The gc profiler's bytes per
+ * load (gc.alloc.rate.norm) bound what each structure keeps on the heap.
+ * */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class VocabularyBenchmark {
+    private WorkPieceTokenizer trie;
+    private ReferenceWorkPieceTokenizer hashMap;
+
+    /** The words of one corpus after basic tokenization. */
+    @State(Scope.Benchmark)
+    public static class Words {
+        @Param({"SHORT_SMS", "LONG_EMAIL", "UNICODE", "URLS"})
+        public Corpus corpus;
+
+        String[] words;
+
+        @Setup
+        public void setUp(){
+            words = new BasicTokenizer(false).tokenize(corpus.text(42)).toArray(new String[0]);
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        trie = new WorkPieceTokenizer(Corpus.loadVocab());
+        hashMap = new ReferenceWorkPieceTokenizer(ReferenceWorkPieceTokenizer.loadVocab());
+    }
+
+    @Benchmark
+    public int trieWordPiece(Words words){
+        int pieces = 0;
+        for (String word : words.words) {
+            pieces += trie.tokenize(word).size();
+        }
+        return pieces;
+    }
+
+    @Benchmark
+    public int hashMapWordPiece(Words words){
+        int pieces = 0;
+        for (String word : words.words) {
+            pieces += hashMap.tokenize(word).size();
+        }
+        return pieces;
+    }
+
+    @Benchmark
+    public VocabTrie loadTrie() throws IOException {
+        return Corpus.loadVocab();
+    }
+
+    @Benchmark
+    public Map<String, Integer> loadHashMap() throws IOException {
+        return ReferenceWorkPieceTokenizer.loadVocab();
+    }
+}
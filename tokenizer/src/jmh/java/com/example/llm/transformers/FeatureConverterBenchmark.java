@@ -0,0 +1,53 @@
+package com.example.llm.transformers;
+
+import com.example.llm.tokenization.Corpus;
+import com.example.llm.tokenization.VocabTrie;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Text to model input, as the app does it: truncated to one bucketed feature, or split into
+ * overlapping windows.
+ * */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FeatureConverterBenchmark {
+    private static final int MAX_SEQ_LEN = 512;
+    private static final int WINDOW_SIZE = MAX_SEQ_LEN - 2;
+    private static final int STRIDE = WINDOW_SIZE - 128;
+
+    @Param({"SHORT_SMS", "LONG_EMAIL", "UNICODE", "URLS"})
+    public Corpus corpus;
+
+    private String text;
+    private FeatureConverter converter;
+
+    @Setup
+    public void setUp() throws IOException {
+        VocabTrie vocab = Corpus.loadVocab();
+        text = corpus.text(42);
+        converter = new FeatureConverter(vocab, false, SequenceBuckets.defaults(MAX_SEQ_LEN));
+    }
+
+    @Benchmark
+    public Feature convert(){
+        return converter.convert(text, true);
+    }
+
+    @Benchmark
+    public List<Feature> convertWindows(){
+        return converter.convertWindows(text, WINDOW_SIZE, STRIDE);
+    }
+}
@@ -8,6 +8,13 @@ import java.util.Arrays;
 import java.util.List;
 
 public class BasicTokenizer {
+    /** {@link #classify(char)}: the char is dropped, as {@link #cleanText(String)} does. */
+    static final int SKIP = 0;
+    /** {@link #classify(char)}: the char ends the current token (whitespace or punctuation). */
+    static final int BREAK = 1;
+    /** {@link #classify(char)}: the char belongs to the current token. */
+    static final int KEEP = 2;
+
     private final boolean doLowerCase;
 
     public BasicTokenizer(boolean doLowerCase){
@@ -31,6 +38,22 @@ public class BasicTokenizer {
         return whitespaceTokenize(stringBuilder.toString());
     }
 
+    // single char view of cleanText, whitespaceTokenize and runSplitOnPunc for streaming callers
+    static int classify(char ch){
+        int flags = CharChecker.flags(ch);
+        if ((flags & (CharChecker.INVALID | CharChecker.CONTROL)) != 0){
+            return SKIP;
+        }
+        if ((flags & (CharChecker.WHITESPACE | CharChecker.PUNCTUATION)) != 0){
+            return BREAK;
+        }
+        return KEEP;
+    }
+
+    char normalize(char ch){
+        return doLowerCase ? Ascii.toLowerCase(ch) : ch;
+    }
+
     // performs invalid char removal and whitespace cleanup on text
     static String cleanText(String text){
         if (text==null){
@@ -40,13 +63,14 @@ public class BasicTokenizer {
         StringBuilder stringBuilder = new StringBuilder("");
         for (int index = 0; index < text.length(); index++) {
             char ch = text.charAt(index);
+            int flags = CharChecker.flags(ch);
 
             // Skip the characters that cannot be used.
-            if (CharChecker.isInvalid(ch) || CharChecker.isControl(ch)){
+            if ((flags & (CharChecker.INVALID | CharChecker.CONTROL)) != 0){
                 continue;
             }
 
-            if (CharChecker.isWhitespace(ch)){
+            if ((flags & CharChecker.WHITESPACE) != 0){
                 stringBuilder.append(" ");
             }
             else{
@@ -0,0 +1,120 @@
+package com.example.llm.tokenization;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+* To check whether a char is whitespace/control/punctuation
+*
+* Every char of the BMP is classified once, when the class is loaded, into a set of the flags
+* below, so the tokenizer's per-char checks are a table lookup instead of Character.getType.
+* The table is two-level: the high byte of a char picks one of the distinct 256-entry blocks,
+* which are shared by all the high bytes whose chars classify alike (most of the BMP is letters
+* with no flag set). Latin-1 chars index the first block directly.
+* */
+public class CharChecker {
+    /** {@link #flags(char)}: NUL or the replacement char U+FFFD. */
+    public static final int INVALID = 1;
+    /** {@link #flags(char)}: a control or format char that is not whitespace. */
+    public static final int CONTROL = 1 << 1;
+    public static final int WHITESPACE = 1 << 2;
+    public static final int PUNCTUATION = 1 << 3;
+
+    private static final int BLOCK_BITS = 8;
+    private static final int BLOCK_SIZE = 1 << BLOCK_BITS;
+    // Block number of every high byte; block 0 covers Latin-1.
+    private static final byte[] BLOCK_INDEX = new byte[BLOCK_SIZE];
+    private static final byte[] BLOCKS;
+
+    static {
+        Map<String, Integer> distinct = new HashMap<>();
+        byte[] blocks = new byte[BLOCK_SIZE * BLOCK_SIZE];
+        byte[] block = new byte[BLOCK_SIZE];
+        for (int high = 0; high < BLOCK_SIZE; high++) {
+            for (int low = 0; low < BLOCK_SIZE; low++) {
+                block[low] = (byte) computeFlags((char) (high << BLOCK_BITS | low));
+            }
+            // ISO-8859-1 maps every byte to one char, so it is a lossless key for a block.
+            String key = new String(block, StandardCharsets.ISO_8859_1);
+            Integer number = distinct.get(key);
+            if (number == null) {
+                number = distinct.size();
+                distinct.put(key, number);
+                System.arraycopy(block, 0, blocks, number << BLOCK_BITS, BLOCK_SIZE);
+            }
+            BLOCK_INDEX[high] = (byte) (int) number;
+        }
+        BLOCKS = Arrays.copyOf(blocks, distinct.size() << BLOCK_BITS);
+    }
+
+    /** The set of flags of ch, e.g. {@code (flags(ch) & (INVALID | CONTROL)) != 0}. */
+    public static int flags(char ch){
+        if (ch < BLOCK_SIZE) {
+            return BLOCKS[ch];
+        }
+        return BLOCKS[(BLOCK_INDEX[ch >>> BLOCK_BITS] & 0xff) << BLOCK_BITS | (ch & (BLOCK_SIZE - 1))];
+    }
+
+    /**
+     * To judge whether it's an empty or unknow character.
+     * */
+
+    public static boolean isInvalid(char ch) {
+        return (flags(ch) & INVALID) != 0;
+    }
+
+    /**
+     * To judge whether it's a control character (exclude whitespace)
+     * **/
+    public static  boolean isControl(char ch){
+        return (flags(ch) & CONTROL) != 0;
+    }
+
+    /**
+     * To judge whether it can be regarded as a whitespace
+     * **/
+    public static  boolean isWhitespace(char ch){
+        return (flags(ch) & WHITESPACE) != 0;
+    }
+
+    /**
+     * To judge whether it's a punctuation
+     * **/
+    public static  boolean isPunctuation(char ch){
+        return (flags(ch) & PUNCTUATION) != 0;
+    }
+
+    // The Character based checks the table is built from.
+    static int computeFlags(char ch){
+        int type = Character.getType(ch);
+        int flags = 0;
+        if (ch == 0 || ch == 0xfffd) {
+            flags |= INVALID;
+        }
+        if (Character.isWhitespace(ch)
+                || type == Character.SPACE_SEPARATOR
+                || type == Character.LINE_SEPARATOR
+                || type == Character.PARAGRAPH_SEPARATOR) {
+            flags |= WHITESPACE;
+        }
+        else if (type == Character.CONTROL || type == Character.FORMAT) {
+            flags |= CONTROL;
+        }
+        if (type == Character.CONNECTOR_PUNCTUATION
+                || type == Character.DASH_PUNCTUATION
+                || type == Character.START_PUNCTUATION
+                || type == Character.END_PUNCTUATION
+                || type == Character.INITIAL_QUOTE_PUNCTUATION
+                || type == Character.FINAL_QUOTE_PUNCTUATION
+                || type == Character.OTHER_PUNCTUATION) {
+            flags |= PUNCTUATION;
+        }
+        return flags;
+    }
+
+    private CharChecker(){
+
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.llm.tokenization;
+
+/**
+ * Approximate access counts for TinyLFU admission: a count-min sketch of 4-bit counters, four
+ * per key, sixteen to a long. All counters are halved once the additions reach ten times the
+ * table size, so the counts follow recent traffic instead of all-time totals.
+ *
+ * Updates are deliberately unsynchronized. A lost or torn update only makes one estimate a little
+ * off, which admission tolerates, and keeps hits as cheap as a few array writes.
+ * */
+final class FrequencySketch {
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int[] SEEDS = {0x97cb3127, 0xb4bd2a6b, 0x6c9c2cf5, 0xc2b2ae35};
+
+    private final long[] table;
+    private final int mask;
+    private final int sampleSize;
+    private int additions;
+
+    FrequencySketch(int expectedKeys){
+        int size = Integer.highestOneBit(Math.max(16, expectedKeys - 1)) << 1;
+        table = new long[size];
+        mask = size - 1;
+        sampleSize = 10 * size;
+    }
+
+    /** Estimated accesses of the key with this hash, from 0 to 15. */
+    int frequency(int hash){
+        int frequency = 15;
+        for (int i = 0; i < 4; i++) {
+            frequency = Math.min(frequency, (int) (table[index(hash, i)] >>> shift(hash, i)) & 15);
+        }
+        return frequency;
+    }
+
+    void increment(int hash){
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            int index = index(hash, i);
+            int shift = shift(hash, i);
+            long value = table[index];
+            if (((value >>> shift) & 15) != 15) {
+                table[index] = value + (1L << shift);
+                added = true;
+            }
+        }
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    private void reset(){
+        additions = 0;
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+    }
+
+    private int index(int hash, int i){
+        int h = (hash + SEEDS[i]) * SEEDS[i];
+        return (h ^ h >>> 16) & mask;
+    }
+
+    // Which of the sixteen counters of the long, taken from hash bits the index did not use.
+    private static int shift(int hash, int i){
+        return ((hash >>> (i << 3)) & 15) << 2;
+    }
+}
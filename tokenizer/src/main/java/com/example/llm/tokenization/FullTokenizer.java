@@ -0,0 +1,328 @@
+package com.example.llm.tokenization;
+
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/*
+* A java realization of Bert tokenization. Original python code:
+* https://github.com/google-research/bert/blob/master/tokenization.py run full tokenization to
+* tokenize a String into split subtokes or ids.
+*
+* Safe to share across threads without locking: the vocabulary is an immutable {@link VocabTrie},
+* the word cache is lock-free and the buffers of a call are per thread. The Map constructors take
+* a snapshot, so later changes to the map are not seen.
+* **/
+public class FullTokenizer {
+    private final BasicTokenizer basicTokenizer;
+    private final WorkPieceTokenizer workPieceTokenizer;
+    private final int unknownId;
+    private final WordPieceCache wordCache; // null when disabled
+
+    // Per-thread buffers so that streaming tokenization does not allocate per token or per call.
+    private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
+    public FullTokenizer(Map<String, Integer> inputDic, boolean doLowerCase){
+        this(VocabTrie.build(inputDic), doLowerCase);
+    }
+
+    public FullTokenizer(VocabTrie vocab, boolean doLowerCase){
+        this(vocab, doLowerCase, 0);
+    }
+
+    /**
+     * @param wordCacheSize how many words keep their wordpieces in a {@link WordPieceCache};
+     *                      0 disables the cache.
+     */
+    public FullTokenizer(VocabTrie vocab, boolean doLowerCase, int wordCacheSize){
+        basicTokenizer = new BasicTokenizer(doLowerCase);
+        workPieceTokenizer = new WorkPieceTokenizer(vocab);
+        unknownId = workPieceTokenizer.unknownId();
+        wordCache = wordCacheSize > 0 ? new WordPieceCache(wordCacheSize) : null;
+    }
+
+    public List<String> tokenize(String text){
+        if (text==null){
+            throw new NullPointerException("The input string is null!!!");
+        }
+        StringSink sink = new StringSink();
+        stream(text, sink);
+        return sink.tokens;
+    }
+
+    /**
+     * Tokenizes text in a single pass and writes the wordpiece ids to out[offset, offset+maxIds).
+     * Gives the same ids as convertTokensToIds(tokenize(text)), truncated to maxIds.
+     *
+     * @return the number of ids written.
+     */
+    public int tokenizeToIds(CharSequence text, int[] out, int offset, int maxIds){
+        IntArraySink sink = scratch.get().intArraySink;
+        sink.reset(out, offset, offset + maxIds);
+        stream(text, sink);
+        int written = sink.position - offset;
+        sink.reset(null, 0, 0);
+        return written;
+    }
+
+    /** Same as {@link #tokenizeToIds(CharSequence, int[], int, int)}, filling out up to its limit. */
+    public int tokenizeToIds(CharSequence text, IntBuffer out){
+        IntBufferSink sink = scratch.get().intBufferSink;
+        int start = out.position();
+        sink.out = out;
+        stream(text, sink);
+        sink.out = null;
+        return out.position() - start;
+    }
+
+    /** Same as {@link #tokenizeToIds(CharSequence, int[], int, int)}, filling out up to its limit. */
+    public int tokenizeToIds(CharSequence text, LongBuffer out){
+        LongBufferSink sink = scratch.get().longBufferSink;
+        int start = out.position();
+        sink.out = out;
+        stream(text, sink);
+        sink.out = null;
+        return out.position() - start;
+    }
+
+    /** Receives the ids of each basic word together with the span of text it came from. */
+    public interface WordListener {
+        /** ids[0, idCount) are only valid during the call. */
+        void onWord(int charStart, int charEnd, int[] ids, int idCount);
+    }
+
+    /**
+     * Tokenizes text[from, to) and reports each basic word, so that callers can keep ids per word
+     * and re-tokenize only part of a text. from and to should lie on word boundaries.
+     */
+    public void tokenizeWords(CharSequence text, int from, int to, WordListener listener){
+        WordSink sink = scratch.get().wordSink;
+        sink.listener = listener;
+        sink.count = 0;
+        stream(text, from, to, sink);
+        sink.listener = null;
+    }
+
+    public List<Integer> convertTokensToIds(List<String> tokens){
+        List<Integer> outputIds = new ArrayList<>();
+        for(String token: tokens){
+            int id = workPieceTokenizer.tokenId(token);
+            if(id >= 0){
+                outputIds.add(id);
+            }
+        }
+        return outputIds;
+    }
+
+    public List<String> addSpecialToken(List<String> tokens, int maxLen){
+        return workPieceTokenizer.addSpecialToken(tokens, maxLen);
+    }
+
+    /** @return the word cache, e.g. for its hit rate, or null if disabled. */
+    public WordPieceCache getWordCache(){
+        return wordCache;
+    }
+
+    public int clsId(){
+        return workPieceTokenizer.clsId();
+    }
+
+    public int sepId(){
+        return workPieceTokenizer.sepId();
+    }
+
+    // clean, lowercase, punctuation split and wordpiece in one walk over the chars
+    private void stream(CharSequence text, PieceSink sink){
+        stream(text, 0, text.length(), sink);
+    }
+
+    private void stream(CharSequence text, int from, int to, PieceSink sink){
+        Scratch s = scratch.get();
+        char[] word = s.word;
+        int length = 0;
+        int wordStart = from;
+        int wordEnd = from;
+        for (int i = from; i < to; i++) {
+            char ch = text.charAt(i);
+            switch (BasicTokenizer.classify(ch)) {
+                case BasicTokenizer.SKIP:
+                    break;
+                case BasicTokenizer.BREAK:
+                    if (length > 0) {
+                        if (!emitWord(s, length, sink) || !sink.endWord(wordStart, wordEnd)) {
+                            return;
+                        }
+                        length = 0;
+                    }
+                    break;
+                default:
+                    if (length == 0) {
+                        wordStart = i;
+                    }
+                    wordEnd = i + 1;
+                    // Only the first MAX_INPUTCHARS_PER_WORD + 1 chars are needed to spot an [UNK].
+                    if (length < word.length) {
+                        word[length] = basicTokenizer.normalize(ch);
+                    }
+                    length++;
+                    break;
+            }
+        }
+        if (length > 0 && emitWord(s, length, sink)) {
+            sink.endWord(wordStart, wordEnd);
+        }
+    }
+
+    private boolean emitWord(Scratch s, int length, PieceSink sink){
+        int[] pieceIds = s.pieceIds;
+        int[] pieceEnds = s.pieceEnds;
+        int count;
+        // Longer words are truncated in s.word and always [UNK], so they are not worth a lookup.
+        if (wordCache != null && length <= WorkPieceTokenizer.MAX_INPUTCHARS_PER_WORD) {
+            int hash = WordPieceCache.hash(s.word, length);
+            WordPieceCache.Entry entry = wordCache.get(s.word, length, hash);
+            if (entry != null) {
+                pieceIds = entry.ids;
+                pieceEnds = entry.ends;
+                count = pieceIds == null ? -1 : pieceIds.length;
+            } else {
+                count = workPieceTokenizer.tokenize(s.word, length, pieceIds, pieceEnds);
+                wordCache.put(s.word, length, hash, count, pieceIds, pieceEnds);
+            }
+        } else {
+            count = workPieceTokenizer.tokenize(s.word, length, pieceIds, pieceEnds);
+        }
+        if (count < 0) {
+            return sink.accept(unknownId, null, 0, 0);
+        }
+        int start = 0;
+        for (int i = 0; i < count; i++) {
+            if (!sink.accept(pieceIds[i], s.word, start, pieceEnds[i])) {
+                return false;
+            }
+            start = pieceEnds[i];
+        }
+        return true;
+    }
+
+    /** Receives each wordpiece; word is null for [UNK]. Returning false stops tokenizing. */
+    private abstract static class PieceSink {
+        abstract boolean accept(int id, char[] word, int start, int end);
+
+        /** Called after the pieces of the word spanning text[charStart, charEnd). */
+        boolean endWord(int charStart, int charEnd){
+            return true;
+        }
+    }
+
+    private static final class Scratch {
+        final char[] word = new char[WorkPieceTokenizer.MAX_INPUTCHARS_PER_WORD + 1];
+        final int[] pieceIds = new int[WorkPieceTokenizer.MAX_INPUTCHARS_PER_WORD];
+        final int[] pieceEnds = new int[WorkPieceTokenizer.MAX_INPUTCHARS_PER_WORD];
+        final IntArraySink intArraySink = new IntArraySink();
+        final IntBufferSink intBufferSink = new IntBufferSink();
+        final LongBufferSink longBufferSink = new LongBufferSink();
+        final WordSink wordSink = new WordSink();
+    }
+
+    private static final class StringSink extends PieceSink {
+        final List<String> tokens = new ArrayList<>();
+
+        @Override
+        boolean accept(int id, char[] word, int start, int end) {
+            if (word == null) {
+                tokens.add(WorkPieceTokenizer.UNKNOWN_TOKEN);
+            } else if (start == 0) {
+                tokens.add(new String(word, start, end - start));
+            } else {
+                tokens.add("##" + new String(word, start, end - start));
+            }
+            return true;
+        }
+    }
+
+    // Ids missing from the vocabulary (an absent [UNK]) are dropped, as convertTokensToIds does.
+    private static final class IntArraySink extends PieceSink {
+        int[] out;
+        int position;
+        int limit;
+
+        void reset(int[] out, int position, int limit){
+            this.out = out;
+            this.position = position;
+            this.limit = limit;
+        }
+
+        @Override
+        boolean accept(int id, char[] word, int start, int end) {
+            if (id < 0) {
+                return true;
+            }
+            if (position >= limit) {
+                return false;
+            }
+            out[position++] = id;
+            return true;
+        }
+    }
+
+    private static final class IntBufferSink extends PieceSink {
+        IntBuffer out;
+
+        @Override
+        boolean accept(int id, char[] word, int start, int end) {
+            if (id < 0) {
+                return true;
+            }
+            if (!out.hasRemaining()) {
+                return false;
+            }
+            out.put(id);
+            return true;
+        }
+    }
+
+    private static final class LongBufferSink extends PieceSink {
+        LongBuffer out;
+
+        @Override
+        boolean accept(int id, char[] word, int start, int end) {
+            if (id < 0) {
+                return true;
+            }
+            if (!out.hasRemaining()) {
+                return false;
+            }
+            out.put(id);
+            return true;
+        }
+    }
+
+    private static final class WordSink extends PieceSink {
+        final int[] ids = new int[WorkPieceTokenizer.MAX_INPUTCHARS_PER_WORD];
+        WordListener listener;
+        int count;
+
+        @Override
+        boolean accept(int id, char[] word, int start, int end) {
+            if (id >= 0) {
+                ids[count++] = id;
+            }
+            return true;
+        }
+
+        @Override
+        boolean endWord(int charStart, int charEnd) {
+            listener.onWord(charStart, charEnd, ids, count);
+            count = 0;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.llm.tokenization;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the wordpiece ids of a text that is being edited, re-tokenizing only the words touched by
+ * each edit. Edits are described as in TextWatcher.onTextChanged: count chars starting at start
+ * replaced before chars of the previous text.
+ *
+ * Ids are kept per basic word. An edit re-tokenizes the span between the whitespace or
+ * punctuation that surrounds it, and the ids of the words before and after are reused.
+ *
+ * Not thread-safe; use it from the thread that receives the edits and hand out
+ * {@link #copyIds()} snapshots.
+ * */
+public class IncrementalTokenizer {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final FullTokenizer tokenizer;
+
+    // Per word: char span in the current text and number of ids. Ids of all words, in order.
+    private int wordCount;
+    private int[] wordStarts = new int[INITIAL_CAPACITY];
+    private int[] wordEnds = new int[INITIAL_CAPACITY];
+    private int[] wordIdCounts = new int[INITIAL_CAPACITY];
+    private int idCount;
+    private int[] ids = new int[INITIAL_CAPACITY];
+    private int textLength;
+    private long retokenizedChars;
+
+    // Output of the region being re-tokenized, merged back by splice().
+    private int newWordCount;
+    private int[] newWordStarts = new int[INITIAL_CAPACITY];
+    private int[] newWordEnds = new int[INITIAL_CAPACITY];
+    private int[] newWordIdCounts = new int[INITIAL_CAPACITY];
+    private int newIdCount;
+    private int[] newIds = new int[INITIAL_CAPACITY];
+
+    private final FullTokenizer.WordListener collector = new FullTokenizer.WordListener() {
+        @Override
+        public void onWord(int charStart, int charEnd, int[] pieceIds, int pieceCount) {
+            if (newWordCount == newWordStarts.length) {
+                newWordStarts = Arrays.copyOf(newWordStarts, newWordCount * 2);
+                newWordEnds = Arrays.copyOf(newWordEnds, newWordCount * 2);
+                newWordIdCounts = Arrays.copyOf(newWordIdCounts, newWordCount * 2);
+            }
+            if (newIdCount + pieceCount > newIds.length) {
+                newIds = Arrays.copyOf(newIds, Math.max(newIds.length * 2, newIdCount + pieceCount));
+            }
+            newWordStarts[newWordCount] = charStart;
+            newWordEnds[newWordCount] = charEnd;
+            newWordIdCounts[newWordCount] = pieceCount;
+            newWordCount++;
+            System.arraycopy(pieceIds, 0, newIds, newIdCount, pieceCount);
+            newIdCount += pieceCount;
+        }
+    };
+
+    public IncrementalTokenizer(FullTokenizer tokenizer){
+        this.tokenizer = tokenizer;
+    }
+
+    /** Tokenizes the whole text, dropping any previous state. */
+    public void reset(CharSequence text){
+        wordCount = 0;
+        idCount = 0;
+        textLength = 0;
+        update(text, 0, 0, text.length());
+    }
+
+    /**
+     * Applies an edit: text is the new content, in which count chars at start replaced before
+     * chars of the previous content.
+     */
+    public void update(CharSequence text, int start, int before, int count){
+        int delta = count - before;
+        if (textLength + delta != text.length() || start + before > textLength) {
+            // The edit does not describe a change from the text we hold; start over.
+            wordCount = 0;
+            idCount = 0;
+            start = 0;
+            before = textLength;
+            count = text.length();
+            delta = count - before;
+        }
+
+        // Widen the edit to the surrounding word breaks of the new text.
+        int regionStart = start;
+        while (regionStart > 0 && !isBreak(text.charAt(regionStart - 1))) {
+            regionStart--;
+        }
+        int regionEnd = start + count;
+        while (regionEnd < text.length() && !isBreak(text.charAt(regionEnd))) {
+            regionEnd++;
+        }
+
+        newWordCount = 0;
+        newIdCount = 0;
+        tokenizer.tokenizeWords(text, regionStart, regionEnd, collector);
+        retokenizedChars += regionEnd - regionStart;
+
+        // Old words entirely before the region are kept; those after it are kept and shifted.
+        int oldRegionEnd = regionEnd - delta;
+        int prefixWords = 0;
+        int prefixIds = 0;
+        while (prefixWords < wordCount && wordEnds[prefixWords] <= regionStart) {
+            prefixIds += wordIdCounts[prefixWords];
+            prefixWords++;
+        }
+        int suffixWords = 0;
+        int suffixIds = 0;
+        while (suffixWords < wordCount - prefixWords
+                && wordStarts[wordCount - 1 - suffixWords] >= oldRegionEnd) {
+            suffixIds += wordIdCounts[wordCount - 1 - suffixWords];
+            suffixWords++;
+        }
+        splice(prefixWords, prefixIds, suffixWords, suffixIds, delta);
+        textLength = text.length();
+    }
+
+    public int idCount(){
+        return idCount;
+    }
+
+    /** Copies up to maxIds of the current ids into out and returns how many were copied. */
+    public int copyIds(int[] out, int offset, int maxIds){
+        int n = Math.min(idCount, maxIds);
+        System.arraycopy(ids, 0, out, offset, n);
+        return n;
+    }
+
+    public int[] copyIds(){
+        return Arrays.copyOf(ids, idCount);
+    }
+
+    /** Total chars tokenized so far, to compare against re-tokenizing the full text per edit. */
+    public long getRetokenizedChars(){
+        return retokenizedChars;
+    }
+
+    private static boolean isBreak(char ch){
+        return BasicTokenizer.classify(ch) == BasicTokenizer.BREAK;
+    }
+
+    private void splice(int prefixWords, int prefixIds, int suffixWords, int suffixIds, int delta){
+        int totalWords = prefixWords + newWordCount + suffixWords;
+        int totalIds = prefixIds + newIdCount + suffixIds;
+        int suffixWordFrom = wordCount - suffixWords;
+        int suffixIdFrom = idCount - suffixIds;
+
+        if (totalWords > wordStarts.length) {
+            int capacity = Math.max(totalWords, wordStarts.length * 2);
+            wordStarts = Arrays.copyOf(wordStarts, capacity);
+            wordEnds = Arrays.copyOf(wordEnds, capacity);
+            wordIdCounts = Arrays.copyOf(wordIdCounts, capacity);
+        }
+        if (totalIds > ids.length) {
+            ids = Arrays.copyOf(ids, Math.max(totalIds, ids.length * 2));
+        }
+
+        // Move the suffix into place first; arraycopy handles the overlap.
+        int suffixWordTo = prefixWords + newWordCount;
+        System.arraycopy(wordStarts, suffixWordFrom, wordStarts, suffixWordTo, suffixWords);
+        System.arraycopy(wordEnds, suffixWordFrom, wordEnds, suffixWordTo, suffixWords);
+        System.arraycopy(wordIdCounts, suffixWordFrom, wordIdCounts, suffixWordTo, suffixWords);
+        System.arraycopy(ids, suffixIdFrom, ids, prefixIds + newIdCount, suffixIds);
+        for (int i = suffixWordTo; i < totalWords; i++) {
+            wordStarts[i] += delta;
+            wordEnds[i] += delta;
+        }
+
+        System.arraycopy(newWordStarts, 0, wordStarts, prefixWords, newWordCount);
+        System.arraycopy(newWordEnds, 0, wordEnds, prefixWords, newWordCount);
+        System.arraycopy(newWordIdCounts, 0, wordIdCounts, prefixWords, newWordCount);
+        System.arraycopy(newIds, 0, ids, prefixIds, newIdCount);
+        wordCount = totalWords;
+        idCount = totalIds;
+    }
+}
@@ -0,0 +1,295 @@
+package com.example.llm.tokenization;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A compact, read-only prefix automaton over the wordpiece vocabulary.
+ *
+ * Nodes are laid out in breadth-first order so that the children of node i occupy the contiguous,
+ * label-sorted range [childStart[i], childStart[i+1]). A lookup walks the chars once and keeps the
+ * last node that carries an id, which gives the greedy longest match without building any
+ * substring.
+ *
+ * The same arrays are the binary vocabulary format written by {@link #compile(InputStream,
+ * OutputStream)} at build time: a little-endian header (magic, version, entry count, node count)
+ * followed by childStart, ids and labels. {@link #load(ByteBuffer)} queries those sections in
+ * place, so a memory-mapped file is usable without parsing or building a Map.
+ *
+ * A trie is an immutable snapshot of one vocabulary: lookups only use absolute reads, so one
+ * instance can be shared by any number of threads. A new vocabulary is a new trie, swapped in
+ * together with the model it belongs to, never an update of this one.
+ * */
+public final class VocabTrie {
+    static final int NO_ID = -1;
+    private static final int ROOT = 0;
+    private static final String CONTINUATION_PREFIX = "##";
+    private static final int MAGIC = 0x42434f56; // "VOCB"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+
+    private final IntBuffer childStart;
+    private final CharBuffer labels;
+    private final IntBuffer ids;
+    // The arrays behind the buffers of a trie built on the heap, null for one loaded from a
+    // (mapped) buffer. Lookups index them directly instead of calling the buffers per node.
+    private final int[] childStartArray;
+    private final char[] labelArray;
+    private final int[] idArray;
+    private final int size;
+    private final int continuationRoot;
+
+    VocabTrie(IntBuffer childStart, CharBuffer labels, IntBuffer ids, int size){
+        this.childStart = childStart;
+        this.labels = labels;
+        this.ids = ids;
+        // Only build() wraps whole arrays; the views load() creates have none.
+        boolean heap = childStart.hasArray() && labels.hasArray() && ids.hasArray();
+        this.childStartArray = heap ? childStart.array() : null;
+        this.labelArray = heap ? labels.array() : null;
+        this.idArray = heap ? ids.array() : null;
+        this.size = size;
+        this.continuationRoot = walk(ROOT, CONTINUATION_PREFIX, 0, CONTINUATION_PREFIX.length());
+    }
+
+    public static VocabTrie build(Map<String, Integer> vocab){
+        Builder root = new Builder();
+        for (Map.Entry<String, Integer> entry : vocab.entrySet()) {
+            Builder node = root;
+            String key = entry.getKey();
+            for (int i = 0; i < key.length(); i++) {
+                node = node.child(key.charAt(i));
+            }
+            node.id = entry.getValue();
+        }
+
+        // Flatten breadth-first so that every node's children end up next to each other.
+        List<Builder> order = new ArrayList<>();
+        order.add(root);
+        for (int i = 0; i < order.size(); i++) {
+            order.addAll(order.get(i).children.values());
+        }
+
+        int nodeCount = order.size();
+        int[] childStart = new int[nodeCount + 1];
+        char[] labels = new char[nodeCount];
+        int[] ids = new int[nodeCount];
+        int next = 1;
+        for (int i = 0; i < nodeCount; i++) {
+            Builder node = order.get(i);
+            childStart[i] = next;
+            labels[i] = node.label;
+            ids[i] = node.id;
+            next += node.children.size();
+        }
+        childStart[nodeCount] = next;
+        return new VocabTrie(IntBuffer.wrap(childStart), CharBuffer.wrap(labels), IntBuffer.wrap(ids),
+                vocab.size());
+    }
+
+    /** Builds the trie from vocab.txt, one token per line with the line number as its id. */
+    public static VocabTrie readText(InputStream text) throws IOException {
+        Map<String, Integer> vocab = new HashMap<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(text, StandardCharsets.UTF_8));
+        int index = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            vocab.put(line, index++);
+        }
+        return build(vocab);
+    }
+
+    /** Converts vocab.txt into the binary format read by {@link #load(ByteBuffer)}. */
+    public static void compile(InputStream text, OutputStream binary) throws IOException {
+        readText(text).writeTo(binary);
+    }
+
+    /**
+     * Wraps a buffer holding the binary format, typically a MappedByteBuffer. The buffer is used
+     * in place and must stay unmodified for the lifetime of the trie.
+     */
+    public static VocabTrie load(ByteBuffer buffer) throws IOException {
+        ByteBuffer data = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (data.remaining() < HEADER_BYTES || data.getInt(0) != MAGIC) {
+            throw new IOException("Not a binary vocabulary");
+        }
+        if (data.getInt(4) != VERSION) {
+            throw new IOException("Unsupported binary vocabulary version " + data.getInt(4));
+        }
+        int size = data.getInt(8);
+        int nodeCount = data.getInt(12);
+        long expected = HEADER_BYTES + 4L * (nodeCount + 1) + 4L * nodeCount + 2L * nodeCount;
+        if (nodeCount <= 0 || data.remaining() < expected) {
+            throw new IOException("Truncated binary vocabulary");
+        }
+
+        data.position(HEADER_BYTES);
+        IntBuffer childStart = section(data, 4 * (nodeCount + 1)).asIntBuffer();
+        IntBuffer ids = section(data, 4 * nodeCount).asIntBuffer();
+        CharBuffer labels = section(data, 2 * nodeCount).asCharBuffer();
+        return new VocabTrie(childStart, labels, ids, size);
+    }
+
+    public void writeTo(OutputStream binary) throws IOException {
+        int nodeCount = labels.limit();
+        ByteBuffer data = ByteBuffer.allocate(HEADER_BYTES + 4 * (nodeCount + 1) + 4 * nodeCount
+                + 2 * nodeCount).order(ByteOrder.LITTLE_ENDIAN);
+        data.putInt(MAGIC).putInt(VERSION).putInt(size).putInt(nodeCount);
+        for (int i = 0; i <= nodeCount; i++) {
+            data.putInt(childStart.get(i));
+        }
+        for (int i = 0; i < nodeCount; i++) {
+            data.putInt(ids.get(i));
+        }
+        for (int i = 0; i < nodeCount; i++) {
+            data.putChar(labels.get(i));
+        }
+        binary.write(data.array());
+        binary.flush();
+    }
+
+    private static ByteBuffer section(ByteBuffer data, int bytes){
+        ByteBuffer slice = data.slice().order(ByteOrder.LITTLE_ENDIAN);
+        slice.limit(bytes);
+        data.position(data.position() + bytes);
+        return slice;
+    }
+
+    /** Number of entries in the vocabulary. */
+    public int size(){
+        return size;
+    }
+
+    /** Returns the id of the exact entry, or -1 if it is not in the vocabulary. */
+    public int get(CharSequence token){
+        int node = walk(ROOT, token, 0, token.length());
+        return node < 0 ? NO_ID : id(node);
+    }
+
+    /**
+     * Finds the longest vocabulary entry that is a prefix of text[start, end). When
+     * continuation is set the entry is looked up with the "##" prefix, as for the non-initial
+     * pieces of a word.
+     *
+     * @return the packed match (see {@link #matchId(long)} and {@link #matchLength(long)}), or -1.
+     */
+    public long longestMatch(CharSequence text, int start, int end, boolean continuation){
+        int node = continuation ? continuationRoot : ROOT;
+        long best = -1L;
+        for (int i = start; i < end && node >= 0; i++) {
+            node = findChild(node, text.charAt(i));
+            if (node >= 0) {
+                int id = id(node);
+                if (id != NO_ID) {
+                    best = pack(id, i + 1 - start);
+                }
+            }
+        }
+        return best;
+    }
+
+    /** Same as {@link #longestMatch(CharSequence, int, int, boolean)} over a char array. */
+    public long longestMatch(char[] text, int start, int end, boolean continuation){
+        int node = continuation ? continuationRoot : ROOT;
+        long best = -1L;
+        for (int i = start; i < end && node >= 0; i++) {
+            node = findChild(node, text[i]);
+            if (node >= 0) {
+                int id = id(node);
+                if (id != NO_ID) {
+                    best = pack(id, i + 1 - start);
+                }
+            }
+        }
+        return best;
+    }
+
+    public static int matchId(long match){
+        return (int) (match >>> 32);
+    }
+
+    public static int matchLength(long match){
+        return (int) match;
+    }
+
+    private static long pack(int id, int length){
+        return ((long) id << 32) | (length & 0xffffffffL);
+    }
+
+    private int walk(int node, CharSequence text, int start, int end){
+        for (int i = start; i < end && node >= 0; i++) {
+            node = findChild(node, text.charAt(i));
+        }
+        return node;
+    }
+
+    private int id(int node){
+        return idArray != null ? idArray[node] : ids.get(node);
+    }
+
+    private int findChild(int node, char ch){
+        if (labelArray != null) {
+            return findChild(childStartArray, labelArray, node, ch);
+        }
+        int low = childStart.get(node);
+        int high = childStart.get(node + 1) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            char label = labels.get(mid);
+            if (label < ch) {
+                low = mid + 1;
+            } else if (label > ch) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private static int findChild(int[] childStart, char[] labels, int node, char ch){
+        int low = childStart[node];
+        int high = childStart[node + 1] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            char label = labels[mid];
+            if (label < ch) {
+                low = mid + 1;
+            } else if (label > ch) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private static final class Builder {
+        private final TreeMap<Character, Builder> children = new TreeMap<>();
+        private char label;
+        private int id = NO_ID;
+
+        Builder child(char ch){
+            Builder node = children.get(ch);
+            if (node == null) {
+                node = new Builder();
+                node.label = ch;
+                children.put(ch, node);
+            }
+            return node;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.llm.tokenization;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Memoizes the wordpieces of basic words for a {@link FullTokenizer}, so the common words of a
+ * Zipfian text skip the greedy longest-match walk. A word maps to its piece ids and piece ends
+ * as int arrays.
+ *
+ * The table is set associative: a word hashes to one bucket of {@link #WAYS} slots, each holding
+ * an immutable entry. Lookups read the slots without locking, and writers swap whole entries
+ * with compare-and-set, so a reader sees either the old entry or the new one. When a bucket is
+ * full, a new word takes the slot of the bucket's least frequent entry only if a {@link
+ * FrequencySketch} estimates it to be more frequent (TinyLFU admission). One-off tokens such as
+ * URLs and hashes are therefore rejected instead of evicting hot words.
+ *
+ * Memory is bounded by the entry count, and each entry by the longest word the tokenizer keeps
+ * (MAX_INPUTCHARS_PER_WORD chars).
+ * */
+public final class WordPieceCache {
+    public static final int WAYS = 4;
+
+    private final AtomicReferenceArray<Entry> slots;
+    private final int bucketMask;
+    private final FrequencySketch sketch;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+
+    /** The wordpieces of one word; ids is null when the word becomes [UNK]. */
+    static final class Entry {
+        final char[] word;
+        final int hash;
+        final int[] ids;
+        final int[] ends;
+
+        Entry(char[] word, int hash, int[] ids, int[] ends){
+            this.word = word;
+            this.hash = hash;
+            this.ids = ids;
+            this.ends = ends;
+        }
+
+        boolean matches(char[] other, int length, int otherHash){
+            if (hash != otherHash || word.length != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (word[i] != other[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /** @param maxEntries rounded up to a power of two of at least {@link #WAYS}. */
+    public WordPieceCache(int maxEntries){
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive");
+        }
+        int buckets = 1;
+        while (buckets * WAYS < maxEntries) {
+            buckets <<= 1;
+        }
+        slots = new AtomicReferenceArray<>(buckets * WAYS);
+        bucketMask = buckets - 1;
+        sketch = new FrequencySketch(buckets * WAYS);
+    }
+
+    static int hash(char[] word, int length){
+        int h = 0;
+        for (int i = 0; i < length; i++) {
+            h = 31 * h + word[i];
+        }
+        // Spread the bits, since the bucket comes from the low ones.
+        h *= 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    /** @return the entry of word[0, length), or null if it is not cached. */
+    Entry get(char[] word, int length, int hash){
+        sketch.increment(hash);
+        int first = (hash & bucketMask) * WAYS;
+        for (int slot = first; slot < first + WAYS; slot++) {
+            Entry entry = slots.get(slot);
+            if (entry != null && entry.matches(word, length, hash)) {
+                hits.increment();
+                return entry;
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Offers the pieces of word[0, length) after a miss; count is -1 for [UNK]. The arrays are
+     * copied.
+     */
+    void put(char[] word, int length, int hash, int count, int[] pieceIds, int[] pieceEnds){
+        int first = (hash & bucketMask) * WAYS;
+        int victim = -1;
+        Entry victimEntry = null;
+        int victimFrequency = Integer.MAX_VALUE;
+        for (int slot = first; slot < first + WAYS; slot++) {
+            Entry entry = slots.get(slot);
+            if (entry == null) {
+                victim = slot;
+                victimEntry = null;
+                victimFrequency = -1;
+                break;
+            }
+            if (entry.matches(word, length, hash)) {
+                return; // another thread cached it meanwhile
+            }
+            int frequency = sketch.frequency(entry.hash);
+            if (frequency < victimFrequency) {
+                victim = slot;
+                victimEntry = entry;
+                victimFrequency = frequency;
+            }
+        }
+        if (victimFrequency >= 0 && sketch.frequency(hash) <= victimFrequency) {
+            rejections.increment();
+            return;
+        }
+        Entry entry = count < 0
+                ? new Entry(Arrays.copyOf(word, length), hash, null, null)
+                : new Entry(Arrays.copyOf(word, length), hash,
+                        Arrays.copyOf(pieceIds, count), Arrays.copyOf(pieceEnds, count));
+        // Losing the race to another writer just leaves its entry in place.
+        slots.compareAndSet(victim, victimEntry, entry);
+    }
+
+    public int capacity(){
+        return slots.length();
+    }
+
+    public long getHitCount(){
+        return hits.sum();
+    }
+
+    public long getMissCount(){
+        return misses.sum();
+    }
+
+    /** Misses that were not cached because the word was less frequent than its bucket's entries. */
+    public long getRejectionCount(){
+        return rejections.sum();
+    }
+
+    public double getHitRate(){
+        long hitCount = hits.sum();
+        long lookups = hitCount + misses.sum();
+        return lookups == 0 ? 0 : (double) hitCount / lookups;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%d entries, %d hits, %d misses (%.1f%%), %d rejected",
+                capacity(), getHitCount(), getMissCount(), 100 * getHitRate(), getRejectionCount());
+    }
+}
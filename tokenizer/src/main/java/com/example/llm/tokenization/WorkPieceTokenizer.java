@@ -4,15 +4,21 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * Greedy longest-match wordpiece splitting over an immutable {@link VocabTrie}. Holds no mutable
+ * state, so one instance can serve any number of threads; the Map constructor takes a snapshot.
+ * */
 public class WorkPieceTokenizer {
-    private final Map<String, Integer> dic;
-    private static final String UNKNOWN_TOKEN = "[UNK]";
+    private final VocabTrie trie;
+    static final String UNKNOWN_TOKEN = "[UNK]";
     private static final String CLS = "[CLS]";
     private static final String SEP = "[SEP]";
     private static final int EXTRA_ID_NUM = 2;
-    private static final int MAX_INPUTCHARS_PER_WORD = 100;
+    static final int MAX_INPUTCHARS_PER_WORD = 100;
 
-    public WorkPieceTokenizer(Map<String,Integer> vocab){ dic = vocab; }
+    public WorkPieceTokenizer(Map<String,Integer> vocab){ this(VocabTrie.build(vocab)); }
+
+    public WorkPieceTokenizer(VocabTrie vocab){ trie = vocab; }
 
     /**
      * Tokenizes a piece of text into its word pieces. This uses a greedy longest-match-first
@@ -39,25 +45,19 @@ public class WorkPieceTokenizer {
             List<String> subTokens = new ArrayList<>();
 
             while(start< token.length()){
-                String curSubStr = "";
-
-                int end = token.length(); // Longer substring matches first.
-                while(start<end){
-                    String subStr =
-                            (start==0) ? token.substring(start,end) : "##" + token.substring(start,end);
-                    if(dic.containsKey(subStr)){
-                        curSubStr = subStr;
-                        break;
-                    }
-                    end--;
-                }
+                // Longer substring matches first: the trie walk keeps the longest known piece.
+                long match = trie.longestMatch(token, start, token.length(), start > 0);
 
                 // the word doesn't contain any known subwords
-                if(curSubStr.isEmpty()){
+                if(match < 0){
                     isBad = true;
                     break;
                 }
 
+                int end = start + VocabTrie.matchLength(match);
+                String curSubStr =
+                        (start==0) ? token.substring(start,end) : "##" + token.substring(start,end);
+
                 // curSubStr is the longest subword that can be found
                 subTokens.add(curSubStr);
 
@@ -75,6 +75,48 @@ public class WorkPieceTokenizer {
         return outputTokens;
     }
 
+    /**
+     * Allocation-free variant of {@link #tokenize(String)} for a single word held in a char buffer.
+     * The id and the exclusive end offset of each piece are written to pieceIds and pieceEnds,
+     * which must hold at least {@link #MAX_INPUTCHARS_PER_WORD} entries.
+     *
+     * @return the number of pieces, or -1 if the word has to be replaced by [UNK].
+     */
+    public int tokenize(char[] word, int length, int[] pieceIds, int[] pieceEnds){
+        if(length > MAX_INPUTCHARS_PER_WORD){
+            return -1;
+        }
+        int count = 0;
+        int start = 0;
+        while(start < length){
+            long match = trie.longestMatch(word, start, length, start > 0);
+            if(match < 0){
+                return -1;
+            }
+            start += VocabTrie.matchLength(match);
+            pieceIds[count] = VocabTrie.matchId(match);
+            pieceEnds[count] = start;
+            count++;
+        }
+        return count;
+    }
+
+    public int tokenId(CharSequence token){
+        return trie.get(token);
+    }
+
+    public int unknownId(){
+        return trie.get(UNKNOWN_TOKEN);
+    }
+
+    public int clsId(){
+        return trie.get(CLS);
+    }
+
+    public int sepId(){
+        return trie.get(SEP);
+    }
+
     public List<String> addSpecialToken(List<String> tokens, int maxLen){
         List<String> outputTokens = new ArrayList<>();
 
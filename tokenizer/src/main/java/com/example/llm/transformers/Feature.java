@@ -0,0 +1,28 @@
+package com.example.llm.transformers;
+
+import com.google.common.primitives.Ints;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class Feature {
+    public int[] inputIds;
+    public int[] attentionMask; // 1 for the first tokenCount positions, 0 for padding
+    public int tokenCount;
+
+    public Feature(List<Integer> inputIds){
+        this(Ints.toArray(inputIds));
+    }
+
+    public Feature(int[] inputIds){
+        this(inputIds, inputIds.length);
+    }
+
+    /** inputIds[tokenCount, inputIds.length) is padding. */
+    public Feature(int[] inputIds, int tokenCount){
+        this.inputIds = inputIds;
+        this.tokenCount = tokenCount;
+        this.attentionMask = new int[inputIds.length];
+        Arrays.fill(this.attentionMask, 0, tokenCount, 1);
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.llm.transformers;
+
+import com.example.llm.metrics.MetricsRegistry;
+import com.example.llm.metrics.Timer;
+import com.example.llm.tokenization.FullTokenizer;
+import com.example.llm.tokenization.VocabTrie;
+import com.google.common.primitives.Ints;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+
+/*
+* Convert String to features that can be fed into BERT model.
+*
+* Immutable once built and safe to call from many threads at once, e.g. to tokenize a batch on an
+* executor; every call returns new features.
+* **/
+public class FeatureConverter {
+    private static final int PAD_ID = 0;
+    /** Timer of text to wordpiece ids in {@link MetricsRegistry#getDefault()}. */
+    public static final String TOKENIZE_TIMER = "tokenize";
+    /** Timer of ids to padded features, including windowing. */
+    public static final String FEATURES_TIMER = "features";
+
+    private final FullTokenizer tokenizer;
+    private final int maxSeqLen;
+    private final SequenceBuckets buckets; // null leaves features unpadded
+    private final Timer tokenizeTimer = MetricsRegistry.getDefault().timer(TOKENIZE_TIMER);
+    private final Timer featuresTimer = MetricsRegistry.getDefault().timer(FEATURES_TIMER);
+
+    public FeatureConverter(Map<String, Integer> inputDic, boolean doLowerCase, int maxSeqLen, boolean padToMaxLength){
+        this(VocabTrie.build(inputDic), doLowerCase, maxSeqLen, padToMaxLength);
+    }
+
+    public FeatureConverter(VocabTrie vocab, boolean doLowerCase, int maxSeqLen, boolean padToMaxLength){
+        this.tokenizer = new FullTokenizer(vocab, doLowerCase);
+        this.maxSeqLen = maxSeqLen;
+        this.buckets = padToMaxLength ? SequenceBuckets.fixed(maxSeqLen) : null;
+    }
+
+    /** Pads every feature to the smallest of the buckets that fits it. */
+    public FeatureConverter(VocabTrie vocab, boolean doLowerCase, SequenceBuckets buckets){
+        this(vocab, doLowerCase, buckets, 0);
+    }
+
+    /** Also memoizes the wordpieces of up to wordCacheSize words, see {@link FullTokenizer}. */
+    public FeatureConverter(VocabTrie vocab, boolean doLowerCase, SequenceBuckets buckets, int wordCacheSize){
+        this.tokenizer = new FullTokenizer(vocab, doLowerCase, wordCacheSize);
+        this.maxSeqLen = buckets.maxLength();
+        this.buckets = buckets;
+    }
+
+    public Feature convert(String text, boolean addSpecialTokens){
+        long start = System.nanoTime();
+        int[] inputIds = new int[maxSeqLen];
+        int length = 0;
+        if(addSpecialTokens){
+            // [CLS] + at most maxSeqLen-2 wordpieces + [SEP], as FullTokenizer.addSpecialToken does
+            length = putId(inputIds, length, tokenizer.clsId());
+            length += tokenizer.tokenizeToIds(text, inputIds, length, maxSeqLen - 2);
+            length = putId(inputIds, length, tokenizer.sepId());
+        }
+        else {
+            length = tokenizer.tokenizeToIds(text, inputIds, 0, maxSeqLen);
+        }
+        start = tokenizeTimer.recordSince(start);
+        Feature feature = pad(inputIds, length);
+        featuresTimer.recordSince(start);
+        return feature;
+    }
+
+    /**
+     * Splits the whole token stream of text into overlapping windows instead of truncating it.
+     * Each window holds up to windowSize wordpieces wrapped in [CLS]/[SEP], and consecutive windows
+     * start stride tokens apart; the last window always reaches the end of the text.
+     */
+    public List<Feature> convertWindows(String text, int windowSize, int stride){
+        long start = System.nanoTime();
+        // Every wordpiece consumes at least one char, so the text length bounds the id count.
+        int[] ids = new int[text.length()];
+        int count = tokenizer.tokenizeToIds(text, ids, 0, ids.length);
+        tokenizeTimer.recordSince(start);
+        return convertWindows(ids, count, windowSize, stride);
+    }
+
+    /** Same as {@link #convertWindows(String, int, int)} for wordpiece ids tokenized elsewhere. */
+    public List<Feature> convertWindows(int[] ids, int count, int windowSize, int stride){
+        if(windowSize < 1 || windowSize > maxSeqLen - 2){
+            throw new IllegalArgumentException("windowSize must be in [1, " + (maxSeqLen - 2) + "]");
+        }
+        if(stride < 1 || stride > windowSize){
+            throw new IllegalArgumentException("stride must be in [1, windowSize]");
+        }
+        long startNanos = System.nanoTime();
+        List<Feature> windows = new ArrayList<>();
+        for(int start = 0; ; start += stride){
+            int end = Math.min(count, start + windowSize);
+            int[] inputIds = new int[end - start + 2];
+            int length = putId(inputIds, 0, tokenizer.clsId());
+            System.arraycopy(ids, start, inputIds, length, end - start);
+            length = putId(inputIds, length + end - start, tokenizer.sepId());
+            windows.add(pad(inputIds, length));
+            if(end == count){
+                featuresTimer.recordSince(startNanos);
+                return windows;
+            }
+        }
+    }
+
+    public FullTokenizer getTokenizer(){
+        return tokenizer;
+    }
+
+    public SequenceBuckets getBuckets(){
+        return buckets;
+    }
+
+    // The ids past length are PAD_ID and masked out in the feature's attention mask.
+    private Feature pad(int[] inputIds, int length){
+        int paddedLength = buckets == null ? length : buckets.bucketFor(length);
+        int[] padded = Arrays.copyOf(inputIds, paddedLength);
+        Arrays.fill(padded, length, paddedLength, PAD_ID);
+        return new Feature(padded, length);
+    }
+
+    private static int putId(int[] inputIds, int length, int id){
+        if(id < 0){
+            return length;
+        }
+        inputIds[length] = id;
+        return length + 1;
+    }
+
+    public Feature convert(String text){
+        text = convertWords(text);
+        String[] words = text.split(" ");
+        List<String> tokens = new ArrayList<>();
+        for (String word: words){
+            if(!word.equals("")){
+                tokens.add(word);
+            }
+        }
+        if(tokens.size()>maxSeqLen-1){
+            tokens = tokens.subList(0, maxSeqLen-1);
+        }
+
+        int[] inputIds = Ints.toArray(tokenizer.convertTokensToIds(tokens));
+        return pad(inputIds, inputIds.length);
+    }
+
+    String convertWords(String sentence){
+        List<String> newWords = new ArrayList<>();
+        Pattern pattern = Pattern.compile("(?i)\\b\\w\\w+\\b");
+        Matcher matcher = pattern.matcher(sentence.toLowerCase());
+        while (matcher.find()){
+            String word = matcher.group();
+            newWords.add(word);
+        }
+        return String.join(" ", newWords);
+    }
+}
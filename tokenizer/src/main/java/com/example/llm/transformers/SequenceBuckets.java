@@ -0,0 +1,66 @@
+package com.example.llm.transformers;
+
+import java.util.Arrays;
+
+/**
+ * A fixed set of padded sequence lengths. Each input is padded only up to the smallest bucket
+ * that fits it, instead of to the model maximum, which saves attention work on short texts while
+ * keeping the number of distinct tensor shapes bounded.
+ * */
+public final class SequenceBuckets {
+    private static final int[] DEFAULT_LENGTHS = {32, 64, 128, 256, 512};
+
+    private final int[] lengths;
+
+    public SequenceBuckets(int... lengths){
+        if (lengths.length == 0) {
+            throw new IllegalArgumentException("At least one bucket is required");
+        }
+        this.lengths = lengths.clone();
+        Arrays.sort(this.lengths);
+        if (this.lengths[0] <= 0) {
+            throw new IllegalArgumentException("Bucket lengths must be positive");
+        }
+    }
+
+    /** 32/64/128/256/512, capped at maxSeqLen, which is always the last bucket. */
+    public static SequenceBuckets defaults(int maxSeqLen){
+        int count = 0;
+        int[] lengths = new int[DEFAULT_LENGTHS.length + 1];
+        for (int length : DEFAULT_LENGTHS) {
+            if (length < maxSeqLen) {
+                lengths[count++] = length;
+            }
+        }
+        lengths[count++] = maxSeqLen;
+        return new SequenceBuckets(Arrays.copyOf(lengths, count));
+    }
+
+    /** A single bucket, i.e. every input is padded to maxSeqLen. */
+    public static SequenceBuckets fixed(int maxSeqLen){
+        return new SequenceBuckets(maxSeqLen);
+    }
+
+    /** The smallest bucket holding length tokens; longer inputs map to the largest bucket. */
+    public int bucketFor(int length){
+        for (int bucket : lengths) {
+            if (length <= bucket) {
+                return bucket;
+            }
+        }
+        return maxLength();
+    }
+
+    public int maxLength(){
+        return lengths[lengths.length - 1];
+    }
+
+    public int[] lengths(){
+        return lengths.clone();
+    }
+
+    @Override
+    public String toString() {
+        return "SequenceBuckets" + Arrays.toString(lengths);
+    }
+}
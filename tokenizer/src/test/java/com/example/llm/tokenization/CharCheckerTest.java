@@ -0,0 +1,69 @@
+package com.example.llm.tokenization;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CharCheckerTest {
+
+    @Test
+    public void tableMatchesCharacterForEveryChar() {
+        for (int i = Character.MIN_VALUE; i <= Character.MAX_VALUE; i++) {
+            char ch = (char) i;
+            String at = Integer.toHexString(i);
+            assertEquals(at, referenceIsInvalid(ch), CharChecker.isInvalid(ch));
+            assertEquals(at, referenceIsControl(ch), CharChecker.isControl(ch));
+            assertEquals(at, referenceIsWhitespace(ch), CharChecker.isWhitespace(ch));
+            assertEquals(at, referenceIsPunctuation(ch), CharChecker.isPunctuation(ch));
+        }
+    }
+
+    @Test
+    public void flagsOfCommonChars() {
+        assertEquals(0, CharChecker.flags('a'));
+        assertEquals(CharChecker.WHITESPACE, CharChecker.flags(' '));
+        assertEquals(CharChecker.WHITESPACE, CharChecker.flags('\t'));
+        assertEquals(CharChecker.PUNCTUATION, CharChecker.flags('!'));
+        assertEquals(CharChecker.INVALID | CharChecker.CONTROL, CharChecker.flags('\u0000'));
+        assertEquals(CharChecker.INVALID, CharChecker.flags('\ufffd'));
+        assertEquals(CharChecker.CONTROL, CharChecker.flags('\u200b'));
+        assertEquals(0, CharChecker.flags('\u4e2d'));
+        assertEquals(0, CharChecker.flags('\u0301'));
+        assertTrue(CharChecker.isWhitespace('\u00a0'));
+        assertTrue(CharChecker.isWhitespace('\u2028'));
+    }
+
+    // CharChecker as it was before the lookup table.
+
+    private static boolean referenceIsInvalid(char ch){
+        return (ch==0 || ch == 0xfffd);
+    }
+
+    private static boolean referenceIsControl(char ch){
+        if(Character.isWhitespace(ch)){
+            return false;
+        }
+        int type = Character.getType(ch);
+        return (type==Character.CONTROL || type == Character.FORMAT);
+    }
+
+    private static boolean referenceIsWhitespace(char ch){
+        if(Character.isWhitespace(ch)){
+            return true;
+        }
+        int type = Character.getType(ch);
+        return (type==Character.SPACE_SEPARATOR || type == Character.LINE_SEPARATOR || type == Character.PARAGRAPH_SEPARATOR);
+    }
+
+    private static boolean referenceIsPunctuation(char ch){
+        int type = Character.getType(ch);
+        return (type==Character.CONNECTOR_PUNCTUATION
+                || type == Character.DASH_PUNCTUATION
+                || type == Character.START_PUNCTUATION
+                || type == Character.END_PUNCTUATION
+                || type == Character.INITIAL_QUOTE_PUNCTUATION
+                || type == Character.FINAL_QUOTE_PUNCTUATION
+                || type == Character.OTHER_PUNCTUATION);
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.llm.tokenization;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class FullTokenizerTest {
+    private static final String[] TEXTS = {
+            "",
+            "Hello, World!",
+            "WINNER!! You have won a FREE prize. Call 0800-123-456 now\tto claim\n\nyour reward.",
+            "click https://example.com/claim?id=123&ref=sms_blast#top",
+            "  leading and   multiple   spaces  ",
+            "caf\u00e9 na\u00efve r\u00e9sum\u00e9 \u4e2d\u6587\u5b57 \u0645\u0631\u062d\u0628\u0627",
+            "zero\u0000width\u200bjoiner\ufffdreplacement\u00a0nbsp\u2028line",
+            "unaffable antidisestablishmentarianism xqzvbnmkl",
+            "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa b",
+            "(parenthesised) \"quoted\" [bracketed] {braced} ...ellipsis--dash"
+    };
+
+    private static Map<String, Integer> vocab;
+
+    @BeforeClass
+    public static void loadVocab() throws IOException {
+        vocab = ReferenceWorkPieceTokenizer.loadVocab();
+    }
+
+    @Test
+    public void tokenize_matchesBasicThenWordPiece() {
+        for (boolean doLowerCase : new boolean[]{false, true}) {
+            FullTokenizer tokenizer = new FullTokenizer(vocab, doLowerCase);
+            BasicTokenizer basic = new BasicTokenizer(doLowerCase);
+            ReferenceWorkPieceTokenizer wordPiece = new ReferenceWorkPieceTokenizer(vocab);
+            for (String text : TEXTS) {
+                List<String> expected = new ArrayList<>();
+                for (String token : basic.tokenize(text)) {
+                    expected.addAll(wordPiece.tokenize(token));
+                }
+                assertEquals(text, expected, tokenizer.tokenize(text));
+            }
+        }
+    }
+
+    @Test
+    public void tokenizeToIds_matchesConvertTokensToIds() {
+        FullTokenizer tokenizer = new FullTokenizer(vocab, true);
+        int[] out = new int[1024];
+        for (String text : TEXTS) {
+            int[] expected = toArray(tokenizer.convertTokensToIds(tokenizer.tokenize(text)));
+
+            int written = tokenizer.tokenizeToIds(text, out, 3, out.length - 3);
+            int[] actual = new int[written];
+            System.arraycopy(out, 3, actual, 0, written);
+            assertArrayEquals(text, expected, actual);
+
+            IntBuffer intBuffer = IntBuffer.allocate(1024);
+            assertEquals(expected.length, tokenizer.tokenizeToIds(text, intBuffer));
+            LongBuffer longBuffer = LongBuffer.allocate(1024);
+            assertEquals(expected.length, tokenizer.tokenizeToIds(text, longBuffer));
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals(expected[i], intBuffer.get(i));
+                assertEquals(expected[i], longBuffer.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void tokenizeToIds_stopsAtCapacity() {
+        FullTokenizer tokenizer = new FullTokenizer(vocab, true);
+        String text = TEXTS[2];
+        int[] expected = toArray(tokenizer.convertTokensToIds(tokenizer.tokenize(text)));
+        int[] out = new int[4];
+        assertEquals(4, tokenizer.tokenizeToIds(text, out, 0, 4));
+        assertArrayEquals(new int[]{expected[0], expected[1], expected[2], expected[3]}, out);
+
+        LongBuffer longBuffer = LongBuffer.allocate(2);
+        assertEquals(2, tokenizer.tokenizeToIds(text, longBuffer));
+    }
+
+    // One tokenizer over one mapped-style trie, shared by threads that start together.
+    @Test
+    public void sharedTokenizer_matchesSingleThreaded() throws Exception {
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        VocabTrie.build(vocab).writeTo(binary);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(binary.size());
+        buffer.put(binary.toByteArray()).flip();
+        VocabTrie trie = VocabTrie.load(buffer);
+
+        for (int wordCacheSize : new int[]{0, 64}) {
+            final FullTokenizer shared = new FullTokenizer(trie, true, wordCacheSize);
+            final FullTokenizer reference = new FullTokenizer(vocab, true);
+            final int threads = 8;
+            final CountDownLatch start = new CountDownLatch(1);
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<Void>> results = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    final int offset = t;
+                    results.add(executor.submit(new Callable<Void>() {
+                        @Override
+                        public Void call() throws Exception {
+                            start.await();
+                            int[] out = new int[1024];
+                            for (int i = 0; i < 2000; i++) {
+                                String text = TEXTS[(i + offset) % TEXTS.length];
+                                int[] expected = toArray(reference.convertTokensToIds(reference.tokenize(text)));
+                                int written = shared.tokenizeToIds(text, out, 0, out.length);
+                                assertEquals(text, expected.length, written);
+                                for (int k = 0; k < written; k++) {
+                                    assertEquals(text, expected[k], out[k]);
+                                }
+                                assertEquals(text, reference.tokenize(text), shared.tokenize(text));
+                            }
+                            return null;
+                        }
+                    }));
+                }
+                start.countDown();
+                for (Future<Void> result : results) {
+                    result.get();
+                }
+            } finally {
+                executor.shutdown();
+            }
+        }
+    }
+
+    private static int[] toArray(List<Integer> ids) {
+        int[] array = new int[ids.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = ids.get(i);
+        }
+        return array;
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.llm.tokenization;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IncrementalTokenizerTest {
+    private static final String ALPHABET = "abcdefghijklmnopqrstuvwxyz  ,.!\u00e9\u4e2d\u0000";
+
+    private static FullTokenizer tokenizer;
+
+    @BeforeClass
+    public static void loadVocab() throws IOException {
+        tokenizer = new FullTokenizer(ReferenceWorkPieceTokenizer.loadVocab(), true);
+    }
+
+    @Test
+    public void typing_matchesFullTokenization() {
+        IncrementalTokenizer incremental = new IncrementalTokenizer(tokenizer);
+        incremental.reset("");
+        StringBuilder text = new StringBuilder();
+        for (char ch : "Congratulations! You have won a free cruise, reply YES to claim.".toCharArray()) {
+            text.append(ch);
+            incremental.update(text, text.length() - 1, 0, 1);
+            assertArrayEquals(text.toString(), fullIds(text), incremental.copyIds());
+        }
+        // Typing at the end only re-tokenizes the last word each time.
+        assertTrue(incremental.getRetokenizedChars() < text.length() * 12L);
+    }
+
+    @Test
+    public void randomEdits_matchFullTokenization() {
+        Random random = new Random(42);
+        IncrementalTokenizer incremental = new IncrementalTokenizer(tokenizer);
+        StringBuilder text = new StringBuilder("free entry in a weekly competition to win tickets");
+        incremental.reset(text);
+        for (int i = 0; i < 2000; i++) {
+            int start = random.nextInt(text.length() + 1);
+            int before = Math.min(random.nextInt(4), text.length() - start);
+            int count = random.nextInt(5);
+            char[] inserted = new char[count];
+            for (int j = 0; j < count; j++) {
+                inserted[j] = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+            }
+            text.replace(start, start + before, new String(inserted));
+            incremental.update(text, start, before, count);
+            assertArrayEquals(text.toString(), fullIds(text), incremental.copyIds());
+        }
+    }
+
+    @Test
+    public void inconsistentEdit_fallsBackToFullTokenization() {
+        IncrementalTokenizer incremental = new IncrementalTokenizer(tokenizer);
+        incremental.reset("hello world");
+        String text = "a completely different text";
+        incremental.update(text, 0, 0, 1);
+        assertArrayEquals(fullIds(text), incremental.copyIds());
+    }
+
+    private static int[] fullIds(CharSequence text) {
+        int[] out = new int[text.length() * 2 + 1];
+        int written = tokenizer.tokenizeToIds(text, out, 0, out.length);
+        return Arrays.copyOf(out, written);
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.llm.tokenization;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WordPieceCacheTest {
+    private static final String[] PIECES = {"[PAD]", "[UNK]", "[CLS]", "[SEP]", "free", "click", "the",
+            "un", "##aff", "##able", "win", "##ner", "now", "!", "a", "##a", "##b", "b"};
+    private static final String[] HOT_WORDS = {"free", "click", "the", "unaffable", "winner", "now"};
+
+    private static VocabTrie vocab(){
+        Map<String, Integer> vocab = new HashMap<>();
+        for (int i = 0; i < PIECES.length; i++) {
+            vocab.put(PIECES[i], i);
+        }
+        return VocabTrie.build(vocab);
+    }
+
+    @Test
+    public void cachedTokenizationMatchesUncached() {
+        FullTokenizer plain = new FullTokenizer(vocab(), true);
+        FullTokenizer cached = new FullTokenizer(vocab(), true, 64);
+        Random random = new Random(11);
+        for (int i = 0; i < 500; i++) {
+            String text = text(random, 12);
+            assertEquals(text, plain.tokenize(text), cached.tokenize(text));
+            assertArrayEquals(text, ids(plain, text), ids(cached, text));
+        }
+        assertTrue(cached.getWordCache().getHitCount() > 0);
+    }
+
+    @Test
+    public void oneOffTokensDoNotEvictHotWords() {
+        FullTokenizer tokenizer = new FullTokenizer(vocab(), false, 64);
+        WordPieceCache cache = tokenizer.getWordCache();
+        String hot = String.join(" ", HOT_WORDS);
+        Random random = new Random(5);
+        // Every message has the hot words and a few never seen again, like URLs or hashes.
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder message = new StringBuilder(hot);
+            for (int j = 0; j < 5; j++) {
+                message.append(" ab").append(Long.toHexString(random.nextLong()));
+            }
+            long hits = cache.getHitCount();
+            tokenizer.tokenize(message.toString());
+            if (i >= 10) {
+                assertEquals(hits + HOT_WORDS.length, cache.getHitCount());
+            }
+        }
+        assertTrue(cache.getRejectionCount() > 5000);
+    }
+
+    @Test
+    public void sharedAcrossThreads() throws Exception {
+        final FullTokenizer plain = new FullTokenizer(vocab(), true);
+        final FullTokenizer cached = new FullTokenizer(vocab(), true, 32);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                final long seed = t;
+                results.add(executor.submit(() -> {
+                    Random random = new Random(seed);
+                    for (int i = 0; i < 2000; i++) {
+                        String text = text(random, 8);
+                        assertArrayEquals(text, ids(plain, text), ids(cached, text));
+                    }
+                    return 0;
+                }));
+            }
+            for (Future<Integer> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(cached.getWordCache().getHitRate() > 0.5);
+    }
+
+    // Mostly hot words, some random a/b words that are new or [UNK].
+    private static String text(Random random, int words){
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (random.nextInt(4) == 0) {
+                int length = 1 + random.nextInt(6);
+                for (int j = 0; j < length; j++) {
+                    text.append("abcXY".charAt(random.nextInt(5)));
+                }
+            } else {
+                String word = HOT_WORDS[random.nextInt(HOT_WORDS.length)];
+                text.append(random.nextBoolean() ? word : word.toUpperCase());
+            }
+            text.append(random.nextInt(5) == 0 ? "! " : " ");
+        }
+        return text.toString();
+    }
+
+    private static int[] ids(FullTokenizer tokenizer, String text){
+        int[] ids = new int[text.length()];
+        return Arrays.copyOf(ids, tokenizer.tokenizeToIds(text, ids, 0, ids.length));
+    }
+}
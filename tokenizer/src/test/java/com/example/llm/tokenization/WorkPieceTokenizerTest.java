@@ -0,0 +1,81 @@
+package com.example.llm.tokenization;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class WorkPieceTokenizerTest {
+    private static final String[] WORDS = {
+            "unaffable", "hello", "free", "click", "winner", "congratulations", "xqzvbnm",
+            "http", "www", "example", "com", "caf\u00e9", "\u4e2d\u6587", "running", "1234567890",
+            "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa",
+            "", "##ing", "a"
+    };
+
+    private static Map<String, Integer> vocab;
+
+    @BeforeClass
+    public static void loadVocab() throws IOException {
+        vocab = ReferenceWorkPieceTokenizer.loadVocab();
+    }
+
+    @Test
+    public void tokenize_matchesReferenceForSampleWords() {
+        WorkPieceTokenizer tokenizer = new WorkPieceTokenizer(vocab);
+        ReferenceWorkPieceTokenizer reference = new ReferenceWorkPieceTokenizer(vocab);
+        for (String word : WORDS) {
+            assertEquals(word, reference.tokenize(word), tokenizer.tokenize(word));
+        }
+    }
+
+    @Test
+    public void tokenize_matchesReferenceForEveryVocabEntry() {
+        WorkPieceTokenizer tokenizer = new WorkPieceTokenizer(vocab);
+        ReferenceWorkPieceTokenizer reference = new ReferenceWorkPieceTokenizer(vocab);
+        for (String entry : vocab.keySet()) {
+            // Concatenating two entries forces continuation pieces and backtracking.
+            String word = entry + "s" + entry;
+            assertEquals(word, reference.tokenize(word), tokenizer.tokenize(word));
+        }
+    }
+
+    @Test
+    public void trie_getReturnsVocabIds() {
+        VocabTrie trie = VocabTrie.build(vocab);
+        assertEquals(vocab.size(), trie.size());
+        for (Map.Entry<String, Integer> entry : vocab.entrySet()) {
+            assertEquals(entry.getKey(), (int) entry.getValue(), trie.get(entry.getKey()));
+        }
+        assertEquals(-1, trie.get("notawordpiecexyz"));
+    }
+
+    @Test
+    public void trie_binaryFormatRoundTrips() throws IOException {
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        VocabTrie.build(vocab).writeTo(binary);
+        ByteBuffer direct = ByteBuffer.allocateDirect(binary.size());
+        direct.put(binary.toByteArray()).flip();
+
+        VocabTrie loaded = VocabTrie.load(direct);
+        WorkPieceTokenizer tokenizer = new WorkPieceTokenizer(loaded);
+        ReferenceWorkPieceTokenizer reference = new ReferenceWorkPieceTokenizer(vocab);
+        assertEquals(vocab.size(), loaded.size());
+        for (Map.Entry<String, Integer> entry : vocab.entrySet()) {
+            assertEquals(entry.getKey(), (int) entry.getValue(), loaded.get(entry.getKey()));
+        }
+        for (String word : WORDS) {
+            assertEquals(word, reference.tokenize(word), tokenizer.tokenize(word));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void trie_loadRejectsTextFormat() throws IOException {
+        VocabTrie.load(ByteBuffer.wrap("[PAD]\n[unused0]\n[unused1]\n".getBytes("UTF-8")));
+    }
+}
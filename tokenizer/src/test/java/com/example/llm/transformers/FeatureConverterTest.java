@@ -0,0 +1,112 @@
+package com.example.llm.transformers;
+
+import com.example.llm.tokenization.VocabTrie;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class FeatureConverterTest {
+    private static final String SHORT_TEXT = "Congratulations, you won a free prize!";
+
+    private static VocabTrie vocab;
+
+    @BeforeClass
+    public static void loadVocab() throws IOException {
+        try (InputStream is = new FileInputStream("../app/src/main/assets/vocab.txt")) {
+            vocab = VocabTrie.readText(is);
+        }
+    }
+
+    @Test
+    public void buckets_pickSmallestFittingLength() {
+        SequenceBuckets buckets = SequenceBuckets.defaults(512);
+        assertArrayEquals(new int[]{32, 64, 128, 256, 512}, buckets.lengths());
+        assertEquals(32, buckets.bucketFor(1));
+        assertEquals(32, buckets.bucketFor(32));
+        assertEquals(64, buckets.bucketFor(33));
+        assertEquals(512, buckets.bucketFor(300));
+        assertEquals(512, buckets.bucketFor(4000));
+        assertArrayEquals(new int[]{32, 64, 100}, SequenceBuckets.defaults(100).lengths());
+    }
+
+    @Test
+    public void convert_padsToBucketWithMask() {
+        FeatureConverter unpadded = new FeatureConverter(vocab, true, 512, false);
+        FeatureConverter bucketed = new FeatureConverter(vocab, true, SequenceBuckets.defaults(512));
+
+        Feature expected = unpadded.convert(SHORT_TEXT, true);
+        Feature feature = bucketed.convert(SHORT_TEXT, true);
+
+        assertEquals(expected.inputIds.length, feature.tokenCount);
+        assertEquals(32, feature.inputIds.length);
+        assertArrayEquals(expected.inputIds, Arrays.copyOf(feature.inputIds, feature.tokenCount));
+        for (int i = 0; i < feature.inputIds.length; i++) {
+            boolean isToken = i < feature.tokenCount;
+            assertEquals(isToken ? 1 : 0, feature.attentionMask[i]);
+            if (!isToken) {
+                assertEquals(0, feature.inputIds[i]);
+            }
+        }
+    }
+
+    @Test
+    public void convert_padToMaxLengthFillsWholeSequence() {
+        FeatureConverter converter = new FeatureConverter(vocab, true, 128, true);
+        Feature feature = converter.convert(SHORT_TEXT, true);
+        assertEquals(128, feature.inputIds.length);
+        assertEquals(128, converter.convert(SHORT_TEXT).inputIds.length);
+    }
+
+    @Test
+    public void convert_longTextIsCappedAtLargestBucket() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 400; i++) {
+            text.append("spam offer ");
+        }
+        Feature feature = new FeatureConverter(vocab, true, SequenceBuckets.defaults(512))
+                .convert(text.toString(), true);
+        assertEquals(512, feature.inputIds.length);
+        assertEquals(512, feature.tokenCount);
+    }
+
+    @Test
+    public void convertWindows_coverWholeTokenStreamWithOverlap() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            text.append("word").append(i).append(' ');
+        }
+        FeatureConverter converter = new FeatureConverter(vocab, true, 512, false);
+        int[] expected = converter.convert(text.toString(), false).inputIds;
+
+        List<Feature> windows = converter.convertWindows(text.toString(), 100, 60);
+        int covered = 0;
+        for (int w = 0; w < windows.size(); w++) {
+            Feature window = windows.get(w);
+            int start = w * 60;
+            int tokens = window.tokenCount - 2;
+            assertEquals(converter.convert("", true).inputIds[0], window.inputIds[0]);
+            assertArrayEquals(Arrays.copyOfRange(expected, start, start + tokens),
+                    Arrays.copyOfRange(window.inputIds, 1, 1 + tokens));
+            covered = start + tokens;
+        }
+        assertEquals(expected.length, covered);
+        assertEquals((expected.length - 100 + 59) / 60 + 1, windows.size());
+    }
+
+    @Test
+    public void convertWindows_shortTextIsSingleWindow() {
+        FeatureConverter converter = new FeatureConverter(vocab, true, SequenceBuckets.defaults(512));
+        List<Feature> windows = converter.convertWindows(SHORT_TEXT, 510, 382);
+        assertEquals(1, windows.size());
+        assertArrayEquals(converter.convert(SHORT_TEXT, true).inputIds, windows.get(0).inputIds);
+    }
+}